@@ -29,6 +29,11 @@ dependencies {
     implementation("org.springframework.boot:spring-boot-starter-web")
 
     implementation("org.springframework.boot:spring-boot-starter-cache")
+    // Proveedor de cache en memoria con tamaño máximo, TTL y estadísticas
+    implementation("com.github.ben-manes.caffeine:caffeine")
+    // Métricas de la cache (hits, misses, evictions) expuestas por actuator
+    implementation("org.springframework.boot:spring-boot-starter-actuator")
+    runtimeOnly("io.micrometer:micrometer-registry-prometheus")
 
     implementation("org.springframework.boot:spring-boot-starter-validation")
     //JPA
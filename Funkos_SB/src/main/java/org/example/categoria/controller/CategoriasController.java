@@ -5,6 +5,10 @@ import org.example.categoria.dto.CategoriaDto;
 import org.example.categoria.mapper.CategoriaMapper;
 import org.example.categoria.models.Categoria;
 import org.example.categoria.service.CategoriasService;
+import org.example.funko.models.Funko;
+import org.example.utils.pageresponse.CursorPageResponse;
+import org.example.utils.pageresponse.KeysetCursor;
+import org.example.utils.etag.VersionETag;
 import org.example.utils.pageresponse.PageResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,13 +16,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -49,11 +56,43 @@ public class CategoriasController {
         return ResponseEntity.ok(PageResponse.of(categoriasService.getCategorias(tipo, enabled, pageable), sortBy, direction));
     }
 
+    @GetMapping(params = "mode=seek")
+    public ResponseEntity<CursorPageResponse<Categoria>> getAllSeek(
+            @RequestParam(required = false) Optional<String> tipo,
+            @RequestParam(required = false) Optional<Boolean> enabled,
+            @RequestParam(required = false) Optional<String> cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "id") String sortBy,
+            @RequestParam(defaultValue = "asc") String direction
+    ){
+        logger.info("Obteniendo categorias por cursor");
+        Sort.Direction sortDirection = direction.equalsIgnoreCase(Sort.Direction.ASC.name()) ? Sort.Direction.ASC : Sort.Direction.DESC;
+        var slice = categoriasService.getCategoriasSeek(tipo, enabled, cursor.map(KeysetCursor::decode), size, sortBy, sortDirection);
+        return ResponseEntity.ok(CursorPageResponse.of(slice, c -> KeysetCursor.of(c, sortBy, c.getId()), sortBy, direction));
+    }
+
     @GetMapping("{id}")
-    public ResponseEntity<Categoria> getById(@PathVariable Long id){
+    public ResponseEntity<Categoria> getById(@PathVariable Long id,
+                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch){
         logger.info("Obteniendo categoria por id {}", id);
+        if (ifNoneMatch != null) {
+            var etag = categoriasService.getVersion(id)
+                    .map(version -> VersionETag.of(id, VersionETag.latest(version.getUpdatedAt(), version.getFunkosUpdatedAt()), version.getFunkos()))
+                    .orElse(null);
+            if (VersionETag.matches(ifNoneMatch, etag)) {
+                return VersionETag.notModified(etag);
+            }
+        }
         var result = categoriasService.getById(id);
-        return ResponseEntity.ok(result);
+        return VersionETag.ok(result, etag(result));
+    }
+
+    // La categoría se serializa con sus funkos: la versión incluye el último cambio de cualquiera y cuántos hay
+    private String etag(Categoria categoria) {
+        var funkos = categoria.getFunkos() == null ? List.<Funko>of() : categoria.getFunkos();
+        var updatedAts = funkos.stream().map(Funko::getUpdatedAt).toArray(LocalDateTime[]::new);
+        var funkosUpdatedAt = VersionETag.latest(updatedAts);
+        return VersionETag.of(categoria.getId(), VersionETag.latest(categoria.getUpdatedAt(), funkosUpdatedAt), funkos.size());
     }
 
     @GetMapping("tipo/{string}")
@@ -3,8 +3,27 @@ package org.example.categoria.repository;
 import org.example.categoria.models.Categoria;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
 
 
 public interface CategoriasRepository extends JpaRepository<Categoria, Long>, JpaSpecificationExecutor<Categoria> {
     Categoria findByTipo(String string);
+
+    // Versión de la categoría sin cargar la entidad, para responder 304 sin tocar la fila completa
+    // La respuesta lleva también sus funkos, así que cuentan su último cambio y cuántos son
+    @Query("select c.updatedAt as updatedAt, max(f.updatedAt) as funkosUpdatedAt, count(f.id) as funkos " +
+            "from Categoria c left join c.funkos f where c.id = :id group by c.id, c.updatedAt")
+    Optional<Version> findVersionById(@Param("id") Long id);
+
+    interface Version {
+        LocalDateTime getUpdatedAt();
+
+        LocalDateTime getFunkosUpdatedAt();
+
+        Long getFunkos();
+    }
 }
@@ -2,14 +2,20 @@ package org.example.categoria.service;
 
 
 import org.example.categoria.models.Categoria;
+import org.example.categoria.repository.CategoriasRepository;
+import org.example.utils.pageresponse.KeysetCursor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 
 import java.util.Optional;
 
 public interface CategoriasService {
     Page<Categoria> getCategorias(Optional<String> nombre, Optional<Boolean> isDeleted, Pageable pageable);
+    Slice<Categoria> getCategoriasSeek(Optional<String> tipo, Optional<Boolean> enabled, Optional<KeysetCursor> cursor, int size, String sortBy, Sort.Direction direction);
     Categoria getById(Long id);
+    Optional<CategoriasRepository.Version> getVersion(Long id);
     Categoria getByTipo(String string);
     Categoria create(Categoria categoria);
     Categoria update(Long id, Categoria categoria);
@@ -4,13 +4,18 @@ package org.example.categoria.service;
 import org.example.categoria.exceptions.CategoriaException;
 import org.example.categoria.models.Categoria;
 import org.example.categoria.repository.CategoriasRepository;
+import org.example.utils.pageresponse.KeysetCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
@@ -31,7 +36,24 @@ public class CategoriasServiceImpl implements CategoriasService {
     @Override
     public Page<Categoria> getCategorias(Optional<String> tipo, Optional<Boolean> enabled, Pageable pageable) {
         logger.info("Buscando todas las categorias de tipo " + tipo + " y borrados " + enabled);
+        return categoriasRepository.findAll(criterio(tipo, enabled), pageable);
+    }
+
+    @Override
+    public Slice<Categoria> getCategoriasSeek(Optional<String> tipo, Optional<Boolean> enabled, Optional<KeysetCursor> cursor, int size, String sortBy, Sort.Direction direction) {
+        logger.info("Buscando categorias por keyset desde el cursor {}", cursor);
+        Specification<Categoria> criterio = criterio(tipo, enabled);
+        if (cursor.isPresent()) {
+            criterio = criterio.and(cursor.get().after(sortBy, direction));
+        }
+        Sort sort = KeysetCursor.sort(sortBy, direction);
+        // Se pide una fila de más para saber si hay siguiente página sin hacer COUNT
+        List<Categoria> content = categoriasRepository.findBy(criterio, query -> query.sortBy(sort).limit(size + 1).all());
+        boolean hasNext = content.size() > size;
+        return new SliceImpl<>(hasNext ? content.subList(0, size) : content, PageRequest.of(0, size, sort), hasNext);
+    }
 
+    private Specification<Categoria> criterio(Optional<String> tipo, Optional<Boolean> enabled) {
         Specification<Categoria> specTipoCategoria = (root, query, criteriaBuilder) ->
                 tipo.map(t -> criteriaBuilder.like(criteriaBuilder.lower(root.get("tipo")), "%" + t + "%"))
                         .orElseGet(() -> criteriaBuilder.isTrue(criteriaBuilder.literal(true)));
@@ -40,10 +62,8 @@ public class CategoriasServiceImpl implements CategoriasService {
                 enabled.map(e -> criteriaBuilder.equal(root.get("enabled"), e))
                         .orElseGet(() -> criteriaBuilder.isTrue(criteriaBuilder.literal(true)));
 
-        Specification<Categoria> criterio = Specification.where(specTipoCategoria)
+        return Specification.where(specTipoCategoria)
                 .and(specEnabled);
-
-        return categoriasRepository.findAll(criterio, pageable);
     }
 
     @Override
@@ -52,6 +72,12 @@ public class CategoriasServiceImpl implements CategoriasService {
         return categoriasRepository.findById(id).orElseThrow(() ->new CategoriaException.CategoriaNotFound(id));
     }
 
+    @Override
+    public Optional<CategoriasRepository.Version> getVersion(Long id) {
+        logger.info("Getting versión de la categoría by id {}" , id);
+        return categoriasRepository.findVersionById(id);
+    }
+
     @Override
     public Categoria getByTipo(String string) {
         logger.info("Getting categoría by tipo {}" , string);
@@ -0,0 +1,41 @@
+package org.example.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuración de la cache de la aplicación
+ * Caffeine limitada en tamaño, con TTL y estadísticas de hits/misses/evictions
+ */
+@Configuration
+@EnableCaching
+@Slf4j
+public class CacheConfig {
+    public static final String FUNKOS = "Funkos";
+    public static final String FUNKOS_NOMBRE = "FunkosNombre";
+    public static final String CATEGORIAS = "Categorias";
+    public static final String PEDIDOS = "pedidos";
+
+    @Bean
+    public CacheManager cacheManager(@Value("${caching.spring.funkosTTL}") long ttl,
+                                     @Value("${caching.spring.maxSize:10000}") long maxSize) {
+        log.info("Configurando cache con TTL de {} ms y tamaño máximo {}", ttl, maxSize);
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setCaffeine(Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttl))
+                .recordStats());
+        // Las caches se crean al arrancar para que actuator registre sus métricas
+        cacheManager.setCacheNames(List.of(FUNKOS, FUNKOS_NOMBRE, CATEGORIAS, PEDIDOS));
+        return cacheManager;
+    }
+}
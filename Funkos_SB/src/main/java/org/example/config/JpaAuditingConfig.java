@@ -0,0 +1,13 @@
+package org.example.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
+
+/**
+ * Auditoría de JPA: rellena createdAt y updatedAt al guardar
+ * El ETag de las lecturas depende de que updatedAt cambie con cada modificación
+ */
+@Configuration
+@EnableJpaAuditing
+public class JpaAuditingConfig {
+}
@@ -2,10 +2,19 @@ package org.example.funko.controller;
 
 
 import jakarta.validation.Valid;
+import org.example.funko.dto.FunkoBulkUpdateRequest;
+import org.example.funko.dto.FunkoBulkUpdateResult;
 import org.example.funko.dto.FunkoDto;
+import org.example.funko.dto.FunkoImportResult;
+import org.example.funko.dto.FunkoListDto;
 import org.example.funko.mapper.FunkosMapper;
 import org.example.funko.models.Funko;
+import org.example.funko.service.FunkosExportService;
+import org.example.funko.service.FunkosImportService;
 import org.example.funko.service.FunkosService;
+import org.example.utils.pageresponse.CursorPageResponse;
+import org.example.utils.pageresponse.KeysetCursor;
+import org.example.utils.etag.VersionETag;
 import org.example.utils.pageresponse.PageResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,12 +22,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -30,10 +43,14 @@ public class FunkoController {
     private final Logger logger = LoggerFactory.getLogger(FunkoController.class);
     private final FunkosService funkosService;
     private final FunkosMapper funkosMapper;
+    private final FunkosImportService funkosImportService;
+    private final FunkosExportService funkosExportService;
     @Autowired
-    public FunkoController(FunkosService funkosService, FunkosMapper funkosMapper) {
+    public FunkoController(FunkosService funkosService, FunkosMapper funkosMapper, FunkosImportService funkosImportService, FunkosExportService funkosExportService) {
         this.funkosService = funkosService;
         this.funkosMapper = funkosMapper;
+        this.funkosImportService = funkosImportService;
+        this.funkosExportService = funkosExportService;
     }
 
     @GetMapping
@@ -54,11 +71,70 @@ public class FunkoController {
 
     }
 
+    @GetMapping("listado")
+    public ResponseEntity<PageResponse<FunkoListDto>> getAllListado(
+            @RequestParam(required = false) Optional<String> name,
+            @RequestParam(required = false) Optional<String> categoria,
+            @RequestParam(required = false) Optional<Double> price,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "id") String sortBy,
+            @RequestParam(defaultValue = "asc") String direction
+    ) {
+        logger.info("Obteniendo listado de funkos");
+
+        Sort sort = direction.equalsIgnoreCase(Sort.Direction.ASC.name()) ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
+        Pageable pageable = PageRequest.of(page, size, sort);
+        var result = funkosService.getAllFunkos(name, categoria, price, pageable).map(funkosMapper::toFunkoListDto);
+        return ResponseEntity.ok(PageResponse.of(result, sortBy, direction));
+    }
+
+    @GetMapping(params = "mode=seek")
+    public ResponseEntity<CursorPageResponse<Funko>> getAllSeek(
+            @RequestParam(required = false) Optional<String> name,
+            @RequestParam(required = false) Optional<String> categoria,
+            @RequestParam(required = false) Optional<Double> price,
+            @RequestParam(required = false) Optional<String> cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "id") String sortBy,
+            @RequestParam(defaultValue = "asc") String direction
+    ) {
+        logger.info("Obteniendo funkos por cursor");
+
+        Sort.Direction sortDirection = direction.equalsIgnoreCase(Sort.Direction.ASC.name()) ? Sort.Direction.ASC : Sort.Direction.DESC;
+        var slice = funkosService.getAllFunkosSeek(name, categoria, price, cursor.map(KeysetCursor::decode), size, sortBy, sortDirection);
+        return ResponseEntity.ok(CursorPageResponse.of(slice, f -> KeysetCursor.of(f, sortBy, f.getId()), sortBy, direction));
+    }
+
+    @GetMapping("buscar")
+    public ResponseEntity<PageResponse<Funko>> searchFunkos(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "id") String sortBy,
+            @RequestParam(defaultValue = "asc") String direction
+    ) {
+        logger.info("Buscando funkos por {}", q);
+
+        Sort sort = direction.equalsIgnoreCase(Sort.Direction.ASC.name()) ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
+        Pageable pageable = PageRequest.of(page, size, sort);
+        return ResponseEntity.ok(PageResponse.of(funkosService.searchFunkos(q, pageable), sortBy, direction));
+    }
+
     @GetMapping("{id}")
-    public ResponseEntity<Funko> getFunkoById(@PathVariable Long id) {
+    public ResponseEntity<Funko> getFunkoById(@PathVariable Long id,
+                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         logger.info("Obteniendo funkos por id {}", id);
+        if (ifNoneMatch != null) {
+            var etag = funkosService.getFunkoVersion(id).map(version -> VersionETag.of(id, version)).orElse(null);
+            if (VersionETag.matches(ifNoneMatch, etag)) {
+                return VersionETag.notModified(etag);
+            }
+        }
         var result = funkosService.getFunkoById(id);
-        return ResponseEntity.ok(result);
+        // El funko se serializa con su categoría: su versión es el cambio más reciente de los dos
+        var categoriaUpdatedAt = result.getCategoria() == null ? null : result.getCategoria().getUpdatedAt();
+        return VersionETag.ok(result, VersionETag.of(result.getId(), VersionETag.latest(result.getUpdatedAt(), categoriaUpdatedAt)));
     }
 
     @GetMapping("nombre/{name}")
@@ -75,6 +151,13 @@ public class FunkoController {
         return ResponseEntity.status(HttpStatus.CREATED).body(result);
     }
 
+    @PostMapping(value = "importar", consumes = {"text/csv", "application/x-ndjson"})
+    public ResponseEntity<FunkoImportResult> importFunkos(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body) {
+        logger.info("Importando funkos desde {}", contentType);
+        var result = funkosImportService.importFunkos(body, MediaType.parseMediaType(contentType));
+        return ResponseEntity.ok(result);
+    }
+
     @PutMapping("{id}")
     public ResponseEntity<Funko> updateFunko(@PathVariable Long id,@Valid @RequestBody FunkoDto dto) {
         logger.info("Update funko on id: {}", id);
@@ -82,6 +165,22 @@ public class FunkoController {
         return ResponseEntity.ok(result);
     }
 
+    @GetMapping(value = "export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportFunkos() {
+        logger.info("Exportando catálogo de funkos");
+        StreamingResponseBody body = funkosExportService::exportFunkos;
+        return ResponseEntity.ok()
+                .contentType(MediaType.valueOf("application/x-ndjson"))
+                .body(body);
+    }
+
+    @PatchMapping("masivo")
+    public ResponseEntity<FunkoBulkUpdateResult> bulkUpdate(@Valid @RequestBody FunkoBulkUpdateRequest request) {
+        logger.info("Actualización masiva de precio y stock de {} funkos", request.items().size());
+        var result = funkosService.bulkUpdate(request.items());
+        return ResponseEntity.ok(result);
+    }
+
     @DeleteMapping("{id}")
     public ResponseEntity<Funko> deleteFunko(@PathVariable Long id) {
         logger.info("Delete funko on id: {}", id);
@@ -0,0 +1,21 @@
+package org.example.funko.dto;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Cambio de precio y/o stock de un funko en una actualización masiva
+ * Los campos a null no se modifican
+ */
+public record FunkoBulkUpdateDto(
+        @NotNull(message = "El id no puede ser nulo")
+        Long id,
+        @DecimalMin(value ="10.99", message = "El precio no puede ser menor a 10.99")
+        @DecimalMax(value ="59.99", message = "El precio no puede ser mayor a 59.99")
+        Double price,
+        @Min(value = 0, message = "El stock no puede ser negativo")
+        Integer stock
+) {
+}
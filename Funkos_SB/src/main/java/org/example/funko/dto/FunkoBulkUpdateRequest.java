@@ -0,0 +1,12 @@
+package org.example.funko.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+public record FunkoBulkUpdateRequest(
+        @NotEmpty(message = "La actualización debe tener al menos un funko")
+        List<@Valid FunkoBulkUpdateDto> items
+) {
+}
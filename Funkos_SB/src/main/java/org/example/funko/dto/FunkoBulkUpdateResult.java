@@ -0,0 +1,10 @@
+package org.example.funko.dto;
+
+import java.util.List;
+
+public record FunkoBulkUpdateResult(
+        int requested,
+        int updated,
+        List<Long> notFound
+) {
+}
@@ -3,6 +3,7 @@ package org.example.funko.dto;
 import jakarta.validation.constraints.DecimalMax;
 import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
 
 
 public record  FunkoDto(
@@ -14,6 +15,7 @@ public record  FunkoDto(
     @NotBlank(message = "La descripcion no puede estar vacia")
     String description,
     String imagen,
+    @NotNull(message = "El precio no puede estar vacío")
     @DecimalMin(value ="10.99", message = "El precio no puede ser menor a 10.99")
     @DecimalMax(value ="59.99", message = "El precio no puede ser mayor a 59.99")
     Double price
@@ -0,0 +1,7 @@
+package org.example.funko.dto;
+
+public record FunkoImportError(
+        long linea,
+        String error
+) {
+}
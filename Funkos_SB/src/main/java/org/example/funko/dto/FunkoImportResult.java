@@ -0,0 +1,15 @@
+package org.example.funko.dto;
+
+import java.util.List;
+
+/**
+ * Resultado de una importación masiva: las filas con error no abortan el fichero
+ * Solo se devuelven los primeros errores, el total de filas fallidas va en failed
+ */
+public record FunkoImportResult(
+        long total,
+        long imported,
+        long failed,
+        List<FunkoImportError> errors
+) {
+}
@@ -0,0 +1,19 @@
+package org.example.funko.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Funko plano para los listados: la categoría va como su tipo y no se serializa la entidad
+ */
+public record FunkoListDto(
+        Long id,
+        String name,
+        String descripcion,
+        String categoria,
+        String imagen,
+        Double price,
+        Integer stock,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt
+) {
+}
@@ -3,6 +3,7 @@ package org.example.funko.mapper;
 
 import org.example.categoria.models.Categoria;
 import org.example.funko.dto.FunkoDto;
+import org.example.funko.dto.FunkoListDto;
 import org.example.funko.models.Descripcion;
 import org.example.funko.models.Funko;
 import org.springframework.stereotype.Component;
@@ -21,4 +22,18 @@ public class FunkosMapper {
         return funko;
     }
 
+    public FunkoListDto toFunkoListDto(Funko funko) {
+        return new FunkoListDto(
+                funko.getId(),
+                funko.getName(),
+                funko.getDescripcion() != null ? funko.getDescripcion().getDescripcion() : null,
+                funko.getCategoria() != null ? funko.getCategoria().getTipo() : null,
+                funko.getImagen(),
+                funko.getPrice(),
+                funko.getStock(),
+                funko.getCreatedAt(),
+                funko.getUpdatedAt()
+        );
+    }
+
 }
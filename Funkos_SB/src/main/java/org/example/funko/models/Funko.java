@@ -11,6 +11,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.example.categoria.models.Categoria;
+import org.hibernate.annotations.DynamicUpdate;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -20,13 +21,16 @@ import java.time.LocalDateTime;
 @Data
 @Entity
 @Table(name = "Funkos")
+@DynamicUpdate
 @EntityListeners(AuditingEntityListener.class)
 @NoArgsConstructor
 @AllArgsConstructor
 public class Funko {
     public static final Long DEFAULT_ID = 0L;
+    // Secuencia con pool de ids para que Hibernate pueda agrupar los inserts en lotes JDBC
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "funkos_seq")
+    @SequenceGenerator(name = "funkos_seq", sequenceName = "funkos_seq", allocationSize = 50)
     private Long id = DEFAULT_ID;
 
     @Column(nullable = false, length = 100)
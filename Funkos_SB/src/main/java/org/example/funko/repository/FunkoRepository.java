@@ -1,9 +1,67 @@
 package org.example.funko.repository;
 
+import jakarta.persistence.QueryHint;
 import org.example.funko.models.Funko;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public interface FunkoRepository extends JpaRepository<Funko, Long>, JpaSpecificationExecutor<Funko>, FunkoStockRepository {
+    // Filas por viaje del cursor de la exportación; las anotaciones no pueden leer propiedades
+    int EXPORT_FETCH_SIZE = 500;
 
-public interface FunkoRepository extends JpaRepository<Funko, Long>, JpaSpecificationExecutor<Funko> {
     Funko findByName(String name);
+
+    // La categoría se trae en la misma consulta de la página en lugar de un select por funko
+    @Override
+    @EntityGraph(attributePaths = {"categoria"})
+    Page<Funko> findAll(Specification<Funko> spec, Pageable pageable);
+
+    @Override
+    @EntityGraph(attributePaths = {"categoria"})
+    List<Funko> findAllById(Iterable<Long> ids);
+
+    // Versión del funko sin cargar la entidad, para responder 304 sin tocar la fila completa
+    // La respuesta lleva también su categoría, así que cuenta el cambio más reciente de los dos
+    @Query("select case when c.updatedAt is not null and c.updatedAt > f.updatedAt then c.updatedAt else f.updatedAt end " +
+            "from Funko f left join f.categoria c where f.id = :id")
+    Optional<LocalDateTime> findVersionById(@Param("id") Long id);
+
+    @Query("select coalesce(f.stock, 0) from Funko f where f.id = :id")
+    Optional<Integer> findStockById(@Param("id") Long id);
+
+    @Query("select f.id from Funko f where f.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    // Actualizaciones por conjunto: un UPDATE para todos los ids con el mismo precio o stock
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Funko f set f.price = :price, f.updatedAt = :now where f.id in :ids")
+    int updatePrice(@Param("ids") Collection<Long> ids, @Param("price") Double price, @Param("now") LocalDateTime now);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Funko f set f.stock = :stock, f.updatedAt = :now where f.id in :ids")
+    int updateStock(@Param("ids") Collection<Long> ids, @Param("stock") Integer stock, @Param("now") LocalDateTime now);
+
+    // Recorrido completo con cursor para la exportación: sin cache de segundo nivel y sin snapshots de dirty checking
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("select f from Funko f left join fetch f.categoria order by f.id")
+    Stream<Funko> streamAllBy();
 }
@@ -0,0 +1,19 @@
+package org.example.funko.repository;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Movimientos de stock de varios funkos en un único batch JDBC
+ * Las cantidades van por id de funko; el resultado trae las filas afectadas
+ * por cada id en el mismo orden en que se recorre el mapa
+ */
+public interface FunkoStockRepository {
+    // Admite cantidades negativas, que devuelven stock en el mismo batch
+    int[] reserveStock(Map<Long, Integer> cantidades, LocalDateTime now);
+
+    int[] returnStock(Map<Long, Integer> cantidades, LocalDateTime now);
+
+    // Deltas con signo, para volcar el stock que se ha movido fuera de la base de datos
+    int[] adjustStock(Map<Long, Integer> deltas, LocalDateTime now);
+}
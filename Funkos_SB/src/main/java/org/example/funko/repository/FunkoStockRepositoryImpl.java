@@ -0,0 +1,97 @@
+package org.example.funko.repository;
+
+import org.example.config.CacheConfig;
+import org.example.funko.models.Funko;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Usa la misma conexión que la transacción JPA en curso, así que un rollback
+ * también deshace lo que se haya escrito aquí.
+ * Todos los movimientos de stock pasan por aquí (pedidos, retenciones, pedidos masivos y el volcado
+ * del ledger), así que es aquí donde se sacan de la cache los funkos tocados cuando se confirman
+ */
+public class FunkoStockRepositoryImpl implements FunkoStockRepository {
+    // Solo descuenta si queda stock suficiente, la fila queda bloqueada hasta el commit.
+    // Con una cantidad negativa devuelve stock y la condición siempre se cumple
+    private static final String RESERVE_SQL = "update funkos set stock = stock - ?, updated_at = ? where id = ? and stock >= ?";
+    private static final String ADJUST_SQL = "update funkos set stock = stock + ?, updated_at = ? where id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectProvider<CacheManager> cacheManager;
+
+    @Autowired
+    public FunkoStockRepositoryImpl(JdbcTemplate jdbcTemplate, ObjectProvider<CacheManager> cacheManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public int[] reserveStock(Map<Long, Integer> cantidades, LocalDateTime now) {
+        List<Object[]> args = new ArrayList<>(cantidades.size());
+        cantidades.forEach((id, cantidad) -> args.add(new Object[]{cantidad, Timestamp.valueOf(now), id, cantidad}));
+        int[] result = jdbcTemplate.batchUpdate(RESERVE_SQL, args);
+        evictAfterCommit(cantidades.keySet());
+        return result;
+    }
+
+    @Override
+    public int[] returnStock(Map<Long, Integer> cantidades, LocalDateTime now) {
+        return adjustStock(cantidades, now);
+    }
+
+    @Override
+    public int[] adjustStock(Map<Long, Integer> deltas, LocalDateTime now) {
+        List<Object[]> args = new ArrayList<>(deltas.size());
+        deltas.forEach((id, delta) -> args.add(new Object[]{delta, Timestamp.valueOf(now), id}));
+        int[] result = jdbcTemplate.batchUpdate(ADJUST_SQL, args);
+        evictAfterCommit(deltas.keySet());
+        return result;
+    }
+
+    private void evictAfterCommit(Set<Long> ids) {
+        Set<Long> copia = new HashSet<>(ids);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(copia);
+                }
+            });
+        } else {
+            evict(copia);
+        }
+    }
+
+    private void evict(Set<Long> ids) {
+        CacheManager manager = cacheManager.getIfAvailable();
+        if (manager == null) {
+            return;
+        }
+        Cache funkos = manager.getCache(CacheConfig.FUNKOS);
+        if (funkos != null) {
+            ids.forEach(funkos::evict);
+        }
+        // La cache por nombre no tiene el id en la clave: se quitan los funkos tocados recorriéndola
+        Cache nombres = manager.getCache(CacheConfig.FUNKOS_NOMBRE);
+        if (nombres instanceof CaffeineCache caffeine) {
+            caffeine.getNativeCache().asMap().values().removeIf(value -> value instanceof Funko funko && ids.contains(funko.getId()));
+        } else if (nombres != null) {
+            nombres.clear();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.funko.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.funko.models.Funko;
+import org.example.funko.repository.FunkoRepository;
+import org.example.utils.search.TrigramIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Índice de trigramas sobre el nombre y la descripción de los funkos
+ * Se construye al arrancar y lo mantiene al día el servicio de funkos.
+ * Mientras no está listo, o si la búsqueda es demasiado corta, devuelve vacío
+ * y el servicio usa el LIKE de siempre
+ */
+@Component
+@Slf4j
+public class FunkoSearchIndex {
+    private final FunkoRepository funkoRepository;
+    private final TrigramIndex nombres = new TrigramIndex();
+    private final TrigramIndex descripciones = new TrigramIndex();
+    private volatile boolean ready = false;
+
+    @Autowired
+    public FunkoSearchIndex(FunkoRepository funkoRepository) {
+        this.funkoRepository = funkoRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        log.info("Construyendo índice de búsqueda de funkos");
+        nombres.clear();
+        descripciones.clear();
+        funkoRepository.findAll().forEach(this::index);
+        ready = true;
+        log.info("Índice de búsqueda de funkos construido con {} funkos", nombres.size());
+    }
+
+    public void index(Funko funko) {
+        if (funko == null || funko.getId() == null) {
+            return;
+        }
+        nombres.put(funko.getId(), funko.getName());
+        descripciones.put(funko.getId(), funko.getDescripcion() != null ? funko.getDescripcion().getDescripcion() : null);
+    }
+
+    public void remove(Long id) {
+        nombres.remove(id);
+        descripciones.remove(id);
+    }
+
+    public Optional<Set<Long>> searchName(String query) {
+        if (!ready || !TrigramIndex.isSearchable(query)) {
+            return Optional.empty();
+        }
+        return Optional.of(nombres.search(query));
+    }
+
+    public Optional<Set<Long>> search(String query) {
+        if (!ready || !TrigramIndex.isSearchable(query)) {
+            return Optional.empty();
+        }
+        Set<Long> ids = new HashSet<>(nombres.search(query));
+        ids.addAll(descripciones.search(query));
+        return Optional.of(ids);
+    }
+}
@@ -0,0 +1,8 @@
+package org.example.funko.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface FunkosExportService {
+    long exportFunkos(OutputStream out) throws IOException;
+}
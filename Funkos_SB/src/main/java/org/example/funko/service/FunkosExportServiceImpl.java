@@ -0,0 +1,69 @@
+package org.example.funko.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.example.funko.mapper.FunkosMapper;
+import org.example.funko.models.Funko;
+import org.example.funko.repository.FunkoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Exportación del catálogo completo en NDJSON
+ * Los funkos se leen con el cursor de FunkoRepository.streamAllBy y se escriben según llegan,
+ * vaciando el contexto de persistencia cada funkos.export.batch-size funkos para que la memoria
+ * no crezca con el catálogo. Cada viaje del cursor trae FunkoRepository.EXPORT_FETCH_SIZE filas
+ */
+@Service
+public class FunkosExportServiceImpl implements FunkosExportService {
+    private final Logger logger = LoggerFactory.getLogger(FunkosExportServiceImpl.class);
+    private final FunkoRepository funkoRepository;
+    private final FunkosMapper funkosMapper;
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final int batchSize;
+
+    @Autowired
+    public FunkosExportServiceImpl(FunkoRepository funkoRepository, FunkosMapper funkosMapper, ObjectMapper objectMapper,
+                                   EntityManager entityManager, @Value("${funkos.export.batch-size:500}") int batchSize) {
+        this.funkoRepository = funkoRepository;
+        this.funkosMapper = funkosMapper;
+        this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long exportFunkos(OutputStream out) throws IOException {
+        logger.info("Exportando catálogo de funkos en NDJSON con lotes de {}", batchSize);
+        long total = 0;
+        try (Stream<Funko> funkos = funkoRepository.streamAllBy();
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            // El stream de salida lo cierra el contenedor, no el generador
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            Iterator<Funko> it = funkos.iterator();
+            while (it.hasNext()) {
+                objectMapper.writeValue(generator, funkosMapper.toFunkoListDto(it.next()));
+                generator.writeRaw('\n');
+                if (++total % batchSize == 0) {
+                    generator.flush();
+                    entityManager.clear();
+                }
+            }
+            generator.flush();
+        }
+        logger.info("Exportados {} funkos", total);
+        return total;
+    }
+}
@@ -0,0 +1,10 @@
+package org.example.funko.service;
+
+import org.example.funko.dto.FunkoImportResult;
+import org.springframework.http.MediaType;
+
+import java.io.InputStream;
+
+public interface FunkosImportService {
+    FunkoImportResult importFunkos(InputStream body, MediaType contentType);
+}
@@ -0,0 +1,256 @@
+package org.example.funko.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.example.categoria.models.Categoria;
+import org.example.categoria.repository.CategoriasRepository;
+import org.example.funko.dto.FunkoDto;
+import org.example.funko.dto.FunkoImportError;
+import org.example.funko.dto.FunkoImportResult;
+import org.example.funko.mapper.FunkosMapper;
+import org.example.funko.models.Funko;
+import org.example.funko.repository.FunkoRepository;
+import org.example.funko.search.FunkoSearchIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Importación masiva de funkos desde CSV o NDJSON
+ * El cuerpo se lee línea a línea, cada fila se valida con las reglas de FunkoDto
+ * y se guarda en lotes de funkos.import.batch-size, cada uno en su transacción
+ * y con un único flush para que Hibernate lo mande como lote JDBC.
+ * Si un lote falla se vuelve a intentar fila a fila para informar solo de las líneas erróneas
+ */
+@Service
+public class FunkosImportServiceImpl implements FunkosImportService {
+    public static final MediaType TEXT_CSV = MediaType.valueOf("text/csv");
+    public static final MediaType APPLICATION_NDJSON = MediaType.valueOf("application/x-ndjson");
+    private static final int MAX_ERRORS = 1000;
+    private static final List<String> CSV_COLUMNS = List.of("name", "categoria", "description", "imagen", "price");
+
+    private final Logger logger = LoggerFactory.getLogger(FunkosImportServiceImpl.class);
+    private final FunkoRepository funkoRepository;
+    private final CategoriasRepository categoriasRepository;
+    private final FunkosMapper funkosMapper;
+    private final FunkoSearchIndex funkoSearchIndex;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final int batchSize;
+
+    @Autowired
+    public FunkosImportServiceImpl(FunkoRepository funkoRepository, CategoriasRepository categoriasRepository,
+                                   FunkosMapper funkosMapper, FunkoSearchIndex funkoSearchIndex, Validator validator,
+                                   ObjectMapper objectMapper, TransactionTemplate transactionTemplate,
+                                   EntityManager entityManager, @Value("${funkos.import.batch-size:100}") int batchSize) {
+        this.funkoRepository = funkoRepository;
+        this.categoriasRepository = categoriasRepository;
+        this.funkosMapper = funkosMapper;
+        this.funkoSearchIndex = funkoSearchIndex;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.entityManager = entityManager;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public FunkoImportResult importFunkos(InputStream body, MediaType contentType) {
+        boolean csv = TEXT_CSV.isCompatibleWith(contentType);
+        logger.info("Importando funkos en formato {} con lotes de {}", csv ? "CSV" : "NDJSON", batchSize);
+
+        // Las categorías se resuelven una sola vez por tipo
+        Map<String, Optional<Categoria>> categorias = new HashMap<>();
+        List<FunkoImportError> errors = new ArrayList<>();
+        List<Funko> lote = new ArrayList<>(batchSize);
+        List<Long> lineasLote = new ArrayList<>(batchSize);
+        long total = 0;
+        long imported = 0;
+        long failed = 0;
+        long linea = 0;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            Map<String, Integer> columnas = null;
+            if (csv) {
+                String header = reader.readLine();
+                linea++;
+                if (header == null) {
+                    return new FunkoImportResult(0, 0, 0, List.of());
+                }
+                columnas = parseHeader(header);
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                linea++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                total++;
+                try {
+                    FunkoDto dto = csv ? fromCsv(line, columnas) : objectMapper.readValue(line, FunkoDto.class);
+                    Set<ConstraintViolation<FunkoDto>> violations = validator.validate(dto);
+                    if (!violations.isEmpty()) {
+                        throw new IllegalArgumentException(violations.stream()
+                                .map(ConstraintViolation::getMessage)
+                                .sorted()
+                                .collect(Collectors.joining(", ")));
+                    }
+                    Categoria categoria = categorias
+                            .computeIfAbsent(dto.categoria(), tipo -> Optional.ofNullable(categoriasRepository.findByTipo(tipo)))
+                            .orElseThrow(() -> new IllegalArgumentException("Categoría no encontrada: " + dto.categoria()));
+                    Funko funko = funkosMapper.fromFunkoDto(dto);
+                    // Sin id para que se inserte directamente con la secuencia y no pase por merge
+                    funko.setId(null);
+                    funko.setCategoria(categoria);
+                    lote.add(funko);
+                    lineasLote.add(linea);
+                } catch (IOException | RuntimeException e) {
+                    failed++;
+                    addError(errors, linea, e.getMessage());
+                }
+                if (lote.size() >= batchSize) {
+                    int saved = guardarLote(lote, lineasLote, errors);
+                    imported += saved;
+                    failed += lote.size() - saved;
+                    lote.clear();
+                    lineasLote.clear();
+                }
+            }
+            if (!lote.isEmpty()) {
+                int saved = guardarLote(lote, lineasLote, errors);
+                imported += saved;
+                failed += lote.size() - saved;
+            }
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No se puede leer el fichero de importación: " + e.getMessage());
+        }
+
+        logger.info("Importación terminada: {} filas, {} importadas, {} con error", total, imported, failed);
+        return new FunkoImportResult(total, imported, failed, errors);
+    }
+
+    private int guardarLote(List<Funko> lote, List<Long> lineas, List<FunkoImportError> errors) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                funkoRepository.saveAll(lote);
+                entityManager.flush();
+                // Se vacía el contexto de persistencia para que la memoria no crezca con el fichero
+                entityManager.clear();
+            });
+            lote.forEach(funkoSearchIndex::index);
+            return lote.size();
+        } catch (RuntimeException e) {
+            logger.warn("Error al guardar un lote de {} funkos, se guardan uno a uno: {}", lote.size(), e.getMessage());
+            return guardarUnoAUno(lote, lineas, errors);
+        }
+    }
+
+    private int guardarUnoAUno(List<Funko> lote, List<Long> lineas, List<FunkoImportError> errors) {
+        int saved = 0;
+        for (int i = 0; i < lote.size(); i++) {
+            Funko funko = lote.get(i);
+            // El intento del lote ya le habrá dado id de la secuencia
+            funko.setId(null);
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    funkoRepository.save(funko);
+                    entityManager.flush();
+                    entityManager.clear();
+                });
+                funkoSearchIndex.index(funko);
+                saved++;
+            } catch (RuntimeException e) {
+                addError(errors, lineas.get(i), "Error al guardar: " + e.getMessage());
+            }
+        }
+        return saved;
+    }
+
+    private void addError(List<FunkoImportError> errors, long linea, String error) {
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(new FunkoImportError(linea, error));
+        }
+    }
+
+    private Map<String, Integer> parseHeader(String header) {
+        List<String> names = parseCsvLine(header);
+        Map<String, Integer> columnas = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            columnas.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        if (!columnas.keySet().containsAll(CSV_COLUMNS)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La cabecera del CSV debe tener las columnas " + CSV_COLUMNS);
+        }
+        return columnas;
+    }
+
+    private FunkoDto fromCsv(String line, Map<String, Integer> columnas) {
+        List<String> fields = parseCsvLine(line);
+        String price = field(fields, columnas, "price");
+        return new FunkoDto(
+                field(fields, columnas, "name"),
+                field(fields, columnas, "categoria"),
+                field(fields, columnas, "description"),
+                field(fields, columnas, "imagen"),
+                price != null ? Double.valueOf(price) : null
+        );
+    }
+
+    private String field(List<String> fields, Map<String, Integer> columnas, String name) {
+        int index = columnas.get(name);
+        if (index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Separa una línea CSV por comas respetando los campos entre comillas ("" escapa una comilla)
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -1,17 +1,28 @@
 package org.example.funko.service;
 
 
+import org.example.funko.dto.FunkoBulkUpdateDto;
+import org.example.funko.dto.FunkoBulkUpdateResult;
 import org.example.funko.models.Funko;
+import org.example.utils.pageresponse.KeysetCursor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 public interface FunkosService {
     Page<Funko> getAllFunkos(Optional<String> name, Optional<String> categoria, Optional<Double> price, Pageable pageable);
+    Slice<Funko> getAllFunkosSeek(Optional<String> name, Optional<String> categoria, Optional<Double> price, Optional<KeysetCursor> cursor, int size, String sortBy, Sort.Direction direction);
+    Page<Funko> searchFunkos(String q, Pageable pageable);
     Funko getFunkoById(Long id);
+    Optional<LocalDateTime> getFunkoVersion(Long id);
     Funko getFunkoByName(String name);
     Funko createFunko(Funko funko);
     Funko updateFunko(Long id, Funko funko);
     Funko deleteFunko(Long id);
+    FunkoBulkUpdateResult bulkUpdate(List<FunkoBulkUpdateDto> items);
 }
@@ -5,40 +5,66 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.persistence.criteria.Join;
 import org.example.categoria.models.Categoria;
+import org.example.funko.dto.FunkoBulkUpdateDto;
+import org.example.funko.dto.FunkoBulkUpdateResult;
 import org.example.funko.exceptions.FunkosExceptions;
 import org.example.funko.models.Funko;
 import org.example.funko.repository.FunkoRepository;
+import org.example.funko.search.FunkoSearchIndex;
 import org.example.notification.config.WebSocketConfig;
 import org.example.notification.config.WebSocketHandler;
 import org.example.notification.dto.NotificationDto;
 import org.example.notification.mapper.NotificationMapper;
 import org.example.notification.models.Notification;
+import org.example.pedido.stock.StockLedger;
+import org.example.utils.pageresponse.KeysetCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @CacheConfig(cacheNames = {"Funkos"})
 @Service
 public class FunkosServiceImpl implements FunkosService {
+    private static final int MAX_IN_SIZE = 1000;
     private final Logger logger = LoggerFactory.getLogger(FunkosServiceImpl.class);
     private final FunkoRepository funkoRepository;
     private final WebSocketConfig webSocketConfig;
     private final ObjectMapper mapper;
     private final NotificationMapper notificationMapper;
+    private final FunkoSearchIndex funkoSearchIndex;
+    private final CacheManager cacheManager;
+    private final StockLedger stockLedger;
     private WebSocketHandler websocketService;
     @Autowired
-    public FunkosServiceImpl(FunkoRepository funkoRepository, WebSocketConfig webSocketConfig, NotificationMapper notificationMapper) {
+    public FunkosServiceImpl(FunkoRepository funkoRepository, WebSocketConfig webSocketConfig, NotificationMapper notificationMapper, FunkoSearchIndex funkoSearchIndex, CacheManager cacheManager, StockLedger stockLedger) {
         this.funkoRepository = funkoRepository;
+        this.funkoSearchIndex = funkoSearchIndex;
+        this.cacheManager = cacheManager;
+        this.stockLedger = stockLedger;
         this.webSocketConfig = webSocketConfig;
         mapper = new ObjectMapper();
         this.notificationMapper = notificationMapper;
@@ -48,10 +74,74 @@ public class FunkosServiceImpl implements FunkosService {
 
     @Override
     public Page<Funko> getAllFunkos(Optional<String> name, Optional<String> categoria, Optional<Double> price, Pageable pageable) {
+        return funkoRepository.findAll(criterio(name, categoria, price), pageable);
+    }
 
-        Specification<Funko> specNameFunko = (root, query, criteriaBuilder) ->
-                name.map(n -> criteriaBuilder.like(criteriaBuilder.lower(root.get("name")), "%" + n + "%"))
-                        .orElseGet(() -> criteriaBuilder.isTrue(criteriaBuilder.literal(true)));
+    @Override
+    public Slice<Funko> getAllFunkosSeek(Optional<String> name, Optional<String> categoria, Optional<Double> price, Optional<KeysetCursor> cursor, int size, String sortBy, Sort.Direction direction) {
+        logger.info("Obteniendo funkos por keyset desde el cursor {}", cursor);
+        Specification<Funko> criterio = criterio(name, categoria, price);
+        if (cursor.isPresent()) {
+            criterio = criterio.and(cursor.get().after(sortBy, direction));
+        }
+        Sort sort = KeysetCursor.sort(sortBy, direction);
+        // Se pide una fila de más para saber si hay siguiente página sin hacer COUNT
+        List<Funko> content = funkoRepository.findBy(criterio, query -> query.sortBy(sort).project("categoria").limit(size + 1).all());
+        boolean hasNext = content.size() > size;
+        return new SliceImpl<>(hasNext ? content.subList(0, size) : content, PageRequest.of(0, size, sort), hasNext);
+    }
+
+    @Override
+    public Page<Funko> searchFunkos(String q, Pageable pageable) {
+        logger.info("Buscando funkos por nombre o descripción con {}", q);
+        var candidatos = funkoSearchIndex.search(q);
+        if (candidatos.isEmpty()) {
+            return funkoRepository.findAll(specTexto(q), pageable);
+        }
+        Set<Long> ids = candidatos.get();
+        if (ids.isEmpty()) {
+            return Page.empty(pageable);
+        }
+        Sort.Order orderById = pageable.getSort().getOrderFor("id");
+        if (pageable.getSort().isUnsorted() || (orderById != null && pageable.getSort().stream().count() == 1)) {
+            // Ordenando por id la página se resuelve con el índice y solo se cargan sus funkos
+            Comparator<Long> orden = orderById != null && orderById.isDescending() ? Comparator.reverseOrder() : Comparator.naturalOrder();
+            List<Long> sorted = ids.stream().sorted(orden).toList();
+            int from = (int) Math.min(pageable.getOffset(), sorted.size());
+            int to = Math.min(from + pageable.getPageSize(), sorted.size());
+            List<Long> pageIds = sorted.subList(from, to);
+            Map<Long, Funko> funkos = funkoRepository.findAllById(pageIds).stream()
+                    .collect(Collectors.toMap(Funko::getId, Function.identity()));
+            List<Funko> content = pageIds.stream().map(funkos::get).filter(Objects::nonNull).toList();
+            return new PageImpl<>(content, pageable, sorted.size());
+        }
+        if (ids.size() > MAX_IN_SIZE) {
+            // Demasiados candidatos para un IN: con otro orden es más barato dejar el LIKE a la base de datos
+            return funkoRepository.findAll(specTexto(q), pageable);
+        }
+        Specification<Funko> specIds = (root, query, criteriaBuilder) -> root.get("id").in(ids);
+        return funkoRepository.findAll(specIds, pageable);
+    }
+
+    private static Specification<Funko> specTexto(String q) {
+        return (root, query, criteriaBuilder) -> criteriaBuilder.or(
+                criteriaBuilder.like(criteriaBuilder.lower(root.get("name")), "%" + q.toLowerCase() + "%"),
+                criteriaBuilder.like(criteriaBuilder.lower(root.get("descripcion").get("descripcion")), "%" + q.toLowerCase() + "%")
+        );
+    }
+
+    private Specification<Funko> criterio(Optional<String> name, Optional<String> categoria, Optional<Double> price) {
+        // Si el índice de trigramas puede resolver el nombre se filtra por sus ids en lugar de por LIKE,
+        // salvo que sean tantos que el IN salga más caro que el propio LIKE
+        Optional<Set<Long>> candidatos = name.flatMap(funkoSearchIndex::searchName)
+                .filter(ids -> ids.size() <= MAX_IN_SIZE);
+        Specification<Funko> specNameFunko = (root, query, criteriaBuilder) -> {
+            if (candidatos.isPresent()) {
+                return candidatos.get().isEmpty() ? criteriaBuilder.disjunction() : root.get("id").in(candidatos.get());
+            }
+            return name.map(n -> criteriaBuilder.like(criteriaBuilder.lower(root.get("name")), "%" + n + "%"))
+                    .orElseGet(() -> criteriaBuilder.isTrue(criteriaBuilder.literal(true)));
+        };
 
         Specification<Funko> specCategoriaFunko = (root, query, criteriaBuilder) ->
                 categoria.map(c -> {
@@ -64,19 +154,26 @@ public class FunkosServiceImpl implements FunkosService {
                         .orElseGet(() -> criteriaBuilder.isTrue(criteriaBuilder.literal(true)));
 
 
-        Specification<Funko> criterio = Specification.where(specNameFunko)
+        return Specification.where(specNameFunko)
                 .and(specCategoriaFunko)
                 .and(specPriceFunko);
-        return funkoRepository.findAll(criterio, pageable);
     }
 
     @Override
+    @Cacheable(key = "#id")
     public Funko getFunkoById(Long id) {
         logger.info("Obteniendo funko por id {}", id);
         return funkoRepository.findById(id).orElseThrow(() -> new FunkosExceptions.FunkoNotFound(id));
     }
 
     @Override
+    public Optional<LocalDateTime> getFunkoVersion(Long id) {
+        logger.info("Obteniendo versión del funko con id {}", id);
+        return funkoRepository.findVersionById(id);
+    }
+
+    @Override
+    @Cacheable(cacheNames = "FunkosNombre", key = "#name")
     public Funko getFunkoByName(String name) {
         logger.info("Obteniendo funko por nombre {}", name);
         var res =  funkoRepository.findByName(name);
@@ -91,11 +188,19 @@ public class FunkosServiceImpl implements FunkosService {
     public Funko createFunko(Funko funko) {
         logger.info("Creando funko");
         onChange(Notification.Tipo.CREATE, funko);
-        return funkoRepository.save(funko);
+        var saved = funkoRepository.save(funko);
+        // El índice de búsqueda está en memoria: solo se toca con el cambio confirmado
+        afterCommit(() -> funkoSearchIndex.index(saved));
+        return saved;
     }
 
     @Override
-    @CachePut(key = "#result.id")
+    @Caching(
+            put = @CachePut(key = "#result.id"),
+            evict = @CacheEvict(cacheNames = "FunkosNombre", allEntries = true)
+    )
+    // En una transacción y con actualización dinámica el stock no entra en el UPDATE y no pisa lo que vuelque el ledger
+    @Transactional
     public Funko updateFunko(Long id, Funko funko) {
         logger.info("Actualizando persona con id {}", id);
         var res = funkoRepository.findById(id).orElseThrow( () -> new FunkosExceptions.FunkoNotFound(id));
@@ -105,32 +210,131 @@ public class FunkosServiceImpl implements FunkosService {
         res.setDescripcion(funko.getDescripcion());
         res.setImagen(funko.getImagen());
         onChange(Notification.Tipo.UPDATE, res);
-        return funkoRepository.save(res);
+        var saved = funkoRepository.save(res);
+        afterCommit(() -> funkoSearchIndex.index(saved));
+        return saved;
     }
 
     @Override
-    @CacheEvict(key = "#result.id")
+    @Caching(evict = {
+            @CacheEvict(key = "#id"),
+            @CacheEvict(cacheNames = "FunkosNombre", allEntries = true)
+    })
     public Funko deleteFunko(Long id) {
         logger.info("Borrando persona con id {}", id);
         Funko funko = funkoRepository.findById(id).orElseThrow(() -> new FunkosExceptions.FunkoNotFound(id));
         funkoRepository.deleteById(id);
+        afterCommit(() -> funkoSearchIndex.remove(id));
         onChange(Notification.Tipo.DELETE, funko);
         return funko;
     }
 
+    @Override
+    @Transactional
+    public FunkoBulkUpdateResult bulkUpdate(List<FunkoBulkUpdateDto> items) {
+        logger.info("Actualización masiva de {} funkos", items.size());
+        Set<Long> ids = items.stream().map(FunkoBulkUpdateDto::id).collect(Collectors.toCollection(LinkedHashSet::new));
+        Set<Long> existentes = new HashSet<>();
+        for (List<Long> chunk : chunks(new ArrayList<>(ids))) {
+            existentes.addAll(funkoRepository.findExistingIds(chunk));
+        }
+
+        // Si un id se repite gana el último cambio; luego se agrupan los ids por valor
+        Map<Long, Double> precios = new LinkedHashMap<>();
+        Map<Long, Integer> stocks = new LinkedHashMap<>();
+        List<FunkoBulkUpdateDto> aplicados = new ArrayList<>();
+        for (FunkoBulkUpdateDto item : items) {
+            if (!existentes.contains(item.id())) {
+                continue;
+            }
+            if (item.price() != null) {
+                precios.put(item.id(), item.price());
+            }
+            if (item.stock() != null) {
+                stocks.put(item.id(), item.stock());
+            }
+            aplicados.add(item);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        agrupar(precios).forEach((price, funkos) ->
+                chunks(funkos).forEach(chunk -> funkoRepository.updatePrice(chunk, price, now)));
+        agrupar(stocks).forEach((stock, funkos) ->
+                chunks(funkos).forEach(chunk -> funkoRepository.updateStock(chunk, stock, now)));
+
+        // La cache y los clientes ws se enteran cuando los cambios ya están confirmados
+        afterCommit(() -> {
+            // El stock se ha escrito directamente: el ledger de pedidos tiene que volver a leerlo
+            stockLedger.invalidate(stocks.keySet());
+            Cache funkosCache = cacheManager.getCache(org.example.config.CacheConfig.FUNKOS);
+            if (funkosCache != null) {
+                existentes.forEach(funkosCache::evict);
+            }
+            Cache nombresCache = cacheManager.getCache(org.example.config.CacheConfig.FUNKOS_NOMBRE);
+            if (nombresCache != null) {
+                nombresCache.clear();
+            }
+            onBulkChange(aplicados);
+        });
+
+        List<Long> notFound = ids.stream().filter(id -> !existentes.contains(id)).toList();
+        return new FunkoBulkUpdateResult(items.size(), existentes.size(), notFound);
+    }
+
+    private static <V> Map<V, List<Long>> agrupar(Map<Long, V> valores) {
+        Map<V, List<Long>> grupos = new LinkedHashMap<>();
+        valores.forEach((id, valor) -> grupos.computeIfAbsent(valor, v -> new ArrayList<>()).add(id));
+        return grupos;
+    }
+
+    private static List<List<Long>> chunks(List<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += MAX_IN_SIZE) {
+            chunks.add(ids.subList(i, Math.min(i + MAX_IN_SIZE, ids.size())));
+        }
+        return chunks;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    void onBulkChange(List<FunkoBulkUpdateDto> data) {
+        logger.info("Servicio de funkos onBulkChange con {} cambios", data.size());
+        sendNotification(new Notification<>(
+                "FUNKOS",
+                Notification.Tipo.UPDATE,
+                data,
+                LocalDateTime.now().toString()
+        ));
+    }
+
     void onChange(Notification.Tipo tipo, Funko data){
         logger.info("Servicio de funkos onChange con tipo: " +  tipo + " y datos: " + data);
+        Notification<NotificationDto> notification = new Notification<>(
+                "FUNKOS",
+                tipo,
+                NotificationMapper.toFunkoNotificationDto(data),
+                LocalDateTime.now().toString()
+        );
+        sendNotification(notification);
+    }
+
+    private void sendNotification(Notification<?> notification) {
         if(websocketService == null){
             logger.warn("No se ha podido enviar la notificación a los clientes ws, no se ha encontrado el servicio");
             websocketService = this.webSocketConfig.webSocketFunkosHandler();
         }
         try {
-            Notification<NotificationDto> notification = new Notification<>(
-                    "FUNKOS",
-                    tipo,
-                    NotificationMapper.toFunkoNotificationDto(data),
-                    LocalDateTime.now().toString()
-            );
             String json = mapper.writeValueAsString((notification));
             logger.info("Enviando mensaje a los clientes ws");
             Thread senderThread = new Thread(() ->{
@@ -0,0 +1,45 @@
+package org.example.pedido.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.pedido.models.Pedido;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+
+/**
+ * Índices de la colección de pedidos
+ * Se aseguran al arrancar; si ya existen no se hace nada y si Mongo no está disponible
+ * la aplicación arranca igual y solo se avisa en el log
+ */
+@Component
+@Slf4j
+public class PedidosIndexes {
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public PedidosIndexes(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        log.info("Comprobando índices de la colección de pedidos");
+        try {
+            var indexOps = mongoTemplate.indexOps(Pedido.class);
+            // Pedidos de un usuario, los más recientes primero
+            indexOps.ensureIndex(new Index()
+                    .on("idUsuario", Sort.Direction.ASC)
+                    .on("createdAt", Sort.Direction.DESC)
+                    .named("idUsuario_createdAt"));
+            indexOps.ensureIndex(new Index()
+                    .on("createdAt", Sort.Direction.DESC)
+                    .named("createdAt"));
+        } catch (RuntimeException e) {
+            log.warn("No se han podido crear los índices de pedidos: {}", e.getMessage());
+        }
+    }
+}
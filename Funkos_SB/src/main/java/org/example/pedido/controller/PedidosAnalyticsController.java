@@ -0,0 +1,66 @@
+package org.example.pedido.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.pedido.dto.VentasCategoriaDto;
+import org.example.pedido.dto.VentasDiaDto;
+import org.example.pedido.dto.VentasProductoDto;
+import org.example.pedido.service.PedidosAnalyticsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("${api.path}/${api.version}/pedidos/analytics")
+@Slf4j
+public class PedidosAnalyticsController {
+    private PedidosAnalyticsService pedidosAnalyticsService;
+
+    @Autowired
+    public PedidosAnalyticsController(PedidosAnalyticsService pedidosAnalyticsService) {
+        this.pedidosAnalyticsService = pedidosAnalyticsService;
+    }
+
+    @GetMapping("/productos")
+    public ResponseEntity<List<VentasProductoDto>> getVentasPorProducto(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta
+    ) {
+        log.info("Obteniendo ventas por producto");
+        return ResponseEntity.ok(pedidosAnalyticsService.ventasPorProducto(desde, hasta));
+    }
+
+    @GetMapping("/dias")
+    public ResponseEntity<List<VentasDiaDto>> getVentasPorDia(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta
+    ) {
+        log.info("Obteniendo ventas por día");
+        return ResponseEntity.ok(pedidosAnalyticsService.ventasPorDia(desde, hasta));
+    }
+
+    @GetMapping("/categorias")
+    public ResponseEntity<List<VentasCategoriaDto>> getVentasPorCategoria(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta
+    ) {
+        log.info("Obteniendo ventas por categoría");
+        return ResponseEntity.ok(pedidosAnalyticsService.ventasPorCategoria(desde, hasta));
+    }
+
+    @PostMapping("/rebuild")
+    public ResponseEntity<Map<String, Long>> rebuild() {
+        log.info("Reconstruyendo rollups de ventas");
+        return ResponseEntity.ok(Map.of("buckets", pedidosAnalyticsService.rebuild()));
+    }
+
+    @PostMapping("/usuarios/rebuild")
+    public ResponseEntity<Map<String, Long>> rebuildUsuarios() {
+        log.info("Reconstruyendo resúmenes de pedidos por usuario");
+        return ResponseEntity.ok(Map.of("usuarios", pedidosAnalyticsService.rebuildUsuarios()));
+    }
+}
@@ -4,32 +4,67 @@ import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
 import org.example.categoria.models.Categoria;
+import org.example.pedido.dto.PedidoBulkResultado;
+import org.example.pedido.dto.PedidoEstadoDto;
+import org.example.pedido.dto.PedidoHoldDto;
+import org.example.pedido.dto.PedidoResumen;
+import org.example.pedido.exceptions.PedidoNotFound;
 import org.example.pedido.models.Pedido;
+import org.example.pedido.models.PedidoOutbox;
+import org.example.pedido.models.PedidoUsuarioResumen;
+import org.example.pedido.service.PedidosAnalyticsService;
+import org.example.pedido.service.PedidosBulkService;
+import org.example.pedido.service.PedidosFlashSale;
+import org.example.pedido.service.PedidosHoldService;
+import org.example.pedido.service.PedidosIdempotenciaService;
+import org.example.pedido.service.PedidosOutboxService;
 import org.example.pedido.service.PedidosService;
 import org.example.utils.pageresponse.PageResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.net.URI;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 @RestController
 @RequestMapping("${api.path}/${api.version}/pedidos")
 @Slf4j
 public class PedidosRestController {
     private PedidosService pedidosService;
+    private PedidosFlashSale pedidosFlashSale;
+    private PedidosOutboxService pedidosOutboxService;
+    private PedidosBulkService pedidosBulkService;
+    private PedidosAnalyticsService pedidosAnalyticsService;
+    private PedidosHoldService pedidosHoldService;
+    private PedidosIdempotenciaService pedidosIdempotenciaService;
+    @Value("${api.path}/${api.version}/pedidos")
+    private String pedidosPath;
 
     @Autowired
-    public PedidosRestController(PedidosService pedidosService) {
+    public PedidosRestController(PedidosService pedidosService, PedidosFlashSale pedidosFlashSale,
+                                 PedidosOutboxService pedidosOutboxService, PedidosBulkService pedidosBulkService,
+                                 PedidosAnalyticsService pedidosAnalyticsService, PedidosHoldService pedidosHoldService,
+                                 PedidosIdempotenciaService pedidosIdempotenciaService) {
         this.pedidosService = pedidosService;
+        this.pedidosFlashSale = pedidosFlashSale;
+        this.pedidosOutboxService = pedidosOutboxService;
+        this.pedidosBulkService = pedidosBulkService;
+        this.pedidosAnalyticsService = pedidosAnalyticsService;
+        this.pedidosHoldService = pedidosHoldService;
+        this.pedidosIdempotenciaService = pedidosIdempotenciaService;
     }
 
     @GetMapping
-    public ResponseEntity<PageResponse<Pedido>> getAll(
+    public ResponseEntity<PageResponse<PedidoResumen>> getAll(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id") String sortBy,
@@ -50,7 +85,7 @@ public class PedidosRestController {
     }
 
     @GetMapping("/usuario/{id}")
-    public ResponseEntity<PageResponse<Pedido>> getPedidosByUsuario(
+    public ResponseEntity<PageResponse<PedidoResumen>> getPedidosByUsuario(
             @PathVariable("id") Long idUsuario,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
@@ -63,10 +98,107 @@ public class PedidosRestController {
         return ResponseEntity.ok(PageResponse.of(pedidosService.findByIdUsuario(idUsuario, pageable), sortBy, direction));
     }
 
+    @GetMapping("/usuario/{id}/resumen")
+    public ResponseEntity<PedidoUsuarioResumen> getResumenUsuario(@PathVariable("id") Long idUsuario) {
+        log.info("Obteniendo resumen de pedidos del usuario con id: " + idUsuario);
+        return ResponseEntity.ok(pedidosAnalyticsService.getResumenUsuario(idUsuario));
+    }
+
+    @GetMapping("/estado/{id}")
+    public ResponseEntity<PedidoEstadoDto> getEstadoPedido(@PathVariable("id") ObjectId idPedido) {
+        log.info("Obteniendo estado del pedido con id: " + idPedido);
+        return ResponseEntity.ok(toEstadoDto(pedidosOutboxService.getEstado(idPedido)));
+    }
+
     @PostMapping()
-    public ResponseEntity<Pedido> createPedido(@Valid @RequestBody Pedido pedido) {
+    public ResponseEntity<?> createPedido(@Valid @RequestBody Pedido pedido,
+                                          @RequestHeader(value = "Prefer", required = false) String prefer,
+                                          @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         log.info("Creando pedido: " + pedido);
-        return ResponseEntity.status(HttpStatus.CREATED).body(pedidosService.save(pedido));
+        boolean conClave = idempotencyKey != null && !idempotencyKey.isBlank();
+        if (prefer != null && prefer.contains("respond-async") && pedidosOutboxService.isEnabled()) {
+            return conClave ? aceptarPedido(pedido, idempotencyKey) : aceptado(pedidosOutboxService.accept(pedido));
+        }
+        if (conClave) {
+            // Un reintento con la misma clave devuelve el pedido ya creado sin reservar stock otra vez
+            var resultado = pedidosIdempotenciaService.save(idempotencyKey, pedido, () -> altaPedido(pedido));
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .header("Idempotent-Replayed", String.valueOf(resultado.repetido()))
+                    .body(resultado.pedido());
+        }
+        return ResponseEntity.status(HttpStatus.CREATED).body(altaPedido(pedido));
+    }
+
+    /**
+     * Alta asíncrona con Idempotency-Key: la clave queda apuntando al id de la entrada de la outbox,
+     * así que un reintento devuelve su estado en lugar de encolar otro pedido
+     */
+    private ResponseEntity<?> aceptarPedido(Pedido pedido, String idempotencyKey) {
+        var aceptada = new AtomicReference<PedidoOutbox>();
+        var resultado = pedidosIdempotenciaService.save(idempotencyKey, pedido, () -> {
+            aceptada.set(pedidosOutboxService.accept(pedido));
+            return aceptada.get().getPedido();
+        });
+        var replayed = String.valueOf(resultado.repetido());
+        if (aceptada.get() != null) {
+            return ResponseEntity.accepted().location(estadoLocation(aceptada.get()))
+                    .header("Idempotent-Replayed", replayed).body(toEstadoDto(aceptada.get()));
+        }
+        try {
+            var entrada = pedidosOutboxService.getEstado(resultado.pedido().getId());
+            return ResponseEntity.accepted().location(estadoLocation(entrada))
+                    .header("Idempotent-Replayed", replayed).body(toEstadoDto(entrada));
+        } catch (PedidoNotFound e) {
+            // La clave se usó antes en un alta síncrona: el pedido ya está creado
+            return ResponseEntity.status(HttpStatus.CREATED).header("Idempotent-Replayed", replayed).body(resultado.pedido());
+        }
+    }
+
+    private ResponseEntity<PedidoEstadoDto> aceptado(PedidoOutbox entrada) {
+        // Se acepta sin tocar el stock; el cliente consulta el estado en Location
+        return ResponseEntity.accepted().location(estadoLocation(entrada)).body(toEstadoDto(entrada));
+    }
+
+    private URI estadoLocation(PedidoOutbox entrada) {
+        return ServletUriComponentsBuilder.fromCurrentRequest()
+                .path("/estado/{id}").buildAndExpand(entrada.getId().toHexString()).toUri();
+    }
+
+    private Pedido altaPedido(Pedido pedido) {
+        // En modo flash sale el pedido espera a su lote, fuera de cualquier transacción
+        return pedidosFlashSale.isEnabled() ? pedidosFlashSale.save(pedido) : pedidosService.save(pedido);
+    }
+
+    @PostMapping("/bulk")
+    public ResponseEntity<List<PedidoBulkResultado>> createPedidos(
+            @RequestBody List<Pedido> pedidos,
+            @RequestParam(defaultValue = "false") boolean ordered
+    ) {
+        log.info("Creando {} pedidos en bloque", pedidos.size());
+        var resultados = pedidosBulkService.saveAll(pedidos, ordered);
+        // 207 si alguno no se ha creado: el detalle va en cada resultado
+        var status = resultados.stream().allMatch(PedidoBulkResultado::creado) ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS;
+        return ResponseEntity.status(status).body(resultados);
+    }
+
+    @PostMapping("/holds")
+    public ResponseEntity<PedidoHoldDto> holdPedido(@Valid @RequestBody Pedido pedido,
+                                                    @RequestParam(required = false) Integer minutos) {
+        log.info("Reteniendo stock para el pedido: " + pedido);
+        return ResponseEntity.status(HttpStatus.CREATED).body(pedidosHoldService.hold(pedido, minutos));
+    }
+
+    @PostMapping("/holds/{id}/confirmar")
+    public ResponseEntity<Pedido> confirmHold(@PathVariable("id") String idHold) {
+        log.info("Confirmando retención con id: " + idHold);
+        return ResponseEntity.status(HttpStatus.CREATED).body(pedidosHoldService.confirm(idHold));
+    }
+
+    @DeleteMapping("/holds/{id}")
+    public ResponseEntity<Void> cancelHold(@PathVariable("id") String idHold) {
+        log.info("Cancelando retención con id: " + idHold);
+        pedidosHoldService.cancel(idHold);
+        return ResponseEntity.noContent().build();
     }
 
     @PutMapping("/{id}")
@@ -81,4 +213,13 @@ public class PedidosRestController {
         pedidosService.delete(idPedido);
         return ResponseEntity.noContent().build();
     }
+
+    private PedidoEstadoDto toEstadoDto(PedidoOutbox entrada) {
+        String pedido = entrada.getEstado() == PedidoOutbox.Estado.COMPLETADO
+                ? ServletUriComponentsBuilder.fromCurrentContextPath()
+                        .path(pedidosPath).pathSegment(entrada.getId().toHexString()).toUriString()
+                : null;
+        return new PedidoEstadoDto(entrada.getId().toHexString(), entrada.getEstado().name(), entrada.getIntentos(),
+                entrada.getError(), pedido, entrada.getCreatedAt(), entrada.getUpdatedAt());
+    }
 }
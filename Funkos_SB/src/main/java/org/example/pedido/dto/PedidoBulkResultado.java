@@ -0,0 +1,16 @@
+package org.example.pedido.dto;
+
+/**
+ * Resultado de un pedido dentro de un alta masiva
+ * indice es su posición en la petición; id solo viene si se ha creado
+ */
+public record PedidoBulkResultado(
+        int indice,
+        String id,
+        int status,
+        String error
+) {
+    public boolean creado() {
+        return id != null;
+    }
+}
@@ -0,0 +1,18 @@
+package org.example.pedido.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Estado de un pedido aceptado de forma asíncrona
+ * pedido es la URL del pedido final, solo cuando ya está completado
+ */
+public record PedidoEstadoDto(
+        String id,
+        String estado,
+        Integer intentos,
+        String error,
+        String pedido,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt
+) {
+}
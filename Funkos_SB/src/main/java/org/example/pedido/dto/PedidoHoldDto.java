@@ -0,0 +1,14 @@
+package org.example.pedido.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Retención de stock de un pedido; id será el id del pedido al confirmarla
+ */
+public record PedidoHoldDto(
+        String id,
+        LocalDateTime expiresAt,
+        Double total,
+        Integer totalItems
+) {
+}
@@ -0,0 +1,17 @@
+package org.example.pedido.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Proyección de un pedido para los listados
+ * Mongo solo devuelve estos campos, sin cliente ni líneas de pedido
+ */
+public record PedidoResumen(
+        String id,
+        Long idUsuario,
+        Integer totalItems,
+        Double total,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt
+) {
+}
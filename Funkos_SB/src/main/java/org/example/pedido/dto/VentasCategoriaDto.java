@@ -0,0 +1,8 @@
+package org.example.pedido.dto;
+
+public record VentasCategoriaDto(
+        String categoria,
+        long unidades,
+        double ingresos
+) {
+}
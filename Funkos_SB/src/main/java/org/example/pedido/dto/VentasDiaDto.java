@@ -0,0 +1,10 @@
+package org.example.pedido.dto;
+
+import java.time.LocalDate;
+
+public record VentasDiaDto(
+        LocalDate dia,
+        long unidades,
+        double ingresos
+) {
+}
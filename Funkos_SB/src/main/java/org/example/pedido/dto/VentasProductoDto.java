@@ -0,0 +1,9 @@
+package org.example.pedido.dto;
+
+public record VentasProductoDto(
+        Long idProducto,
+        long unidades,
+        double ingresos,
+        long pedidos
+) {
+}
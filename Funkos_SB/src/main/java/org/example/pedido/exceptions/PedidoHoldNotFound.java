@@ -0,0 +1,15 @@
+package org.example.pedido.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepción de retención de stock no encontrada o ya caducada
+ * Status 404
+ */
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class PedidoHoldNotFound extends PedidoException {
+    public PedidoHoldNotFound(String id) {
+        super("Retención de stock con id " + id + " no encontrada o caducada");
+    }
+}
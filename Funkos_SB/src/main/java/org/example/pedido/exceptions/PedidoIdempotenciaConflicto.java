@@ -0,0 +1,15 @@
+package org.example.pedido.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepción de Idempotency-Key reutilizada con un pedido distinto
+ * Status 422
+ */
+@ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+public class PedidoIdempotenciaConflicto extends PedidoException {
+    public PedidoIdempotenciaConflicto(String key) {
+        super("La clave de idempotencia " + key + " ya se ha usado con otro pedido");
+    }
+}
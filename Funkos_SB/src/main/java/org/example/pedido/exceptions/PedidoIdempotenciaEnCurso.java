@@ -0,0 +1,15 @@
+package org.example.pedido.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepción de pedido con la misma Idempotency-Key todavía en proceso
+ * Status 409
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class PedidoIdempotenciaEnCurso extends PedidoException {
+    public PedidoIdempotenciaEnCurso(String key) {
+        super("El pedido con clave de idempotencia " + key + " todavía se está procesando");
+    }
+}
@@ -0,0 +1,15 @@
+package org.example.pedido.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepción de alta masiva con más pedidos de los permitidos
+ * Status 413
+ */
+@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+public class PedidosBulkExcedido extends PedidoException {
+    public PedidosBulkExcedido(int pedidos, int maximo) {
+        super("Se han enviado " + pedidos + " pedidos y el máximo por petición es " + maximo);
+    }
+}
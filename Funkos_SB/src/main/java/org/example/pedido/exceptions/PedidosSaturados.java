@@ -0,0 +1,15 @@
+package org.example.pedido.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepción de cola de pedidos llena o sin respuesta a tiempo
+ * Status 503
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class PedidosSaturados extends PedidoException {
+    public PedidosSaturados(String message) {
+        super(message);
+    }
+}
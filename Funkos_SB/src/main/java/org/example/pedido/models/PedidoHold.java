@@ -0,0 +1,48 @@
+package org.example.pedido.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Stock retenido para un pedido pendiente de pago
+ * Se guarda en la misma transacción que descuenta el stock; si la aplicación se cae con
+ * retenciones vivas, al arrancar se devuelve su stock. cantidades va como "id:cantidad,..."
+ */
+@Data
+@Entity
+@Table(name = "pedidos_holds")
+@NoArgsConstructor
+@AllArgsConstructor
+public class PedidoHold {
+    @Id
+    private String id;
+    @Column(nullable = false, length = 4000)
+    private String cantidades;
+    private LocalDateTime expiresAt;
+
+    public static String formatCantidades(Map<Long, Integer> cantidades) {
+        return cantidades.entrySet().stream()
+                .map(entry -> entry.getKey() + ":" + entry.getValue())
+                .collect(Collectors.joining(","));
+    }
+
+    public Map<Long, Integer> parseCantidades() {
+        Map<Long, Integer> result = new TreeMap<>();
+        Arrays.stream(cantidades.split(","))
+                .filter(par -> !par.isBlank())
+                .map(par -> par.split(":"))
+                .forEach(par -> result.merge(Long.parseLong(par[0]), Integer.parseInt(par[1]), Integer::sum));
+        return result;
+    }
+}
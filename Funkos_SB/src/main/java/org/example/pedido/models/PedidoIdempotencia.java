@@ -0,0 +1,35 @@
+package org.example.pedido.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Resultado de un POST /pedidos con Idempotency-Key
+ * Se inserta EN_CURSO antes de procesar el pedido (el _id único hace de cerrojo entre
+ * instancias) y pasa a COMPLETADO con el pedido creado. Un índice TTL sobre createdAt lo borra.
+ * El cerrojo EN_CURSO vale hasta bloqueadoHasta: si la instancia que lo tenía cae, otra petición
+ * con la misma clave lo puede tomar en vez de esperar a que caduque el documento
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Document("pedidos_idempotencia")
+public class PedidoIdempotencia {
+    public enum Estado {EN_CURSO, COMPLETADO}
+
+    @Id
+    private String id;
+    // Huella de la petición: la misma clave con otro pedido es un error del cliente
+    private String huella;
+    private Estado estado;
+    private Pedido pedido;
+    private LocalDateTime createdAt;
+    private LocalDateTime bloqueadoHasta;
+}
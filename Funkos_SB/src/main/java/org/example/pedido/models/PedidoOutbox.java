@@ -0,0 +1,42 @@
+package org.example.pedido.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Pedido aceptado y pendiente de procesar
+ * Tiene el mismo id que el pedido final, así que reintentar nunca crea dos pedidos
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Document("pedidos_outbox")
+public class PedidoOutbox {
+    public enum Estado {PENDIENTE, PROCESANDO, COMPLETADO, FALLIDO}
+
+    @Id
+    private ObjectId id;
+    private Pedido pedido;
+    @Builder.Default
+    private Estado estado = Estado.PENDIENTE;
+    @Builder.Default
+    private Integer intentos = 0;
+    private String error;
+    @Builder.Default
+    private LocalDateTime createdAt = LocalDateTime.now();
+    @Builder.Default
+    private LocalDateTime updatedAt = LocalDateTime.now();
+    // Cuándo se puede volver a intentar
+    @Builder.Default
+    private LocalDateTime nextAttemptAt = LocalDateTime.now();
+    // Mientras un worker lo procesa nadie más lo coge; si el worker cae, se libera al caducar
+    private LocalDateTime lockedUntil;
+}
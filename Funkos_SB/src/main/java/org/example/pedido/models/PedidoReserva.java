@@ -0,0 +1,25 @@
+package org.example.pedido.models;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Marca de que el stock de un pedido ya está reservado
+ * Se guarda en la misma transacción que la reserva, así un reintento del pedido no reserva dos veces
+ */
+@Data
+@Entity
+@Table(name = "pedidos_reservas")
+@NoArgsConstructor
+@AllArgsConstructor
+public class PedidoReserva {
+    @Id
+    private String idPedido;
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
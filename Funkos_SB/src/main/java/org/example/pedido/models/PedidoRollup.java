@@ -0,0 +1,32 @@
+package org.example.pedido.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Ventas acumuladas de un producto en un día
+ * El id es "dia:idProducto" y los contadores se mantienen con $inc al guardar, actualizar
+ * o borrar pedidos. dia va en formato ISO (yyyy-MM-dd) para poder filtrar por rangos
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Document("pedidos_rollups")
+public class PedidoRollup {
+    @Id
+    private String id;
+    private String dia;
+    private Long idProducto;
+    private Long unidades;
+    private Double ingresos;
+    private Long pedidos;
+
+    public static String id(String dia, Long idProducto) {
+        return dia + ":" + idProducto;
+    }
+}
@@ -0,0 +1,31 @@
+package org.example.pedido.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Totales de todos los pedidos de un usuario
+ * Se mantiene con $inc en cada alta, modificación o borrado de sus pedidos
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Document("pedidos_usuarios")
+public class PedidoUsuarioResumen {
+    @Id
+    private Long idUsuario;
+    @Builder.Default
+    private Long pedidos = 0L;
+    @Builder.Default
+    private Double total = 0.0;
+    @Builder.Default
+    private Long totalItems = 0L;
+    private LocalDateTime ultimoPedido;
+}
@@ -0,0 +1,10 @@
+package org.example.pedido.repository;
+
+import org.bson.types.ObjectId;
+import org.example.pedido.models.PedidoOutbox;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PedidoOutboxRepository extends MongoRepository<PedidoOutbox, ObjectId> {
+}
@@ -0,0 +1,9 @@
+package org.example.pedido.repository;
+
+import org.example.pedido.models.PedidoReserva;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PedidoReservasRepository extends JpaRepository<PedidoReserva, String> {
+}
@@ -2,6 +2,7 @@ package org.example.pedido.repository;
 
 
 import org.bson.types.ObjectId;
+import org.example.pedido.dto.PedidoResumen;
 import org.example.pedido.models.Pedido;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -12,4 +13,9 @@ import org.springframework.stereotype.Repository;
 public interface PedidosRepository extends MongoRepository<Pedido, ObjectId> {
     Page<Pedido> findByIdUsuario(Long idUsuario, Pageable pageable);
 
-}
\ No newline at end of file
+    // Listados: Spring Data proyecta sobre los campos del record
+    Page<PedidoResumen> findResumenBy(Pageable pageable);
+
+    Page<PedidoResumen> findResumenByIdUsuario(Long idUsuario, Pageable pageable);
+
+}
@@ -0,0 +1,29 @@
+package org.example.pedido.service;
+
+import org.example.pedido.dto.VentasCategoriaDto;
+import org.example.pedido.dto.VentasDiaDto;
+import org.example.pedido.dto.VentasProductoDto;
+import org.example.pedido.models.Pedido;
+import org.example.pedido.models.PedidoUsuarioResumen;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface PedidosAnalyticsService {
+    void registrar(Collection<Pedido> pedidos);
+
+    void anular(Pedido pedido);
+
+    List<VentasProductoDto> ventasPorProducto(LocalDate desde, LocalDate hasta);
+
+    List<VentasDiaDto> ventasPorDia(LocalDate desde, LocalDate hasta);
+
+    List<VentasCategoriaDto> ventasPorCategoria(LocalDate desde, LocalDate hasta);
+
+    long rebuild();
+
+    PedidoUsuarioResumen getResumenUsuario(Long idUsuario);
+
+    long rebuildUsuarios();
+}
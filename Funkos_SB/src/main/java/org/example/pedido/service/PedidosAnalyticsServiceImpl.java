@@ -0,0 +1,281 @@
+package org.example.pedido.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.example.funko.models.Funko;
+import org.example.funko.repository.FunkoRepository;
+import org.example.pedido.dto.VentasCategoriaDto;
+import org.example.pedido.dto.VentasDiaDto;
+import org.example.pedido.dto.VentasProductoDto;
+import org.example.pedido.models.Pedido;
+import org.example.pedido.models.PedidoRollup;
+import org.example.pedido.models.PedidoUsuarioResumen;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+/**
+ * Informes de ventas sobre los rollups de pedidos y resúmenes por usuario
+ * Cada alta, modificación o borrado de un pedido suma o resta sus líneas en el documento
+ * de su día y producto y sus totales en el resumen de su usuario, así que ni los informes
+ * ni las estadísticas de un usuario recorren todos los pedidos. Si se desincronizan (un fallo
+ * de Mongo a medias, datos anteriores a esta versión...) los rebuild los recalculan con $out,
+ * que escribe en una colección temporal y la cambia por la buena de una vez conservando sus índices:
+ * mientras tanto los informes siguen leyendo los datos anteriores, nunca una colección vacía
+ */
+@Service
+@Slf4j
+public class PedidosAnalyticsServiceImpl implements PedidosAnalyticsService {
+    private final MongoTemplate mongoTemplate;
+    private final FunkoRepository funkoRepository;
+
+    @Autowired
+    public PedidosAnalyticsServiceImpl(MongoTemplate mongoTemplate, FunkoRepository funkoRepository) {
+        this.mongoTemplate = mongoTemplate;
+        this.funkoRepository = funkoRepository;
+    }
+
+    @Override
+    public void registrar(Collection<Pedido> pedidos) {
+        aplicar(pedidos, 1);
+    }
+
+    @Override
+    public void anular(Pedido pedido) {
+        aplicar(List.of(pedido), -1);
+    }
+
+    private void aplicar(Collection<Pedido> pedidos, int signo) {
+        aplicarRollups(pedidos, signo);
+        aplicarUsuarios(pedidos, signo);
+    }
+
+    private void aplicarRollups(Collection<Pedido> pedidos, int signo) {
+        // Un bucket por día y producto; varias líneas del mismo producto cuentan como un pedido
+        Map<String, Document> buckets = new TreeMap<>();
+        for (Pedido pedido : pedidos) {
+            if (pedido.getLineasPedido() == null || pedido.getCreatedAt() == null) {
+                continue;
+            }
+            var dia = pedido.getCreatedAt().toLocalDate().toString();
+            Set<Long> productosDelPedido = new HashSet<>();
+            pedido.getLineasPedido().forEach(lineaPedido -> {
+                var bucket = buckets.computeIfAbsent(PedidoRollup.id(dia, lineaPedido.getIdProducto()),
+                        id -> new Document("dia", dia).append("idProducto", lineaPedido.getIdProducto())
+                                .append("unidades", 0L).append("ingresos", 0.0).append("pedidos", 0L));
+                bucket.put("unidades", bucket.getLong("unidades") + (long) signo * lineaPedido.getCantidad());
+                bucket.put("ingresos", bucket.getDouble("ingresos") + signo * lineaPedido.getCantidad() * lineaPedido.getPrecioProducto());
+                if (productosDelPedido.add(lineaPedido.getIdProducto())) {
+                    bucket.put("pedidos", bucket.getLong("pedidos") + signo);
+                }
+            });
+        }
+        if (buckets.isEmpty()) {
+            return;
+        }
+        try {
+            var bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PedidoRollup.class);
+            buckets.forEach((id, bucket) -> bulk.upsert(
+                    new Query(Criteria.where("_id").is(id)),
+                    new Update()
+                            .setOnInsert("dia", bucket.get("dia"))
+                            .setOnInsert("idProducto", bucket.get("idProducto"))
+                            .inc("unidades", bucket.getLong("unidades"))
+                            .inc("ingresos", bucket.getDouble("ingresos"))
+                            .inc("pedidos", bucket.getLong("pedidos"))));
+            bulk.execute();
+        } catch (RuntimeException e) {
+            // El pedido ya está guardado; los rollups se arreglan con rebuild
+            log.error("No se han podido actualizar los rollups de ventas: {}", e.getMessage());
+        }
+    }
+
+    private void aplicarUsuarios(Collection<Pedido> pedidos, int signo) {
+        Map<Long, List<Pedido>> porUsuario = pedidos.stream()
+                .filter(pedido -> pedido.getIdUsuario() != null)
+                .collect(Collectors.groupingBy(Pedido::getIdUsuario, TreeMap::new, Collectors.toList()));
+        if (porUsuario.isEmpty()) {
+            return;
+        }
+        try {
+            var bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PedidoUsuarioResumen.class);
+            porUsuario.forEach((idUsuario, delUsuario) -> {
+                var update = new Update()
+                        .inc("pedidos", (long) signo * delUsuario.size())
+                        .inc("total", signo * delUsuario.stream().mapToDouble(Pedido::getTotal).sum())
+                        .inc("totalItems", (long) signo * delUsuario.stream().mapToLong(Pedido::getTotalItems).sum());
+                if (signo > 0) {
+                    delUsuario.stream().map(Pedido::getCreatedAt).filter(Objects::nonNull).max(Comparator.naturalOrder())
+                            .ifPresent(ultimo -> update.max("ultimoPedido", ultimo));
+                }
+                bulk.upsert(new Query(Criteria.where("_id").is(idUsuario)), update);
+            });
+            bulk.execute();
+            if (signo < 0) {
+                // La fecha del último pedido no se puede restar: se vuelve a leer del índice idUsuario_createdAt
+                porUsuario.keySet().forEach(this::recalcularUltimoPedido);
+            }
+        } catch (RuntimeException e) {
+            log.error("No se han podido actualizar los resúmenes de usuario: {}", e.getMessage());
+        }
+    }
+
+    private void recalcularUltimoPedido(Long idUsuario) {
+        var query = new Query(Criteria.where("idUsuario").is(idUsuario))
+                .with(Sort.by(Sort.Direction.DESC, "createdAt"))
+                .limit(1);
+        query.fields().include("createdAt");
+        var ultimo = mongoTemplate.findOne(query, Pedido.class);
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(idUsuario)),
+                new Update().set("ultimoPedido", ultimo != null ? ultimo.getCreatedAt() : null),
+                PedidoUsuarioResumen.class);
+    }
+
+    @Override
+    public PedidoUsuarioResumen getResumenUsuario(Long idUsuario) {
+        log.info("Obteniendo resumen de pedidos del usuario {}", idUsuario);
+        var resumen = mongoTemplate.findById(idUsuario, PedidoUsuarioResumen.class);
+        return resumen != null ? resumen : PedidoUsuarioResumen.builder().idUsuario(idUsuario).build();
+    }
+
+    /**
+     * Recalcula los resúmenes de todos los usuarios desde la colección de pedidos
+     */
+    @Override
+    public long rebuildUsuarios() {
+        log.info("Reconstruyendo resúmenes de pedidos por usuario");
+        var aggregation = newAggregation(
+                match(Criteria.where("idUsuario").ne(null)),
+                group("idUsuario").count().as("pedidos").sum("total").as("total").sum("totalItems").as("totalItems")
+                        .max("createdAt").as("ultimoPedido"),
+                out(mongoTemplate.getCollectionName(PedidoUsuarioResumen.class))
+        ).withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+
+        // El grupo ya tiene la forma del resumen: _id es el idUsuario
+        mongoTemplate.aggregate(aggregation, Pedido.class, Document.class);
+        long total = mongoTemplate.estimatedCount(PedidoUsuarioResumen.class);
+        log.info("Resúmenes de usuario reconstruidos: {}", total);
+        return total;
+    }
+
+    @Override
+    public List<VentasProductoDto> ventasPorProducto(LocalDate desde, LocalDate hasta) {
+        log.info("Obteniendo ventas por producto entre {} y {}", desde, hasta);
+        var aggregation = newAggregation(
+                match(rango(desde, hasta)),
+                group("idProducto").sum("unidades").as("unidades").sum("ingresos").as("ingresos").sum("pedidos").as("pedidos"),
+                sort(Sort.Direction.DESC, "ingresos")
+        );
+        return mongoTemplate.aggregate(aggregation, PedidoRollup.class, Document.class).getMappedResults().stream()
+                .map(doc -> new VentasProductoDto(
+                        ((Number) doc.get("_id")).longValue(),
+                        ((Number) doc.get("unidades")).longValue(),
+                        ((Number) doc.get("ingresos")).doubleValue(),
+                        ((Number) doc.get("pedidos")).longValue()))
+                .filter(ventas -> ventas.unidades() > 0)
+                .toList();
+    }
+
+    @Override
+    public List<VentasDiaDto> ventasPorDia(LocalDate desde, LocalDate hasta) {
+        log.info("Obteniendo ventas por día entre {} y {}", desde, hasta);
+        var aggregation = newAggregation(
+                match(rango(desde, hasta)),
+                group("dia").sum("unidades").as("unidades").sum("ingresos").as("ingresos"),
+                sort(Sort.Direction.ASC, "_id")
+        );
+        return mongoTemplate.aggregate(aggregation, PedidoRollup.class, Document.class).getMappedResults().stream()
+                .map(doc -> new VentasDiaDto(
+                        LocalDate.parse(doc.getString("_id")),
+                        ((Number) doc.get("unidades")).longValue(),
+                        ((Number) doc.get("ingresos")).doubleValue()))
+                .filter(ventas -> ventas.unidades() > 0)
+                .toList();
+    }
+
+    @Override
+    public List<VentasCategoriaDto> ventasPorCategoria(LocalDate desde, LocalDate hasta) {
+        log.info("Obteniendo ventas por categoría entre {} y {}", desde, hasta);
+        // La categoría vive en H2: Mongo agrupa por producto y aquí se reparte por categoría
+        var porProducto = ventasPorProducto(desde, hasta);
+        Map<Long, Funko> productos = funkoRepository.findAllById(porProducto.stream().map(VentasProductoDto::idProducto).toList())
+                .stream().collect(Collectors.toMap(Funko::getId, Function.identity()));
+        Map<String, long[]> unidades = new TreeMap<>();
+        Map<String, Double> ingresos = new TreeMap<>();
+        porProducto.forEach(ventas -> {
+            var funko = productos.get(ventas.idProducto());
+            var categoria = funko != null && funko.getCategoria() != null ? funko.getCategoria().getTipo() : "SIN_CATEGORIA";
+            unidades.computeIfAbsent(categoria, c -> new long[1])[0] += ventas.unidades();
+            ingresos.merge(categoria, ventas.ingresos(), Double::sum);
+        });
+        return unidades.entrySet().stream()
+                .map(entry -> new VentasCategoriaDto(entry.getKey(), entry.getValue()[0], ingresos.get(entry.getKey())))
+                .sorted(Comparator.comparingLong(VentasCategoriaDto::unidades).reversed())
+                .toList();
+    }
+
+    private Criteria rango(LocalDate desde, LocalDate hasta) {
+        var criteria = Criteria.where("dia");
+        if (desde == null && hasta == null) {
+            return criteria.exists(true);
+        }
+        if (desde != null) {
+            criteria = criteria.gte(desde.toString());
+        }
+        if (hasta != null) {
+            criteria = criteria.lte(hasta.toString());
+        }
+        return criteria;
+    }
+
+    /**
+     * Recalcula todos los rollups con una agregación sobre las líneas de los pedidos
+     */
+    @Override
+    public long rebuild() {
+        log.info("Reconstruyendo rollups de ventas");
+        var aggregation = newAggregation(
+                unwind("lineasPedido"),
+                project()
+                        .and("_id").as("pedido")
+                        .and(DateOperators.dateOf("createdAt").withTimezone(DateOperators.Timezone.valueOf(ZoneId.systemDefault().getId()))
+                                .toString("%Y-%m-%d")).as("dia")
+                        .and("lineasPedido.idProducto").as("idProducto")
+                        .and("lineasPedido.cantidad").as("cantidad")
+                        .and(ArithmeticOperators.valueOf("lineasPedido.cantidad").multiplyBy("lineasPedido.precioProducto")).as("importe"),
+                // Primero por pedido para contar cada pedido una vez por producto
+                group("pedido", "dia", "idProducto").sum("cantidad").as("unidades").sum("importe").as("ingresos"),
+                group("dia", "idProducto").sum("unidades").as("unidades").sum("ingresos").as("ingresos").count().as("pedidos"),
+                // Misma forma que PedidoRollup, con el id "dia:idProducto"
+                context -> new Document("$project", new Document("_id", new Document("$concat",
+                        List.of("$_id.dia", ":", new Document("$toString", "$_id.idProducto"))))
+                        .append("dia", "$_id.dia")
+                        .append("idProducto", "$_id.idProducto")
+                        .append("unidades", 1)
+                        .append("ingresos", 1)
+                        .append("pedidos", 1)),
+                out(mongoTemplate.getCollectionName(PedidoRollup.class))
+        ).withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+
+        mongoTemplate.aggregate(aggregation, Pedido.class, Document.class);
+        long total = mongoTemplate.estimatedCount(PedidoRollup.class);
+        log.info("Rollups de ventas reconstruidos: {} buckets", total);
+        return total;
+    }
+}
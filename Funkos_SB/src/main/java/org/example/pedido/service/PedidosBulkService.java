@@ -0,0 +1,10 @@
+package org.example.pedido.service;
+
+import org.example.pedido.dto.PedidoBulkResultado;
+import org.example.pedido.models.Pedido;
+
+import java.util.List;
+
+public interface PedidosBulkService {
+    List<PedidoBulkResultado> saveAll(List<Pedido> pedidos, boolean ordered);
+}
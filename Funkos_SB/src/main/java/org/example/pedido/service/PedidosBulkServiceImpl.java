@@ -0,0 +1,193 @@
+package org.example.pedido.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.example.funko.models.Funko;
+import org.example.funko.repository.FunkoRepository;
+import org.example.pedido.dto.PedidoBulkResultado;
+import org.example.pedido.exceptions.PedidosBulkExcedido;
+import org.example.pedido.exceptions.ProductoNotStock;
+import org.example.pedido.models.Pedido;
+import org.example.pedido.stock.StockLedger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Alta masiva de pedidos
+ * Todos los pedidos se validan contra una sola lectura de productos, el stock se reserva
+ * agregado por producto y los pedidos se guardan con un único bulk write de Mongo.
+ * Si Mongo rechaza algunos pedidos, solo se devuelve el stock de esos, dentro de la misma
+ * transacción que lo reservó. Si el bulk falla sin decir qué se escribió (timeout, red...),
+ * se devuelve el stock de todo el lote. Cada pedido tiene su propio resultado
+ */
+@Service
+@Slf4j
+public class PedidosBulkServiceImpl implements PedidosBulkService {
+    private final FunkoRepository funkoRepository;
+    private final MongoTemplate mongoTemplate;
+    private final PedidosService pedidosService;
+    private final StockLedger stockLedger;
+    private final PedidosAnalyticsService pedidosAnalyticsService;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final int maxPedidos;
+
+    @Autowired
+    public PedidosBulkServiceImpl(FunkoRepository funkoRepository, MongoTemplate mongoTemplate, PedidosService pedidosService,
+                                  StockLedger stockLedger, PedidosAnalyticsService pedidosAnalyticsService,
+                                  TransactionTemplate transactionTemplate, Validator validator,
+                                  @Value("${pedidos.bulk.max-pedidos:1000}") int maxPedidos) {
+        this.funkoRepository = funkoRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.pedidosService = pedidosService;
+        this.stockLedger = stockLedger;
+        this.pedidosAnalyticsService = pedidosAnalyticsService;
+        this.transactionTemplate = transactionTemplate;
+        this.validator = validator;
+        this.maxPedidos = maxPedidos;
+    }
+
+    @Override
+    public List<PedidoBulkResultado> saveAll(List<Pedido> pedidos, boolean ordered) {
+        log.info("Alta masiva de {} pedidos ({})", pedidos.size(), ordered ? "ordenada" : "sin orden");
+        if (pedidos.size() > maxPedidos) {
+            throw new PedidosBulkExcedido(pedidos.size(), maxPedidos);
+        }
+        PedidoBulkResultado[] resultados = new PedidoBulkResultado[pedidos.size()];
+
+        // Una sola lectura de los productos de todos los pedidos
+        Map<Long, Funko> productos = funkoRepository.findAllById(PedidosServiceImpl.idsProducto(pedidos)).stream()
+                .collect(Collectors.toMap(Funko::getId, Function.identity()));
+        var disponible = PedidosServiceImpl.fotoStock(productos, stockLedger);
+
+        List<Integer> aceptados = new ArrayList<>();
+        Map<Integer, Map<Long, Integer>> cantidadesAceptados = new HashMap<>();
+        Map<Long, Integer> reservas = new TreeMap<>();
+        var now = LocalDateTime.now();
+        for (int i = 0; i < pedidos.size(); i++) {
+            var pedido = pedidos.get(i);
+            try {
+                validar(pedido);
+                var cantidades = PedidosServiceImpl.checkContraFoto(pedido, productos, disponible);
+                cantidades.forEach((id, cantidad) -> {
+                    disponible.merge(id, -cantidad, Integer::sum);
+                    reservas.merge(id, cantidad, Integer::sum);
+                });
+                PedidosServiceImpl.calcularTotales(pedido);
+                pedido.setCreatedAt(now);
+                pedido.setUpdatedAt(now);
+                aceptados.add(i);
+                cantidadesAceptados.put(i, cantidades);
+            } catch (RuntimeException e) {
+                resultados[i] = error(i, e);
+            }
+        }
+
+        if (!aceptados.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    PedidosServiceImpl.reserveCantidades(reservas, funkoRepository, stockLedger);
+                    insert(pedidos, aceptados, cantidadesAceptados, ordered, resultados);
+                });
+                pedidosAnalyticsService.registrar(aceptados.stream()
+                        .filter(i -> resultados[i].creado())
+                        .map(pedidos::get)
+                        .toList());
+            } catch (ProductoNotStock e) {
+                // El stock ha cambiado mientras tanto: cada pedido por el camino normal
+                log.warn("La reserva masiva ha fallado, procesando {} pedidos uno a uno", aceptados.size());
+                aceptados.forEach(i -> resultados[i] = saveIndividual(i, pedidos.get(i)));
+            }
+        }
+        return Arrays.asList(resultados);
+    }
+
+    private void insert(List<Pedido> pedidos, List<Integer> aceptados, Map<Integer, Map<Long, Integer>> cantidades,
+                        boolean ordered, PedidoBulkResultado[] resultados) {
+        var bulk = mongoTemplate.bulkOps(ordered ? BulkOperations.BulkMode.ORDERED : BulkOperations.BulkMode.UNORDERED, Pedido.class);
+        aceptados.forEach(i -> bulk.insert(pedidos.get(i)));
+
+        // Posición dentro del bulk -> error de Mongo
+        Map<Integer, String> fallidos = new HashMap<>();
+        int estadoFallido = HttpStatus.CONFLICT.value();
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            e.getErrors().forEach(error -> fallidos.put(error.getIndex(), mensaje(error)));
+            if (ordered) {
+                // En modo ordenado Mongo se detiene en el primer error y el resto no se escribe
+                int primero = e.getErrors().stream().mapToInt(BulkWriteError::getIndex).min().orElse(aceptados.size());
+                for (int j = primero + 1; j < aceptados.size(); j++) {
+                    fallidos.putIfAbsent(j, "No procesado por un error anterior en el lote");
+                }
+            }
+        } catch (DataAccessException e) {
+            // Mongo no confirma ninguna escritura: ningún pedido cuenta como guardado
+            log.error("Error guardando el lote de {} pedidos: {}", aceptados.size(), e.getMessage());
+            estadoFallido = HttpStatus.SERVICE_UNAVAILABLE.value();
+            for (int j = 0; j < aceptados.size(); j++) {
+                fallidos.put(j, "No se ha podido guardar el pedido");
+            }
+        }
+
+        Map<Long, Integer> devolver = new TreeMap<>();
+        for (int j = 0; j < aceptados.size(); j++) {
+            int i = aceptados.get(j);
+            if (fallidos.containsKey(j)) {
+                cantidades.get(i).forEach((id, cantidad) -> devolver.merge(id, cantidad, Integer::sum));
+                resultados[i] = new PedidoBulkResultado(i, null, estadoFallido, fallidos.get(j));
+            } else {
+                resultados[i] = new PedidoBulkResultado(i, pedidos.get(i).getId().toHexString(), HttpStatus.CREATED.value(), null);
+            }
+        }
+        if (!devolver.isEmpty()) {
+            log.warn("{} pedidos rechazados por Mongo, devolviendo su stock", fallidos.size());
+            PedidosServiceImpl.returnCantidades(devolver, funkoRepository, stockLedger);
+        }
+    }
+
+    private void validar(Pedido pedido) {
+        var errores = validator.validate(pedido);
+        if (!errores.isEmpty()) {
+            throw new IllegalArgumentException(errores.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+
+    private PedidoBulkResultado saveIndividual(int indice, Pedido pedido) {
+        try {
+            return new PedidoBulkResultado(indice, pedidosService.save(pedido).getId().toHexString(), HttpStatus.CREATED.value(), null);
+        } catch (RuntimeException e) {
+            return error(indice, e);
+        }
+    }
+
+    private PedidoBulkResultado error(int indice, RuntimeException e) {
+        var responseStatus = AnnotationUtils.findAnnotation(e.getClass(), ResponseStatus.class);
+        int status = responseStatus != null ? responseStatus.value().value()
+                : e instanceof IllegalArgumentException ? HttpStatus.BAD_REQUEST.value() : HttpStatus.INTERNAL_SERVER_ERROR.value();
+        return new PedidoBulkResultado(indice, null, status, e.getMessage());
+    }
+
+    private String mensaje(BulkWriteError error) {
+        return error.getCode() == 11000 ? "Pedido duplicado" : error.getMessage();
+    }
+}
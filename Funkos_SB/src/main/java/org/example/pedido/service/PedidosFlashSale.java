@@ -0,0 +1,252 @@
+package org.example.pedido.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.funko.models.Funko;
+import org.example.funko.repository.FunkoRepository;
+import org.example.pedido.exceptions.*;
+import org.example.pedido.models.Pedido;
+import org.example.pedido.repository.PedidosRepository;
+import org.example.pedido.stock.StockLedger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Modo "flash sale" de alta de pedidos con group commit
+ * Los pedidos entran en una cola y un único hilo los recoge en micro-lotes (max-batch pedidos
+ * o max-wait-ms desde el primero). Cada lote se valida contra una sola foto del stock, reserva
+ * con un UPDATE condicional por producto y guarda todos los pedidos aceptados con un insertMany.
+ * Si la reserva del lote falla porque el stock ha cambiado por fuera, sus pedidos se procesan
+ * uno a uno por el camino normal. Cada petición espera su propio resultado
+ */
+@Component
+@Slf4j
+public class PedidosFlashSale {
+    private final FunkoRepository funkoRepository;
+    private final PedidosRepository pedidosRepository;
+    private final PedidosService pedidosService;
+    private final StockLedger stockLedger;
+    private final PedidosAnalyticsService pedidosAnalyticsService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int maxBatch;
+    private final long maxWaitMs;
+    private final long timeoutMs;
+    private final BlockingQueue<Solicitud> cola;
+    private Thread collector;
+    private volatile boolean running = false;
+
+    /**
+     * Petición encolada. El lote y el cliente que se cansa de esperar compiten por tomarla:
+     * si la toma el lote se reserva y se guarda, si la cancela el cliente no se toca
+     */
+    record Solicitud(Pedido pedido, CompletableFuture<Pedido> resultado, AtomicBoolean tomada) {
+        Solicitud(Pedido pedido, CompletableFuture<Pedido> resultado) {
+            this(pedido, resultado, new AtomicBoolean(false));
+        }
+
+        boolean tomar() {
+            return tomada.compareAndSet(false, true);
+        }
+
+        boolean cancelar() {
+            if (!tomar()) {
+                return false;
+            }
+            resultado.cancel(false);
+            return true;
+        }
+    }
+
+    @Autowired
+    public PedidosFlashSale(FunkoRepository funkoRepository, PedidosRepository pedidosRepository, PedidosService pedidosService,
+                            StockLedger stockLedger, PedidosAnalyticsService pedidosAnalyticsService,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${pedidos.flash-sale.enabled:false}") boolean enabled,
+                            @Value("${pedidos.flash-sale.max-batch:256}") int maxBatch,
+                            @Value("${pedidos.flash-sale.max-wait-ms:5}") long maxWaitMs,
+                            @Value("${pedidos.flash-sale.queue-capacity:10000}") int queueCapacity,
+                            @Value("${pedidos.flash-sale.timeout-ms:30000}") long timeoutMs) {
+        this.funkoRepository = funkoRepository;
+        this.pedidosRepository = pedidosRepository;
+        this.pedidosService = pedidosService;
+        this.stockLedger = stockLedger;
+        this.pedidosAnalyticsService = pedidosAnalyticsService;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.maxBatch = maxBatch;
+        this.maxWaitMs = maxWaitMs;
+        this.timeoutMs = timeoutMs;
+        this.cola = new LinkedBlockingQueue<>(queueCapacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled && running;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        collector = new Thread(this::collect, "pedidos-flash-sale");
+        collector.setDaemon(true);
+        collector.start();
+        log.info("Modo flash sale activo: lotes de hasta {} pedidos o {} ms", maxBatch, maxWaitMs);
+    }
+
+    /**
+     * Encola el pedido y espera a que su lote se confirme
+     */
+    public Pedido save(Pedido pedido) {
+        var solicitud = new Solicitud(pedido, new CompletableFuture<>());
+        if (!cola.offer(solicitud)) {
+            throw new PedidosSaturados("Cola de pedidos llena, inténtelo de nuevo");
+        }
+        try {
+            return solicitud.resultado().get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw causa(e.getCause());
+        } catch (TimeoutException e) {
+            // Solo se contesta que ha fallado si el lote no la ha tomado todavía
+            if (solicitud.cancelar()) {
+                throw new PedidosSaturados("El pedido no se ha procesado a tiempo");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (solicitud.cancelar()) {
+                throw new PedidosSaturados("Pedido interrumpido");
+            }
+        }
+        // El lote ya la había tomado y la va a reservar y guardar: se espera a su resultado
+        try {
+            return solicitud.resultado().join();
+        } catch (CompletionException e) {
+            throw causa(e.getCause());
+        }
+    }
+
+    private static RuntimeException causa(Throwable cause) {
+        return cause instanceof RuntimeException runtime ? runtime : new IllegalStateException(cause);
+    }
+
+    private void collect() {
+        List<Solicitud> lote = new ArrayList<>(maxBatch);
+        while (running) {
+            try {
+                var primera = cola.poll(100, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    continue;
+                }
+                lote.add(primera);
+                long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+                while (lote.size() < maxBatch) {
+                    long restante = limite - System.nanoTime();
+                    if (restante <= 0 && cola.drainTo(lote, maxBatch - lote.size()) == 0) {
+                        break;
+                    }
+                    var siguiente = restante > 0 ? cola.poll(restante, TimeUnit.NANOSECONDS) : null;
+                    if (siguiente != null) {
+                        lote.add(siguiente);
+                    }
+                }
+                process(lote);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (RuntimeException e) {
+                log.error("Error procesando lote de pedidos", e);
+                lote.forEach(solicitud -> solicitud.resultado().completeExceptionally(e));
+            } finally {
+                lote.clear();
+            }
+        }
+    }
+
+    void process(List<Solicitud> lote) {
+        log.info("Procesando lote de {} pedidos", lote.size());
+        // Una sola lectura de los productos de todo el lote
+        var ids = PedidosServiceImpl.idsProducto(lote.stream().map(Solicitud::pedido).toList());
+        Map<Long, Funko> productos = funkoRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Funko::getId, Function.identity()));
+        var disponible = PedidosServiceImpl.fotoStock(productos, stockLedger);
+
+        // Se aceptan en orden de llegada mientras la foto tenga stock
+        List<Solicitud> aceptadas = new ArrayList<>();
+        Map<Long, Integer> reservas = new TreeMap<>();
+        var now = LocalDateTime.now();
+        for (Solicitud solicitud : lote) {
+            if (!solicitud.tomar()) {
+                // El cliente ya ha recibido respuesta (tiempo agotado): no se reserva ni se guarda
+                continue;
+            }
+            try {
+                var cantidades = PedidosServiceImpl.checkContraFoto(solicitud.pedido(), productos, disponible);
+                cantidades.forEach((id, cantidad) -> {
+                    disponible.merge(id, -cantidad, Integer::sum);
+                    reservas.merge(id, cantidad, Integer::sum);
+                });
+                PedidosServiceImpl.calcularTotales(solicitud.pedido());
+                solicitud.pedido().setCreatedAt(now);
+                solicitud.pedido().setUpdatedAt(now);
+                aceptadas.add(solicitud);
+            } catch (RuntimeException e) {
+                // Un pedido mal formado no tumba el lote
+                solicitud.resultado().completeExceptionally(e);
+            }
+        }
+        if (aceptadas.isEmpty()) {
+            return;
+        }
+
+        List<Pedido> guardados;
+        try {
+            guardados = transactionTemplate.execute(status -> {
+                PedidosServiceImpl.reserveCantidades(reservas, funkoRepository, stockLedger);
+                return pedidosRepository.insert(aceptadas.stream().map(Solicitud::pedido).toList());
+            });
+        } catch (ProductoNotStock e) {
+            // El stock ha cambiado fuera del lote: cada pedido por su cuenta
+            log.warn("La reserva del lote ha fallado, procesando {} pedidos uno a uno", aceptadas.size());
+            aceptadas.forEach(this::saveIndividual);
+            return;
+        }
+        pedidosAnalyticsService.registrar(guardados);
+        for (int i = 0; i < aceptadas.size(); i++) {
+            aceptadas.get(i).resultado().complete(guardados.get(i));
+        }
+    }
+
+    private void saveIndividual(Solicitud solicitud) {
+        try {
+            solicitud.resultado().complete(pedidosService.save(solicitud.pedido()));
+        } catch (RuntimeException e) {
+            solicitud.resultado().completeExceptionally(e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (collector == null) {
+            return;
+        }
+        running = false;
+        collector.interrupt();
+        // Lo que quede en la cola ya no se va a procesar
+        List<Solicitud> pendientes = new ArrayList<>();
+        cola.drainTo(pendientes);
+        pendientes.forEach(solicitud -> solicitud.resultado().completeExceptionally(new PedidosSaturados("Servicio deteniéndose")));
+    }
+}
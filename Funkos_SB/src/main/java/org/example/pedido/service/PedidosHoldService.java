@@ -0,0 +1,12 @@
+package org.example.pedido.service;
+
+import org.example.pedido.dto.PedidoHoldDto;
+import org.example.pedido.models.Pedido;
+
+public interface PedidosHoldService {
+    PedidoHoldDto hold(Pedido pedido, Integer minutos);
+
+    Pedido confirm(String idHold);
+
+    void cancel(String idHold);
+}
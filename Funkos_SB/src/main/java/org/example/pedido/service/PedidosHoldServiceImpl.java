@@ -0,0 +1,218 @@
+package org.example.pedido.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.funko.models.Funko;
+import org.example.funko.repository.FunkoRepository;
+import org.example.pedido.dto.PedidoHoldDto;
+import org.example.pedido.exceptions.PedidoHoldNotFound;
+import org.example.pedido.models.Pedido;
+import org.example.pedido.models.PedidoHold;
+import org.example.pedido.repository.PedidoHoldsRepository;
+import org.example.pedido.repository.PedidosRepository;
+import org.example.pedido.stock.StockLedger;
+import org.example.utils.timing.TimingWheel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Retenciones de stock con caducidad para el checkout
+ * Retener valida el pedido y descuenta su stock como un pedido normal, pero el pedido se
+ * queda en memoria hasta que se confirma (y se guarda) o caduca. Las caducidades van en una
+ * rueda de tiempo jerárquica que un único hilo avanza cada tick: todo lo que vence en un tick
+ * devuelve su stock en un solo batch, sin un timer por retención ni consultas periódicas
+ */
+@Service
+@Slf4j
+public class PedidosHoldServiceImpl implements PedidosHoldService {
+    private static final long REINTENTO_MS = 5_000;
+    private final FunkoRepository funkoRepository;
+    private final PedidosRepository pedidosRepository;
+    private final PedidoHoldsRepository holdsRepository;
+    private final StockLedger stockLedger;
+    private final PedidosAnalyticsService pedidosAnalyticsService;
+    private final TransactionTemplate transactionTemplate;
+    private final int minutos;
+    private final int maxMinutos;
+    private final long tickMs;
+    private final Map<String, Retencion> retenciones = new ConcurrentHashMap<>();
+    private final TimingWheel<String> wheel;
+    private ScheduledExecutorService sweeper;
+
+    record Retencion(Pedido pedido, Map<Long, Integer> cantidades, LocalDateTime expiresAt) {
+    }
+
+    @Autowired
+    public PedidosHoldServiceImpl(FunkoRepository funkoRepository, PedidosRepository pedidosRepository,
+                                  PedidoHoldsRepository holdsRepository, StockLedger stockLedger,
+                                  PedidosAnalyticsService pedidosAnalyticsService, TransactionTemplate transactionTemplate,
+                                  @Value("${pedidos.holds.minutos:10}") int minutos,
+                                  @Value("${pedidos.holds.max-minutos:30}") int maxMinutos,
+                                  @Value("${pedidos.holds.tick-ms:100}") long tickMs) {
+        this.funkoRepository = funkoRepository;
+        this.pedidosRepository = pedidosRepository;
+        this.holdsRepository = holdsRepository;
+        this.stockLedger = stockLedger;
+        this.pedidosAnalyticsService = pedidosAnalyticsService;
+        this.transactionTemplate = transactionTemplate;
+        this.minutos = minutos;
+        this.maxMinutos = maxMinutos;
+        this.tickMs = tickMs;
+        // 64 slots y 4 niveles cubren 64^4 ticks, de sobra para cualquier retención
+        this.wheel = new TimingWheel<>(tickMs, 64, 4, System.currentTimeMillis());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        releaseHuerfanas();
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "pedidos-holds");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                sweep(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                log.error("Error liberando retenciones caducadas", e);
+            }
+        }, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Las retenciones que quedaron en la base de datos al parar ya no se pueden confirmar
+     */
+    void releaseHuerfanas() {
+        var huerfanas = holdsRepository.findAll();
+        if (huerfanas.isEmpty()) {
+            return;
+        }
+        log.info("Devolviendo el stock de {} retenciones de la ejecución anterior", huerfanas.size());
+        Map<Long, Integer> devolver = new TreeMap<>();
+        huerfanas.forEach(hold -> hold.parseCantidades().forEach((id, cantidad) -> devolver.merge(id, cantidad, Integer::sum)));
+        transactionTemplate.executeWithoutResult(status -> {
+            PedidosServiceImpl.returnCantidades(devolver, funkoRepository, stockLedger);
+            holdsRepository.deleteAllInBatch(huerfanas);
+        });
+    }
+
+    @Override
+    public PedidoHoldDto hold(Pedido pedido, Integer minutos) {
+        var duracion = Math.min(Math.max(minutos != null ? minutos : this.minutos, 1), maxMinutos);
+        log.info("Reteniendo stock del pedido {} durante {} minutos", pedido.getId(), duracion);
+        Map<Long, Funko> productos = funkoRepository.findAllById(PedidosServiceImpl.idsProducto(List.of(pedido))).stream()
+                .collect(Collectors.toMap(Funko::getId, Function.identity()));
+        var cantidades = PedidosServiceImpl.checkContraFoto(pedido, productos, PedidosServiceImpl.fotoStock(productos, stockLedger));
+        PedidosServiceImpl.calcularTotales(pedido);
+
+        var id = pedido.getId().toHexString();
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(duracion);
+        var expiresAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(deadline), ZoneId.systemDefault());
+        transactionTemplate.executeWithoutResult(status -> {
+            PedidosServiceImpl.reserveCantidades(cantidades, funkoRepository, stockLedger);
+            holdsRepository.save(new PedidoHold(id, PedidoHold.formatCantidades(cantidades), expiresAt));
+        });
+        retenciones.put(id, new Retencion(pedido, cantidades, expiresAt));
+        synchronized (wheel) {
+            wheel.schedule(id, deadline);
+        }
+        return new PedidoHoldDto(id, expiresAt, pedido.getTotal(), pedido.getTotalItems());
+    }
+
+    @Override
+    public Pedido confirm(String idHold) {
+        log.info("Confirmando retención {}", idHold);
+        // Quien la saca del mapa se la queda: o se confirma, o se cancela, o caduca
+        var retencion = retenciones.remove(idHold);
+        if (retencion == null) {
+            throw new PedidoHoldNotFound(idHold);
+        }
+        try {
+            var pedido = retencion.pedido();
+            pedido.setCreatedAt(LocalDateTime.now());
+            pedido.setUpdatedAt(LocalDateTime.now());
+            // El stock ya está descontado: solo se guarda el pedido y se borra la retención
+            var saved = transactionTemplate.execute(status -> {
+                holdsRepository.deleteById(idHold);
+                return pedidosRepository.save(pedido);
+            });
+            pedidosAnalyticsService.registrar(List.of(saved));
+            return saved;
+        } catch (RuntimeException e) {
+            // Vuelve al mapa y, si no se reintenta, caduca como cualquier otra
+            retenciones.put(idHold, retencion);
+            throw e;
+        }
+    }
+
+    @Override
+    public void cancel(String idHold) {
+        log.info("Cancelando retención {}", idHold);
+        var retencion = retenciones.remove(idHold);
+        if (retencion == null) {
+            throw new PedidoHoldNotFound(idHold);
+        }
+        release(Map.of(idHold, retencion));
+    }
+
+    void sweep(long nowMs) {
+        List<String> vencidos;
+        synchronized (wheel) {
+            vencidos = wheel.advance(nowMs);
+        }
+        // Las confirmadas o canceladas siguen en la rueda pero ya no están en el mapa
+        Map<String, Retencion> caducadas = new HashMap<>();
+        vencidos.forEach(id -> {
+            var retencion = retenciones.remove(id);
+            if (retencion != null) {
+                caducadas.put(id, retencion);
+            }
+        });
+        if (!caducadas.isEmpty()) {
+            log.info("Liberando {} retenciones caducadas", caducadas.size());
+            release(caducadas);
+        }
+    }
+
+    private void release(Map<String, Retencion> liberar) {
+        Map<Long, Integer> devolver = new TreeMap<>();
+        liberar.values().forEach(retencion ->
+                retencion.cantidades().forEach((id, cantidad) -> devolver.merge(id, cantidad, Integer::sum)));
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                PedidosServiceImpl.returnCantidades(devolver, funkoRepository, stockLedger);
+                holdsRepository.deleteAllByIdInBatch(liberar.keySet());
+            });
+        } catch (RuntimeException e) {
+            log.error("No se ha podido devolver el stock de {} retenciones, se reintentará: {}", liberar.size(), e.getMessage());
+            long reintento = System.currentTimeMillis() + REINTENTO_MS;
+            retenciones.putAll(liberar);
+            synchronized (wheel) {
+                liberar.keySet().forEach(id -> wheel.schedule(id, reintento));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (sweeper != null) {
+            // Las retenciones vivas siguen en la base de datos y se devuelven al arrancar
+            sweeper.shutdownNow();
+        }
+    }
+}
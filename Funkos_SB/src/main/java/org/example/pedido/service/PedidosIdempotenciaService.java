@@ -0,0 +1,16 @@
+package org.example.pedido.service;
+
+import org.example.pedido.models.Pedido;
+
+import java.util.function.Supplier;
+
+public interface PedidosIdempotenciaService {
+    /**
+     * Resultado de un alta con Idempotency-Key
+     * repetido indica que el pedido viene de una ejecución anterior con la misma clave
+     */
+    record Resultado(Pedido pedido, boolean repetido) {
+    }
+
+    Resultado save(String key, Pedido pedido, Supplier<Pedido> alta);
+}
@@ -0,0 +1,221 @@
+package org.example.pedido.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.example.pedido.exceptions.PedidoIdempotenciaConflicto;
+import org.example.pedido.exceptions.PedidoIdempotenciaEnCurso;
+import org.example.pedido.models.LineaPedido;
+import org.example.pedido.models.Pedido;
+import org.example.pedido.models.PedidoIdempotencia;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Altas de pedidos con Idempotency-Key
+ * En memoria hay una cache Caffeine acotada en tamaño y con TTL de clave -> ejecución; una clave
+ * repetida devuelve el pedido guardado sin tocar H2 ni Mongo, y si la primera ejecución sigue en
+ * marcha las repeticiones esperan a su resultado en vez de reservar stock otra vez.
+ * Por debajo está la colección pedidos_idempotencia (con índice TTL): el insert de la clave
+ * EN_CURSO es el cerrojo entre instancias y el documento COMPLETADO sirve a las claves que
+ * ya no están en memoria. Si el alta falla la clave se libera para que el cliente pueda reintentar.
+ * El cerrojo dura pedidos.idempotencia.lease-ms: una clave EN_CURSO caducada es de una instancia
+ * que cayó a medias y la toma la siguiente petición con el mismo pedido
+ */
+@Service
+@Slf4j
+public class PedidosIdempotenciaServiceImpl implements PedidosIdempotenciaService {
+    private final MongoTemplate mongoTemplate;
+    private final Duration ttl;
+    private final long waitMs;
+    private final Duration lease;
+    private final Cache<String, CompletableFuture<PedidoIdempotencia>> ejecuciones;
+
+    @Autowired
+    public PedidosIdempotenciaServiceImpl(MongoTemplate mongoTemplate,
+                                          @Value("${pedidos.idempotencia.max-claves:100000}") long maxClaves,
+                                          @Value("${pedidos.idempotencia.ttl-horas:24}") long ttlHoras,
+                                          @Value("${pedidos.idempotencia.wait-ms:30000}") long waitMs,
+                                          @Value("${pedidos.idempotencia.lease-ms:120000}") long leaseMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.ttl = Duration.ofHours(ttlHoras);
+        this.waitMs = waitMs;
+        this.lease = Duration.ofMillis(leaseMs);
+        this.ejecuciones = Caffeine.newBuilder()
+                .maximumSize(maxClaves)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        try {
+            mongoTemplate.indexOps(PedidoIdempotencia.class).ensureIndex(new Index()
+                    .on("createdAt", Sort.Direction.ASC)
+                    .expire(ttl)
+                    .named("createdAt_ttl"));
+        } catch (RuntimeException e) {
+            log.warn("No se ha podido crear el índice TTL de idempotencia de pedidos: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public Resultado save(String key, Pedido pedido, Supplier<Pedido> alta) {
+        var huella = huella(pedido);
+        var propia = new CompletableFuture<PedidoIdempotencia>();
+        var existente = ejecuciones.asMap().putIfAbsent(key, propia);
+        if (existente != null) {
+            log.info("Pedido con clave de idempotencia {} repetido", key);
+            return repetido(key, huella, esperar(key, existente));
+        }
+        // Solo quien tiene el cerrojo en Mongo lo libera si el alta falla
+        PedidoIdempotencia cerrojo = null;
+        try {
+            var now = LocalDateTime.now();
+            var entrada = PedidoIdempotencia.builder()
+                    .id(key)
+                    .huella(huella)
+                    .estado(PedidoIdempotencia.Estado.EN_CURSO)
+                    .createdAt(now)
+                    .bloqueadoHasta(now.plus(lease))
+                    .build();
+            try {
+                mongoTemplate.insert(entrada);
+                cerrojo = entrada;
+            } catch (DuplicateKeyException e) {
+                // La clave ya se ha usado en otra instancia o antes de salir de memoria
+                var guardada = mongoTemplate.findById(key, PedidoIdempotencia.class);
+                if (guardada != null && guardada.getEstado() == PedidoIdempotencia.Estado.COMPLETADO) {
+                    propia.complete(guardada);
+                    return repetido(key, huella, guardada);
+                }
+                if (guardada != null && !guardada.getHuella().equals(huella)) {
+                    throw new PedidoIdempotenciaConflicto(key);
+                }
+                if (!tomarCaducada(entrada)) {
+                    throw new PedidoIdempotenciaEnCurso(key);
+                }
+                cerrojo = entrada;
+                log.warn("La clave de idempotencia {} estaba bloqueada por una ejecución caída, se retoma", key);
+            }
+            var result = alta.get();
+            entrada.setPedido(result);
+            entrada.setEstado(PedidoIdempotencia.Estado.COMPLETADO);
+            completar(entrada);
+            propia.complete(entrada);
+            return new Resultado(result, false);
+        } catch (RuntimeException e) {
+            // Se libera la clave: las repeticiones en espera reciben el mismo error
+            ejecuciones.asMap().remove(key, propia);
+            propia.completeExceptionally(e);
+            if (cerrojo != null) {
+                liberar(cerrojo);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Toma una clave EN_CURSO cuyo cerrojo ha caducado
+     * Solo una petición lo consigue: la condición sobre bloqueadoHasta se evalúa en la misma escritura
+     */
+    private boolean tomarCaducada(PedidoIdempotencia entrada) {
+        var query = Query.query(Criteria.where("_id").is(entrada.getId())
+                .and("estado").is(PedidoIdempotencia.Estado.EN_CURSO)
+                .and("huella").is(entrada.getHuella())
+                .and("bloqueadoHasta").lt(entrada.getCreatedAt()));
+        var update = new Update()
+                .set("createdAt", entrada.getCreatedAt())
+                .set("bloqueadoHasta", entrada.getBloqueadoHasta());
+        return mongoTemplate.findAndModify(query, update, PedidoIdempotencia.class) != null;
+    }
+
+    private void completar(PedidoIdempotencia entrada) {
+        try {
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(entrada.getId())),
+                    new Update().set("estado", entrada.getEstado()).set("pedido", entrada.getPedido()),
+                    PedidoIdempotencia.class);
+        } catch (RuntimeException e) {
+            // El pedido ya está creado: la clave sigue en memoria y otra instancia verá EN_CURSO (409) hasta que caduque el cerrojo
+            log.warn("No se ha podido guardar el resultado de la clave de idempotencia {}: {}", entrada.getId(), e.getMessage());
+        }
+    }
+
+    private void liberar(PedidoIdempotencia entrada) {
+        try {
+            // Con createdAt solo se borra el cerrojo propio, no el de quien lo haya retomado
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(entrada.getId())
+                    .and("estado").is(PedidoIdempotencia.Estado.EN_CURSO)
+                    .and("createdAt").is(entrada.getCreatedAt())), PedidoIdempotencia.class);
+        } catch (RuntimeException e) {
+            log.warn("No se ha podido liberar la clave de idempotencia {}: {}", entrada.getId(), e.getMessage());
+        }
+    }
+
+    private PedidoIdempotencia esperar(String key, CompletableFuture<PedidoIdempotencia> ejecucion) {
+        try {
+            return ejecucion.get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new PedidoIdempotenciaEnCurso(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PedidoIdempotenciaEnCurso(key);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private Resultado repetido(String key, String huella, PedidoIdempotencia entrada) {
+        if (!entrada.getHuella().equals(huella)) {
+            throw new PedidoIdempotenciaConflicto(key);
+        }
+        return new Resultado(entrada.getPedido(), true);
+    }
+
+    /**
+     * Huella del contenido del pedido, sin el id que genera cada petición
+     */
+    static String huella(Pedido pedido) {
+        var contenido = new StringBuilder()
+                .append(pedido.getIdUsuario()).append('|')
+                .append(pedido.getCliente()).append('|');
+        if (pedido.getLineasPedido() != null) {
+            for (LineaPedido linea : pedido.getLineasPedido()) {
+                contenido.append(linea.getIdProducto()).append(':')
+                        .append(linea.getCantidad()).append(':')
+                        .append(linea.getPrecioProducto()).append(';');
+            }
+        }
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(contenido.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
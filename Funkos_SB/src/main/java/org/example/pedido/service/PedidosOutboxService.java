@@ -0,0 +1,13 @@
+package org.example.pedido.service;
+
+import org.bson.types.ObjectId;
+import org.example.pedido.models.Pedido;
+import org.example.pedido.models.PedidoOutbox;
+
+public interface PedidosOutboxService {
+    boolean isEnabled();
+
+    PedidoOutbox accept(Pedido pedido);
+
+    PedidoOutbox getEstado(ObjectId idPedido);
+}
@@ -0,0 +1,264 @@
+package org.example.pedido.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.example.pedido.exceptions.PedidoException;
+import org.example.pedido.exceptions.PedidoNotFound;
+import org.example.pedido.models.Pedido;
+import org.example.pedido.models.PedidoOutbox;
+import org.example.pedido.repository.PedidoOutboxRepository;
+import org.example.pedido.repository.PedidosRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Alta asíncrona de pedidos con outbox en Mongo
+ * Aceptar un pedido es una sola escritura en la outbox; un pool de workers los va reclamando,
+ * reserva el stock y guarda el pedido final. Todo es idempotente: el pedido final tiene el id
+ * de la entrada y la reserva de stock deja marca en H2, así que un reintento tras una caída
+ * no duplica nada. Los errores de negocio terminan en FALLIDO, el resto se reintenta con espera exponencial.
+ * Un pedido que termina en FALLIDO con el stock ya reservado lo devuelve antes de marcarse.
+ * Una vez guardado el pedido final la entrada solo puede acabar COMPLETADO: si un intento lo
+ * encuentra ya guardado no reserva, no registra en las estadísticas y nunca devuelve su stock
+ */
+@Service
+@Slf4j
+public class PedidosOutboxServiceImpl implements PedidosOutboxService {
+    private final PedidoOutboxRepository outboxRepository;
+    private final PedidosRepository pedidosRepository;
+    private final PedidosService pedidosService;
+    private final PedidosAnalyticsService pedidosAnalyticsService;
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+    private final int workers;
+    private final long pollMs;
+    private final int maxIntentos;
+    private final Duration lease;
+    private final Duration backoff;
+    private ScheduledExecutorService executor;
+    private volatile boolean running = false;
+
+    @Autowired
+    public PedidosOutboxServiceImpl(PedidoOutboxRepository outboxRepository, PedidosRepository pedidosRepository,
+                                    PedidosService pedidosService, PedidosAnalyticsService pedidosAnalyticsService,
+                                    MongoTemplate mongoTemplate,
+                                    @Value("${pedidos.outbox.enabled:false}") boolean enabled,
+                                    @Value("${pedidos.outbox.workers:4}") int workers,
+                                    @Value("${pedidos.outbox.poll-ms:200}") long pollMs,
+                                    @Value("${pedidos.outbox.max-intentos:5}") int maxIntentos,
+                                    @Value("${pedidos.outbox.lease-ms:30000}") long leaseMs,
+                                    @Value("${pedidos.outbox.backoff-ms:1000}") long backoffMs) {
+        this.outboxRepository = outboxRepository;
+        this.pedidosRepository = pedidosRepository;
+        this.pedidosService = pedidosService;
+        this.pedidosAnalyticsService = pedidosAnalyticsService;
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+        this.workers = workers;
+        this.pollMs = pollMs;
+        this.maxIntentos = maxIntentos;
+        this.lease = Duration.ofMillis(leaseMs);
+        this.backoff = Duration.ofMillis(backoffMs);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled && running;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            mongoTemplate.indexOps(PedidoOutbox.class).ensureIndex(new Index()
+                    .on("estado", Sort.Direction.ASC)
+                    .on("nextAttemptAt", Sort.Direction.ASC)
+                    .named("estado_nextAttemptAt"));
+        } catch (RuntimeException e) {
+            log.warn("No se ha podido crear el índice de la outbox de pedidos: {}", e.getMessage());
+        }
+        AtomicInteger contador = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "pedidos-outbox-" + contador.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workers; i++) {
+            executor.scheduleWithFixedDelay(this::drain, pollMs, pollMs, TimeUnit.MILLISECONDS);
+        }
+        running = true;
+        log.info("Outbox de pedidos activa con {} workers", workers);
+    }
+
+    @Override
+    public PedidoOutbox accept(Pedido pedido) {
+        log.info("Aceptando pedido {} en la outbox", pedido.getId());
+        var now = LocalDateTime.now();
+        pedido.setCreatedAt(now);
+        pedido.setUpdatedAt(now);
+        var entrada = PedidoOutbox.builder()
+                .id(pedido.getId())
+                .pedido(pedido)
+                .createdAt(now)
+                .updatedAt(now)
+                .nextAttemptAt(now)
+                .build();
+        try {
+            return outboxRepository.insert(entrada);
+        } catch (DuplicateKeyException e) {
+            // El cliente ha reenviado el mismo pedido: se devuelve el que ya está aceptado
+            log.info("El pedido {} ya estaba en la outbox", pedido.getId());
+            return getEstado(pedido.getId());
+        }
+    }
+
+    @Override
+    public PedidoOutbox getEstado(ObjectId idPedido) {
+        log.info("Obteniendo estado del pedido {}", idPedido);
+        return outboxRepository.findById(idPedido).orElseThrow(() -> new PedidoNotFound(idPedido.toHexString()));
+    }
+
+    void drain() {
+        try {
+            PedidoOutbox entrada;
+            while (running && (entrada = claim()) != null) {
+                process(entrada);
+            }
+        } catch (RuntimeException e) {
+            // Mongo no disponible, por ejemplo: se vuelve a intentar en la siguiente vuelta
+            log.error("Error leyendo la outbox de pedidos: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Reclama la entrada más antigua lista para procesar, o una cuyo worker haya caído
+     */
+    PedidoOutbox claim() {
+        var now = LocalDateTime.now();
+        var query = new Query(new Criteria().orOperator(
+                Criteria.where("estado").is(PedidoOutbox.Estado.PENDIENTE).and("nextAttemptAt").lte(now),
+                Criteria.where("estado").is(PedidoOutbox.Estado.PROCESANDO).and("lockedUntil").lt(now)
+        )).with(Sort.by("createdAt"));
+        var update = new Update()
+                .set("estado", PedidoOutbox.Estado.PROCESANDO)
+                .set("lockedUntil", now.plus(lease))
+                .set("updatedAt", now)
+                .inc("intentos", 1);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), PedidoOutbox.class);
+    }
+
+    void process(PedidoOutbox entrada) {
+        log.info("Procesando pedido {} de la outbox, intento {}", entrada.getId(), entrada.getIntentos());
+        if (pedidosRepository.existsById(entrada.getId())) {
+            // Un intento anterior lo guardó y cayó antes de marcarlo: ya está reservado y registrado
+            log.info("El pedido {} ya estaba guardado, se marca completado", entrada.getId());
+            marcar(entrada, PedidoOutbox.Estado.COMPLETADO, null, null);
+            return;
+        }
+        if (entrada.getIntentos() > maxIntentos) {
+            // Ya estaba agotado pero no se pudo devolver su stock: solo queda eso por hacer
+            fallar(entrada, entrada.getError());
+            return;
+        }
+        Pedido pedido;
+        try {
+            pedido = pedidosService.reservePedido(entrada.getPedido());
+            pedido.setUpdatedAt(LocalDateTime.now());
+            // Mismo id que la entrada
+            pedidosRepository.save(pedido);
+        } catch (PedidoException e) {
+            log.warn("Pedido {} rechazado: {}", entrada.getId(), e.getMessage());
+            fallar(entrada, e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            if (entrada.getIntentos() >= maxIntentos) {
+                log.error("Pedido {} fallido tras {} intentos", entrada.getId(), entrada.getIntentos(), e);
+                fallar(entrada, e.getMessage());
+            } else {
+                var espera = backoff.multipliedBy(1L << Math.min(entrada.getIntentos() - 1, 10));
+                log.warn("Pedido {} reintentará en {} ms: {}", entrada.getId(), espera.toMillis(), e.getMessage());
+                marcar(entrada, PedidoOutbox.Estado.PENDIENTE, e.getMessage(), LocalDateTime.now().plus(espera));
+            }
+            return;
+        }
+        // A partir de aquí el pedido existe: lo que falle no lo vuelve a procesar ni devuelve su stock
+        try {
+            pedidosAnalyticsService.registrar(List.of(pedido));
+        } catch (RuntimeException e) {
+            // Las estadísticas se pueden reconstruir con rebuild; no se reintenta para no contar dos veces
+            log.error("No se ha podido registrar el pedido {} en las estadísticas: {}", entrada.getId(), e.getMessage());
+        }
+        // Si esto falla la entrada caduca su lease y el siguiente intento la encuentra guardada
+        marcar(entrada, PedidoOutbox.Estado.COMPLETADO, null, null);
+    }
+
+    /**
+     * Devuelve el stock si el pedido llegó a reservarlo y lo marca FALLIDO
+     * Si la devolución falla la entrada vuelve a la cola para intentarlo otra vez.
+     * Si el pedido sí llegó a guardarse (p. ej. la respuesta del save se perdió) se marca COMPLETADO
+     */
+    private void fallar(PedidoOutbox entrada, String error) {
+        if (pedidosRepository.existsById(entrada.getId())) {
+            log.info("El pedido {} está guardado, no se devuelve su stock", entrada.getId());
+            marcar(entrada, PedidoOutbox.Estado.COMPLETADO, null, null);
+            return;
+        }
+        try {
+            pedidosService.releasePedido(entrada.getPedido());
+        } catch (RuntimeException e) {
+            log.error("No se ha podido devolver el stock del pedido {}, se reintentará: {}", entrada.getId(), e.getMessage());
+            marcar(entrada, PedidoOutbox.Estado.PENDIENTE, error, LocalDateTime.now().plus(backoff));
+            return;
+        }
+        marcar(entrada, PedidoOutbox.Estado.FALLIDO, error, null);
+    }
+
+    private void marcar(PedidoOutbox entrada, PedidoOutbox.Estado estado, String error, LocalDateTime nextAttemptAt) {
+        var update = new Update()
+                .set("estado", estado)
+                .set("error", error)
+                .set("updatedAt", LocalDateTime.now())
+                .unset("lockedUntil");
+        if (nextAttemptAt != null) {
+            update.set("nextAttemptAt", nextAttemptAt);
+        }
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(entrada.getId())), update, PedidoOutbox.class);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor == null) {
+            return;
+        }
+        // Lo que esté a medias caduca su lease y lo recoge otro worker al volver a arrancar
+        running = false;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
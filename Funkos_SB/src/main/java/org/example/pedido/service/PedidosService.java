@@ -1,19 +1,24 @@
 package org.example.pedido.service;
 
 import org.bson.types.ObjectId;
+import org.example.pedido.dto.PedidoResumen;
 import org.example.pedido.models.Pedido;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
 public interface PedidosService {
-    Page<Pedido> findAll(Pageable pageable);
+    Page<PedidoResumen> findAll(Pageable pageable);
 
     Pedido findById(ObjectId idPedido);
 
-    Page<Pedido> findByIdUsuario(Long idUsuario, Pageable pageable);
+    Page<PedidoResumen> findByIdUsuario(Long idUsuario, Pageable pageable);
 
     Pedido save(Pedido pedido);
 
+    Pedido reservePedido(Pedido pedido);
+
+    void releasePedido(Pedido pedido);
+
     void delete(ObjectId idPedido);
 
     Pedido update(ObjectId idPedido, Pedido pedido);
@@ -2,11 +2,16 @@ package org.example.pedido.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
+import org.example.funko.models.Funko;
 import org.example.funko.repository.FunkoRepository;
+import org.example.pedido.dto.PedidoResumen;
 import org.example.pedido.exceptions.*;
 import org.example.pedido.models.LineaPedido;
 import org.example.pedido.models.Pedido;
+import org.example.pedido.models.PedidoReserva;
+import org.example.pedido.repository.PedidoReservasRepository;
 import org.example.pedido.repository.PedidosRepository;
+import org.example.pedido.stock.StockLedger;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
@@ -17,6 +22,17 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -24,16 +40,23 @@ import java.time.LocalDateTime;
 public class PedidosServiceImpl implements PedidosService{
     private PedidosRepository pedidosRepository;
     private FunkoRepository funkoRepository;
+    private StockLedger stockLedger;
+    private PedidoReservasRepository pedidoReservasRepository;
+    private PedidosAnalyticsService pedidosAnalyticsService;
 
-    public PedidosServiceImpl(PedidosRepository pedidosRepository, FunkoRepository funkoRepository) {
+    public PedidosServiceImpl(PedidosRepository pedidosRepository, FunkoRepository funkoRepository, StockLedger stockLedger,
+                              PedidoReservasRepository pedidoReservasRepository, PedidosAnalyticsService pedidosAnalyticsService) {
         this.pedidosRepository = pedidosRepository;
         this.funkoRepository = funkoRepository;
+        this.stockLedger = stockLedger;
+        this.pedidoReservasRepository = pedidoReservasRepository;
+        this.pedidosAnalyticsService = pedidosAnalyticsService;
     }
 
     @Override
-    public Page<Pedido> findAll(Pageable pageable) {
+    public Page<PedidoResumen> findAll(Pageable pageable) {
         log.info("Obteniendo todos los pedidos paginados y ordenados con {}", pageable);
-        return pedidosRepository.findAll(pageable);
+        return pedidosRepository.findResumenBy(pageable);
     }
 
     @Override
@@ -44,9 +67,9 @@ public class PedidosServiceImpl implements PedidosService{
     }
 
     @Override
-    public Page<Pedido> findByIdUsuario(Long idUsuario, Pageable pageable) {
+    public Page<PedidoResumen> findByIdUsuario(Long idUsuario, Pageable pageable) {
         log.info("Obteniendo pedidos del usuario con id: " + idUsuario);
-        return pedidosRepository.findByIdUsuario(idUsuario, pageable);
+        return pedidosRepository.findResumenByIdUsuario(idUsuario, pageable);
     }
 
     @Override
@@ -62,7 +85,46 @@ public class PedidosServiceImpl implements PedidosService{
         pedidoToSave.setCreatedAt(LocalDateTime.now());
         pedidoToSave.setUpdatedAt(LocalDateTime.now());
 
-        return pedidosRepository.save(pedidoToSave);
+        var pedidoSaved = pedidosRepository.save(pedidoToSave);
+        pedidosAnalyticsService.registrar(List.of(pedidoSaved));
+        return pedidoSaved;
+    }
+
+    /**
+     * Comprueba y reserva el stock del pedido una sola vez, sin guardarlo
+     * La marca de reserva va en la misma transacción que el stock, así que si se reintenta
+     * un pedido ya reservado solo se recalculan sus totales
+     */
+    @Override
+    @Transactional
+    public Pedido reservePedido(Pedido pedido) {
+        var idPedido = pedido.getId().toHexString();
+        if (pedidoReservasRepository.existsById(idPedido)) {
+            log.info("El stock del pedido {} ya estaba reservado", idPedido);
+            calcularTotales(pedido);
+            return pedido;
+        }
+        checkPedido(pedido);
+        reserveStockPedidos(pedido);
+        pedidoReservasRepository.save(new PedidoReserva(idPedido, LocalDateTime.now()));
+        return pedido;
+    }
+
+    /**
+     * Deshace la reserva de un pedido que no se va a guardar
+     * Solo devuelve el stock si queda la marca de reserva, y la borra en la misma transacción,
+     * así que llamarlo dos veces no devuelve el stock dos veces
+     */
+    @Override
+    @Transactional
+    public void releasePedido(Pedido pedido) {
+        var idPedido = pedido.getId().toHexString();
+        if (!pedidoReservasRepository.existsById(idPedido)) {
+            return;
+        }
+        log.info("Devolviendo el stock reservado del pedido {}", idPedido);
+        returnCantidades(cantidadesPorProducto(pedido.getLineasPedido()), funkoRepository, stockLedger);
+        pedidoReservasRepository.deleteById(idPedido);
     }
 
     Pedido reserveStockPedidos(Pedido pedido) {
@@ -72,12 +134,38 @@ public class PedidosServiceImpl implements PedidosService{
             throw new PedidoNotItems(pedido.getId().toHexString());
         }
 
-        pedido.getLineasPedido().forEach(lineaPedido -> {
-            var producto = funkoRepository.findById(lineaPedido.getIdProducto()).get();
-            producto.setStock(producto.getStock() - lineaPedido.getCantidad());
-            funkoRepository.save(producto);
-            lineaPedido.setTotal(lineaPedido.getCantidad() * lineaPedido.getPrecioProducto());
+        var cantidades = cantidadesPorProducto(pedido.getLineasPedido());
+        cantidades.forEach((idProducto, cantidad) -> {
+            if (cantidad <= 0) {
+                throw new ProductoNotStock(idProducto);
+            }
         });
+        reserveCantidades(cantidades, funkoRepository, stockLedger);
+        calcularTotales(pedido);
+
+        return pedido;
+    }
+
+    static void reserveCantidades(Map<Long, Integer> cantidades, FunkoRepository funkoRepository, StockLedger stockLedger) {
+        if (stockLedger.isEnabled()) {
+            // Reserva en memoria, la base de datos se actualiza después en segundo plano
+            stockLedger.reserve(cantidades);
+            return;
+        }
+        // Un UPDATE condicional por producto en un único batch, siempre en el mismo orden de ids para no cruzar bloqueos.
+        // Si alguno no tiene stock se lanza la excepción y la transacción deshace los anteriores
+        var reservados = funkoRepository.reserveStock(cantidades, LocalDateTime.now());
+        var idsProducto = new ArrayList<>(cantidades.keySet());
+        for (int i = 0; i < reservados.length; i++) {
+            if (reservados[i] == 0) {
+                throw new ProductoNotStock(idsProducto.get(i));
+            }
+        }
+    }
+
+    static void calcularTotales(Pedido pedido) {
+        pedido.getLineasPedido().forEach(lineaPedido ->
+                lineaPedido.setTotal(lineaPedido.getCantidad() * lineaPedido.getPrecioProducto()));
 
         var total = pedido.getLineasPedido().stream()
                 .map(lineaPedido -> lineaPedido.getCantidad() * lineaPedido.getPrecioProducto())
@@ -91,8 +179,6 @@ public class PedidosServiceImpl implements PedidosService{
 
         pedido.setTotal(total);
         pedido.setTotalItems(totalItems);
-
-        return pedido;
     }
 
     @Override
@@ -106,58 +192,226 @@ public class PedidosServiceImpl implements PedidosService{
         returnStockPedidos(pedidoToDelete);
 
         pedidosRepository.deleteById(idPedido);
+        pedidosAnalyticsService.anular(pedidoToDelete);
     }
 
     Pedido returnStockPedidos(Pedido pedido) {
         log.info("Retornando stock del pedido: {}", pedido);
         if (pedido.getLineasPedido() != null) {
-            pedido.getLineasPedido().forEach(lineaPedido -> {
-                var funko = funkoRepository.findById(lineaPedido.getIdProducto()).get();
-                funko.setStock(funko.getStock() + lineaPedido.getCantidad());
-                funkoRepository.save(funko);
-            });
+            returnCantidades(cantidadesPorProducto(pedido.getLineasPedido()), funkoRepository, stockLedger);
         }
         return pedido;
     }
 
+    static void returnCantidades(Map<Long, Integer> cantidades, FunkoRepository funkoRepository, StockLedger stockLedger) {
+        if (stockLedger.isEnabled()) {
+            stockLedger.release(cantidades);
+            return;
+        }
+        var devueltos = funkoRepository.returnStock(cantidades, LocalDateTime.now());
+        var idsProducto = new ArrayList<>(cantidades.keySet());
+        for (int i = 0; i < devueltos.length; i++) {
+            if (devueltos[i] == 0) {
+                log.warn("No se ha podido devolver el stock del producto {}, ya no existe", idsProducto.get(i));
+            }
+        }
+    }
+
+    // Ids de producto de varios pedidos, ordenados, para leerlos todos de una vez
+    static Set<Long> idsProducto(List<Pedido> pedidos) {
+        Set<Long> ids = new TreeSet<>();
+        pedidos.stream()
+                .filter(pedido -> pedido.getLineasPedido() != null)
+                .flatMap(pedido -> pedido.getLineasPedido().stream())
+                .map(LineaPedido::getIdProducto)
+                .filter(Objects::nonNull)
+                .forEach(ids::add);
+        return ids;
+    }
+
+    // Stock disponible de cada producto en este momento; con el ledger activo manda el ledger
+    static Map<Long, Integer> fotoStock(Map<Long, Funko> productos, StockLedger stockLedger) {
+        Map<Long, Integer> disponible = new HashMap<>();
+        productos.forEach((id, funko) -> {
+            Integer enLedger = stockLedger.isEnabled() ? stockLedger.getStock(id) : null;
+            disponible.put(id, enLedger != null ? enLedger : funko.getStock());
+        });
+        return disponible;
+    }
+
+    /**
+     * Valida un pedido de un lote contra los productos y la foto de stock ya leídos
+     * No descuenta nada de la foto, devuelve las cantidades para que lo haga quien lo acepte
+     */
+    static Map<Long, Integer> checkContraFoto(Pedido pedido, Map<Long, Funko> productos, Map<Long, Integer> disponible) {
+        if (pedido.getLineasPedido() == null || pedido.getLineasPedido().isEmpty()) {
+            throw new PedidoNotItems(pedido.getId().toHexString());
+        }
+        var cantidades = cantidadesPorProducto(pedido.getLineasPedido());
+        pedido.getLineasPedido().forEach(lineaPedido -> {
+            var funko = productos.get(lineaPedido.getIdProducto());
+            if (funko == null) {
+                throw new ProductoNotFound(lineaPedido.getIdProducto());
+            }
+            if (!funko.getPrice().equals(lineaPedido.getPrecioProducto())) {
+                throw new ProductoBadPrice(lineaPedido.getIdProducto());
+            }
+        });
+        cantidades.forEach((id, cantidad) -> {
+            if (cantidad <= 0 || disponible.getOrDefault(id, 0) < cantidad) {
+                throw new ProductoNotStock(id);
+            }
+        });
+        return cantidades;
+    }
+
+    // Cantidades agregadas por producto y ordenadas por id
+    static Map<Long, Integer> cantidadesPorProducto(List<LineaPedido> lineasPedido) {
+        Map<Long, Integer> cantidades = new TreeMap<>();
+        lineasPedido.forEach(lineaPedido -> cantidades.merge(lineaPedido.getIdProducto(), lineaPedido.getCantidad(), Integer::sum));
+        return cantidades;
+    }
+
     @Override
     @Transactional
     @CachePut(key = "#idPedido")
     public Pedido update(ObjectId idPedido, Pedido pedido) {
         log.info("Actualizando pedido con id: " + idPedido);
 
-
         var pedidoToUpdate = pedidosRepository.findById(idPedido).orElseThrow(() -> new PedidoNotFound(idPedido.toHexString()));
 
-        returnStockPedidos(pedido);
+        if (pedido.getLineasPedido() == null || pedido.getLineasPedido().isEmpty()) {
+            throw new PedidoNotItems(idPedido.toHexString());
+        }
+        var cantidades = cantidadesPorProducto(pedido.getLineasPedido());
+        cantidades.forEach((idProducto, cantidad) -> {
+            if (cantidad <= 0) {
+                throw new ProductoNotStock(idProducto);
+            }
+        });
+
+        // Solo se mueve la diferencia entre lo guardado y lo nuevo, producto a producto
+        var deltas = deltasStock(pedidoToUpdate.getLineasPedido(), cantidades);
+        checkLineasCambiadas(pedido, pedidoToUpdate, deltas);
+        if (!deltas.isEmpty()) {
+            applyDeltas(deltas, funkoRepository, stockLedger);
+        }
+        calcularTotales(pedido);
 
+        pedido.setId(idPedido);
+        pedido.setCreatedAt(pedidoToUpdate.getCreatedAt());
+        pedido.setUpdatedAt(LocalDateTime.now());
 
-        checkPedido(pedido);
+        var pedidoSaved = pedidosRepository.save(pedido);
+        pedidosAnalyticsService.anular(pedidoToUpdate);
+        pedidosAnalyticsService.registrar(List.of(pedidoSaved));
+        return pedidoSaved;
 
-        var pedidoToSave = reserveStockPedidos(pedido);
+    }
 
-        pedidoToSave.setUpdatedAt(LocalDateTime.now());
+    // Cantidad neta a reservar por producto (negativa si se devuelve), sin los que no cambian
+    static Map<Long, Integer> deltasStock(List<LineaPedido> guardadas, Map<Long, Integer> nuevas) {
+        Map<Long, Integer> deltas = new TreeMap<>(nuevas);
+        if (guardadas != null) {
+            cantidadesPorProducto(guardadas).forEach((idProducto, cantidad) -> deltas.merge(idProducto, -cantidad, Integer::sum));
+        }
+        deltas.values().removeIf(delta -> delta == 0);
+        return deltas;
+    }
 
-        return pedidosRepository.save(pedidoToSave);
+    /**
+     * Comprueba solo los productos que cambian: los que se piden de más y los que traen un precio
+     * distinto al guardado. Una línea que no cambia conserva el precio con el que se compró
+     */
+    void checkLineasCambiadas(Pedido pedido, Pedido pedidoGuardado, Map<Long, Integer> deltas) {
+        Map<Long, Double> preciosGuardados = new HashMap<>();
+        if (pedidoGuardado.getLineasPedido() != null) {
+            pedidoGuardado.getLineasPedido().forEach(lineaPedido ->
+                    preciosGuardados.putIfAbsent(lineaPedido.getIdProducto(), lineaPedido.getPrecioProducto()));
+        }
+        Set<Long> aComprobar = new TreeSet<>();
+        pedido.getLineasPedido().forEach(lineaPedido -> {
+            var idProducto = lineaPedido.getIdProducto();
+            if (deltas.getOrDefault(idProducto, 0) > 0 || !Objects.equals(preciosGuardados.get(idProducto), lineaPedido.getPrecioProducto())) {
+                aComprobar.add(idProducto);
+            }
+        });
+        if (aComprobar.isEmpty()) {
+            return;
+        }
+        var productos = funkoRepository.findAllById(aComprobar).stream()
+                .collect(Collectors.toMap(Funko::getId, Function.identity()));
+        pedido.getLineasPedido().stream()
+                .filter(lineaPedido -> aComprobar.contains(lineaPedido.getIdProducto()))
+                .forEach(lineaPedido -> {
+                    var funko = Optional.ofNullable(productos.get(lineaPedido.getIdProducto()))
+                            .orElseThrow(() -> new ProductoNotFound(lineaPedido.getIdProducto()));
+                    var delta = deltas.getOrDefault(lineaPedido.getIdProducto(), 0);
+                    if (!stockLedger.isEnabled() && delta > 0 && funko.getStock() < delta) {
+                        throw new ProductoNotStock(lineaPedido.getIdProducto());
+                    }
+                    if (!funko.getPrice().equals(lineaPedido.getPrecioProducto())) {
+                        throw new ProductoBadPrice(lineaPedido.getIdProducto());
+                    }
+                });
+    }
 
+    /**
+     * Aplica deltas de stock con signo en un único batch
+     * Los positivos solo se descuentan si hay stock; si alguno no lo tiene la transacción deshace todo
+     */
+    static void applyDeltas(Map<Long, Integer> deltas, FunkoRepository funkoRepository, StockLedger stockLedger) {
+        if (stockLedger.isEnabled()) {
+            Map<Long, Integer> reservas = new TreeMap<>();
+            Map<Long, Integer> devoluciones = new TreeMap<>();
+            deltas.forEach((idProducto, delta) -> {
+                if (delta > 0) {
+                    reservas.put(idProducto, delta);
+                } else {
+                    devoluciones.put(idProducto, -delta);
+                }
+            });
+            if (!reservas.isEmpty()) {
+                stockLedger.reserve(reservas);
+            }
+            if (!devoluciones.isEmpty()) {
+                stockLedger.release(devoluciones);
+            }
+            return;
+        }
+        var aplicados = funkoRepository.reserveStock(deltas, LocalDateTime.now());
+        var idsProducto = new ArrayList<>(deltas.keySet());
+        for (int i = 0; i < aplicados.length; i++) {
+            if (aplicados[i] == 0) {
+                if (deltas.get(idsProducto.get(i)) > 0) {
+                    throw new ProductoNotStock(idsProducto.get(i));
+                }
+                log.warn("No se ha podido devolver el stock del producto {}, ya no existe", idsProducto.get(i));
+            }
+        }
     }
 
-    void checkPedido(Pedido pedido) {
+    Map<Long, Funko> checkPedido(Pedido pedido) {
         log.info("Comprobando pedido: {}", pedido);
 
         if (pedido.getLineasPedido() == null || pedido.getLineasPedido().isEmpty()) {
             throw new PedidoNotItems(pedido.getId().toHexString());
         }
+        // Todos los productos del pedido en una sola consulta
+        var productos = funkoRepository.findAllById(cantidadesPorProducto(pedido.getLineasPedido()).keySet()).stream()
+                .collect(Collectors.toMap(Funko::getId, Function.identity()));
         pedido.getLineasPedido().forEach(lineaPedido -> {
-            var funko = funkoRepository.findById(lineaPedido.getIdProducto())
+            var funko = Optional.ofNullable(productos.get(lineaPedido.getIdProducto()))
                     .orElseThrow(() -> new ProductoNotFound(lineaPedido.getIdProducto()));
 
-            if (funko.getStock() < lineaPedido.getCantidad() && lineaPedido.getCantidad() > 0) {
+            // Con el ledger activo el stock de la base de datos va por detrás, decide la reserva
+            if (!stockLedger.isEnabled() && funko.getStock() < lineaPedido.getCantidad() && lineaPedido.getCantidad() > 0) {
                 throw new ProductoNotStock(lineaPedido.getIdProducto());
             }
             if (!funko.getPrice().equals(lineaPedido.getPrecioProducto())) {
                 throw new ProductoBadPrice(lineaPedido.getIdProducto());
             }
         });
+        return productos;
     }
 }
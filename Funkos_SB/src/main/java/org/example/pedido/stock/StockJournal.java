@@ -0,0 +1,147 @@
+package org.example.pedido.stock;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Diario en disco de los movimientos de stock del ledger
+ * Cada línea es "seq id:delta id:delta ..." y se escribe cuando el pedido ya está confirmado, así
+ * al recuperar solo se aplican movimientos de pedidos que existen. append fuerza la línea a disco
+ * antes de volver (ese es el punto de durabilidad): lo que ha devuelto append sobrevive a una caída
+ * y si el proceso cae con deltas sin volcar se pueden recuperar al arrancar.
+ * Se trocea en segmentos: cada volcado cierra el actual y, una vez guardado el checkpoint,
+ * borra los cerrados
+ */
+@Slf4j
+public class StockJournal {
+    private static final String PREFIX = "stock-";
+    private static final String SUFFIX = ".journal";
+
+    private final Path dir;
+    private final List<Path> closed = new ArrayList<>();
+    private FileChannel current;
+    private Path currentPath;
+    private long lastSeq = 0;
+
+    public StockJournal(Path dir) {
+        this.dir = dir;
+    }
+
+    public record Replay(Map<Long, Integer> deltas, long lastSeq) {
+    }
+
+    /**
+     * Lee los segmentos que haya en disco y devuelve los deltas posteriores al checkpoint
+     * Los segmentos leídos quedan como cerrados para borrarlos cuando se apliquen
+     */
+    public synchronized Replay open(long checkpoint) throws IOException {
+        Files.createDirectories(dir);
+        Map<Long, Integer> deltas = new TreeMap<>();
+        long maxSeq = checkpoint;
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(dir)) {
+            segments = files.filter(StockJournal::isSegment)
+                    .sorted(Comparator.comparingLong(StockJournal::firstSeq))
+                    .toList();
+        }
+        for (Path segment : segments) {
+            for (String line : Files.readAllLines(segment, StandardCharsets.UTF_8)) {
+                try {
+                    String[] parts = line.trim().split(" ");
+                    long seq = Long.parseLong(parts[0]);
+                    maxSeq = Math.max(maxSeq, seq);
+                    if (seq <= checkpoint) {
+                        continue;
+                    }
+                    Map<Long, Integer> registro = new TreeMap<>();
+                    for (int i = 1; i < parts.length; i++) {
+                        String[] delta = parts[i].split(":");
+                        registro.put(Long.parseLong(delta[0]), Integer.parseInt(delta[1]));
+                    }
+                    registro.forEach((id, delta) -> deltas.merge(id, delta, Integer::sum));
+                } catch (RuntimeException e) {
+                    // Una línea a medias solo puede ser la última escrita antes de una caída
+                    log.warn("Ignorando línea incompleta del diario de stock {}: {}", segment, line);
+                }
+            }
+            closed.add(segment);
+        }
+        lastSeq = maxSeq;
+        deltas.values().removeIf(delta -> delta == 0);
+        return new Replay(deltas, maxSeq);
+    }
+
+    public synchronized long append(Map<Long, Integer> deltas) throws IOException {
+        if (current == null) {
+            currentPath = dir.resolve(PREFIX + (lastSeq + 1) + SUFFIX);
+            current = FileChannel.open(currentPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        long seq = lastSeq + 1;
+        StringBuilder line = new StringBuilder().append(seq);
+        deltas.forEach((id, delta) -> line.append(' ').append(id).append(':').append(delta));
+        line.append('\n');
+        ByteBuffer buffer = ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            current.write(buffer);
+        }
+        current.force(false);
+        lastSeq = seq;
+        return seq;
+    }
+
+    /**
+     * Cierra el segmento actual; lo siguiente que se escriba irá a uno nuevo
+     * Devuelve el último seq escrito hasta ahora
+     */
+    public synchronized long rotate() throws IOException {
+        if (current != null) {
+            current.force(false);
+            current.close();
+            closed.add(currentPath);
+            current = null;
+            currentPath = null;
+        }
+        return lastSeq;
+    }
+
+    /**
+     * Borra los segmentos cerrados, que ya están aplicados en la base de datos
+     */
+    public synchronized void deleteClosed() throws IOException {
+        for (Path segment : closed) {
+            Files.deleteIfExists(segment);
+        }
+        closed.clear();
+    }
+
+    public synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    public synchronized void close() throws IOException {
+        rotate();
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    private static long firstSeq(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
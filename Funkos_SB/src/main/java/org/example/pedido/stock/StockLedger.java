@@ -0,0 +1,413 @@
+package org.example.pedido.stock;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.funko.repository.FunkoRepository;
+import org.example.pedido.exceptions.ProductoNotFound;
+import org.example.pedido.exceptions.ProductoNotStock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Stock de los funkos en memoria para los pedidos
+ * Cada funko tiene su contador atómico, sembrado con el stock de la base de datos la primera vez
+ * que se pide, y las reservas y devoluciones no tocan la base de datos: se anotan en el diario
+ * y un hilo propio vuelca los deltas netos cada pocos milisegundos junto con el checkpoint.
+ * Una reserva descuenta el contador al momento para que nadie más venda ese stock, pero solo pasa al
+ * diario y a lo pendiente de volcar cuando la transacción del pedido se confirma; las devoluciones se
+ * aplican enteras al confirmar. Así el diario solo tiene movimientos de pedidos confirmados y
+ * al arrancar se aplica lo que quedase en él por detrás del checkpoint.
+ * Quien escriba el stock directamente en la base de datos (p. ej. la actualización masiva) debe
+ * llamar a invalidate una vez confirmado para que los contadores se vuelvan a sembrar.
+ * Se activa con pedidos.stock.ledger.enabled; mientras no está listo los pedidos van contra la base de datos
+ */
+@Component
+@Slf4j
+public class StockLedger {
+    private final FunkoRepository funkoRepository;
+    private final StockLedgerCheckpointRepository checkpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final StockJournal journal;
+    private final boolean enabled;
+    private final long flushMs;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    // Las reservas comparten el candado; el volcado lo toma en exclusiva solo para cortar el diario
+    private final ReentrantReadWriteLock corte = new ReentrantReadWriteLock();
+    // Un volcado en curso y una resiembra no se cruzan: la resiembra leería el stock sin sus deltas
+    private final ReentrantLock volcado = new ReentrantLock();
+    private ScheduledExecutorService flusher;
+    private volatile boolean ready = false;
+    private volatile long checkpoint = 0;
+
+    @Autowired
+    public StockLedger(FunkoRepository funkoRepository, StockLedgerCheckpointRepository checkpointRepository,
+                       TransactionTemplate transactionTemplate,
+                       @Value("${pedidos.stock.ledger.enabled:false}") boolean enabled,
+                       @Value("${pedidos.stock.ledger.flush-ms:200}") long flushMs,
+                       @Value("${pedidos.stock.ledger.journal-dir:stock-journal}") String journalDir) {
+        this.funkoRepository = funkoRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.flushMs = flushMs;
+        this.journal = new StockJournal(Path.of(journalDir));
+    }
+
+    private static final class Entry {
+        private final AtomicInteger disponible;
+        // Confirmado y aún no volcado a la base de datos
+        private final AtomicInteger pendiente = new AtomicInteger();
+        // Descontado de disponible por transacciones que todavía no han terminado
+        private final AtomicInteger enVuelo = new AtomicInteger();
+
+        private Entry(int stock) {
+            this.disponible = new AtomicInteger(stock);
+        }
+
+        private boolean reservar(int delta) {
+            int actual;
+            do {
+                actual = disponible.get();
+                if (actual + delta < 0) {
+                    return false;
+                }
+            } while (!disponible.compareAndSet(actual, actual + delta));
+            enVuelo.addAndGet(delta);
+            return true;
+        }
+
+        private void confirmar(int delta) {
+            enVuelo.addAndGet(-delta);
+            pendiente.addAndGet(delta);
+        }
+
+        private void deshacer(int delta) {
+            enVuelo.addAndGet(-delta);
+            disponible.addAndGet(-delta);
+        }
+
+        private void add(int delta) {
+            disponible.addAndGet(delta);
+            pendiente.addAndGet(delta);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && ready;
+    }
+
+    // Antes que los demás arranques que tocan stock (p. ej. devolver retenciones huérfanas)
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se ha podido leer el diario de stock", e);
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stock-ledger-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushMs, flushMs, TimeUnit.MILLISECONDS);
+        ready = true;
+        log.info("Ledger de stock activo, volcando a la base de datos cada {} ms", flushMs);
+    }
+
+    void recover() throws IOException {
+        checkpoint = checkpointRepository.findById(StockLedgerCheckpoint.DEFAULT_ID)
+                .map(StockLedgerCheckpoint::getLastSeq)
+                .orElse(0L);
+        var replay = journal.open(checkpoint);
+        if (replay.lastSeq() > checkpoint) {
+            log.info("Recuperando {} deltas de stock del diario (seq {} a {})", replay.deltas().size(), checkpoint, replay.lastSeq());
+            write(replay.deltas(), replay.lastSeq());
+        }
+        journal.deleteClosed();
+    }
+
+    /**
+     * Reserva todas las cantidades o ninguna
+     * Se anota en el diario cuando la transacción del pedido se confirma; si no llega a confirmarse se deshace
+     */
+    public void reserve(Map<Long, Integer> cantidades) {
+        Map<Long, Integer> deltas = new TreeMap<>();
+        cantidades.forEach((id, cantidad) -> deltas.put(id, -cantidad));
+        var reservados = reservar(deltas);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            confirmar(reservados, true);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    confirmar(reservados, false);
+                } else {
+                    deshacer(reservados);
+                }
+            }
+        });
+    }
+
+    /**
+     * Devuelve stock; con transacción se aplica cuando se confirma
+     */
+    public void release(Map<Long, Integer> cantidades) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            devolver(cantidades);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                devolver(cantidades);
+            }
+        });
+    }
+
+    public Integer getStock(Long id) {
+        Entry entry = entries.get(id);
+        return entry != null ? entry.disponible.get() : null;
+    }
+
+    /**
+     * Vuelve a sembrar los contadores de funkos cuyo stock se ha escrito fuera del ledger
+     * Se llama con la escritura ya confirmada. Lo que quede pendiente de volcar se mantiene
+     * encima del nuevo valor, igual que acabará en la base de datos con el siguiente volcado
+     */
+    public void invalidate(Collection<Long> ids) {
+        if (!enabled || ids.isEmpty()) {
+            return;
+        }
+        volcado.lock();
+        corte.writeLock().lock();
+        try {
+            for (Long id : ids) {
+                Entry entry = entries.get(id);
+                if (entry == null) {
+                    continue;
+                }
+                int pendiente = entry.pendiente.get();
+                int enVuelo = entry.enVuelo.get();
+                if (pendiente == 0 && enVuelo == 0) {
+                    // Sin nada pendiente basta con olvidarlo, se siembra de nuevo cuando se pida
+                    entries.remove(id);
+                    continue;
+                }
+                var stock = funkoRepository.findStockById(id);
+                if (stock.isPresent()) {
+                    entry.disponible.set(stock.get() + pendiente + enVuelo);
+                } else {
+                    entries.remove(id);
+                }
+            }
+            log.info("Stock de {} funkos invalidado en el ledger", ids.size());
+        } finally {
+            corte.writeLock().unlock();
+            volcado.unlock();
+        }
+    }
+
+    private Map<Long, Integer> reservar(Map<Long, Integer> deltas) {
+        corte.readLock().lock();
+        try {
+            Map<Long, Integer> reservados = new LinkedHashMap<>();
+            for (var delta : deltas.entrySet()) {
+                Entry entry = entry(delta.getKey());
+                if (entry == null) {
+                    deshacerSinCandado(reservados);
+                    throw new ProductoNotFound(delta.getKey());
+                }
+                if (!entry.reservar(delta.getValue())) {
+                    deshacerSinCandado(reservados);
+                    throw new ProductoNotStock(delta.getKey());
+                }
+                reservados.put(delta.getKey(), delta.getValue());
+            }
+            return reservados;
+        } finally {
+            corte.readLock().unlock();
+        }
+    }
+
+    /**
+     * La reserva ya es definitiva: pasa al diario y a lo pendiente de volcar
+     * Sin transacción un fallo del diario deshace la reserva; confirmada la transacción ya no se
+     * puede deshacer y el delta queda pendiente igualmente para el siguiente volcado
+     */
+    private void confirmar(Map<Long, Integer> reservados, boolean deshacerSiFalla) {
+        corte.readLock().lock();
+        try {
+            try {
+                journal.append(reservados);
+            } catch (IOException e) {
+                if (deshacerSiFalla) {
+                    deshacerSinCandado(reservados);
+                    throw new UncheckedIOException("No se ha podido escribir en el diario de stock", e);
+                }
+                log.error("No se ha podido escribir en el diario de stock la reserva {}, queda solo en memoria hasta el volcado", reservados, e);
+            }
+            reservados.forEach((id, delta) -> {
+                // Si el funko se ha borrado mientras tanto su contador ya no existe
+                Entry entry = entries.get(id);
+                if (entry != null) {
+                    entry.confirmar(delta);
+                }
+            });
+        } finally {
+            corte.readLock().unlock();
+        }
+    }
+
+    private void deshacer(Map<Long, Integer> reservados) {
+        corte.readLock().lock();
+        try {
+            deshacerSinCandado(reservados);
+        } finally {
+            corte.readLock().unlock();
+        }
+    }
+
+    private void deshacerSinCandado(Map<Long, Integer> reservados) {
+        reservados.forEach((id, delta) -> {
+            Entry entry = entries.get(id);
+            if (entry != null) {
+                entry.deshacer(delta);
+            }
+        });
+    }
+
+    private void devolver(Map<Long, Integer> cantidades) {
+        corte.readLock().lock();
+        try {
+            Map<Long, Integer> aplicados = new LinkedHashMap<>();
+            cantidades.forEach((id, cantidad) -> {
+                Entry entry = entry(id);
+                if (entry == null) {
+                    log.warn("No se ha podido devolver el stock del producto {}, ya no existe", id);
+                    return;
+                }
+                entry.add(cantidad);
+                aplicados.put(id, cantidad);
+            });
+            if (!aplicados.isEmpty()) {
+                try {
+                    journal.append(aplicados);
+                } catch (IOException e) {
+                    log.error("No se ha podido escribir en el diario de stock la devolución {}, queda solo en memoria hasta el volcado", aplicados, e);
+                }
+            }
+        } finally {
+            corte.readLock().unlock();
+        }
+    }
+
+    private Entry entry(Long id) {
+        return entries.computeIfAbsent(id, key -> funkoRepository.findStockById(key).map(Entry::new).orElse(null));
+    }
+
+    /**
+     * Vuelca los deltas netos pendientes y el checkpoint en una transacción
+     * Si falla, los deltas vuelven a quedar pendientes para el siguiente volcado
+     */
+    void flush() {
+        volcado.lock();
+        try {
+            flushDeltas();
+        } finally {
+            volcado.unlock();
+        }
+    }
+
+    private void flushDeltas() {
+        Map<Long, Integer> deltas = new TreeMap<>();
+        long hasta;
+        corte.writeLock().lock();
+        try {
+            entries.forEach((id, entry) -> {
+                int delta = entry.pendiente.getAndSet(0);
+                if (delta != 0) {
+                    deltas.put(id, delta);
+                }
+            });
+            hasta = journal.rotate();
+        } catch (IOException e) {
+            deltas.forEach((id, delta) -> entries.get(id).pendiente.addAndGet(delta));
+            log.error("No se ha podido cerrar el segmento del diario de stock", e);
+            return;
+        } finally {
+            corte.writeLock().unlock();
+        }
+        if (deltas.isEmpty() && hasta == checkpoint) {
+            return;
+        }
+        try {
+            write(deltas, hasta);
+            journal.deleteClosed();
+        } catch (RuntimeException | IOException e) {
+            deltas.forEach((id, delta) -> entries.get(id).pendiente.addAndGet(delta));
+            log.error("No se ha podido volcar el stock a la base de datos, se reintentará", e);
+        }
+    }
+
+    private void write(Map<Long, Integer> deltas, long lastSeq) {
+        transactionTemplate.executeWithoutResult(status -> {
+            var now = LocalDateTime.now();
+            if (!deltas.isEmpty()) {
+                funkoRepository.adjustStock(deltas, now);
+            }
+            checkpointRepository.save(new StockLedgerCheckpoint(StockLedgerCheckpoint.DEFAULT_ID, lastSeq, now));
+        });
+        checkpoint = lastSeq;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher == null) {
+            return;
+        }
+        ready = false;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Último volcado al parar, lo que no entre queda en el diario para el siguiente arranque
+        flush();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.error("No se ha podido cerrar el diario de stock", e);
+        }
+    }
+}
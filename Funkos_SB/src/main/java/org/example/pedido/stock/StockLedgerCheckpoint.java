@@ -0,0 +1,28 @@
+package org.example.pedido.stock;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Último registro del diario de stock que ya está aplicado en la base de datos
+ * Se guarda en la misma transacción que los deltas, así al arrancar se sabe
+ * exactamente qué parte del diario falta por aplicar
+ */
+@Data
+@Entity
+@Table(name = "stock_ledger_checkpoint")
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockLedgerCheckpoint {
+    public static final Long DEFAULT_ID = 1L;
+    @Id
+    private Long id = DEFAULT_ID;
+    private Long lastSeq = 0L;
+    private LocalDateTime updatedAt = LocalDateTime.now();
+}
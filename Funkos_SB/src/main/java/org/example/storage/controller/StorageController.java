@@ -1,47 +1,257 @@
 package org.example.storage.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.example.storage.dto.StorageEntry;
+import org.example.storage.dto.StorageUsage;
+import org.example.storage.dto.StoredFile;
 import org.example.storage.service.StorageService;
+import org.example.storage.service.StorageUpload;
+import org.example.utils.etag.VersionETag;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
 
+/**
+ * Descarga de ficheros almacenados
+ * Los nombres llevan marca de tiempo, así que las respuestas se cachean un año, salvo cuando se ha
+ * pedido un tamaño derivado que todavía no está y se sirve el original, que solo un minuto. Las peticiones
+ * condicionales se contestan con los atributos del fichero, sin abrirlo. El cuerpo se envía con
+ * sendfile si el conector lo soporta (Tomcat NIO) y si no con FileChannel.transferTo.
+ * Se admiten rangos simples (206 con Content-Range) y múltiples (multipart/byteranges).
+ * Las subidas por POST /storage/upload llevan el fichero tal cual en el cuerpo y se leen sin
+ * bloquear directamente al almacenamiento, sin pasar por MultipartFile
+ */
 @RestController
 @Slf4j
 @RequestMapping("/storage")
 public class StorageController {
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+    // El original servido en lugar de un tamaño que aún no existe no puede quedarse un año en la caché
+    private static final String CACHE_CONTROL_PROVISIONAL = "public, max-age=60";
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     private final StorageService storageService;
+    private final ObjectMapper objectMapper;
+    @Value("${upload.timeout-ms:300000}")
+    private long uploadTimeoutMs;
 
     @Autowired
-    public StorageController(StorageService storageService) {
+    public StorageController(StorageService storageService, ObjectMapper objectMapper) {
         this.storageService = storageService;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping(value = "/upload", consumes = MediaType.ALL_VALUE)
+    public void upload(@RequestParam String filename, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        log.info("Subiendo fichero {} ({}, {} bytes)", filename, request.getContentType(), request.getContentLengthLong());
+        // Tipo y tamaño anunciado se comprueban antes de empezar a leer
+        StorageUpload upload = storageService.openUpload(filename, request.getContentType(), request.getContentLengthLong());
+        String baseUrl = ServletUriComponentsBuilder.fromContextPath(request).path("/storage/").toUriString();
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(uploadTimeoutMs);
+        var reader = new StorageUploadReader(request.getInputStream(), asyncContext, upload, storageService, objectMapper, baseUrl);
+        asyncContext.addListener(reader);
+        // A partir de aquí el hilo de la petición queda libre: el contenedor llama al lector cuando llegan bytes
+        request.getInputStream().setReadListener(reader);
+    }
+
+    @GetMapping
+    public ResponseEntity<List<StorageEntry>> listFiles(@RequestParam(required = false) String after,
+                                                        @RequestParam(defaultValue = "100") int limit) {
+        log.info("Listando ficheros almacenados a partir de {}", after);
+        // Paginación por nombre: la siguiente página empieza después del último devuelto
+        return ResponseEntity.ok(storageService.list(after, Math.max(1, Math.min(limit, 1000))));
+    }
+
+    @GetMapping("/usage")
+    public ResponseEntity<StorageUsage> usage() {
+        log.info("Obteniendo uso del almacenamiento");
+        return ResponseEntity.ok(storageService.usage());
     }
 
     @GetMapping(value = "{filename:.+}")
-    @ResponseBody
-    public ResponseEntity<Resource> serveFile(@PathVariable String filename, HttpServletRequest request) {
-        Resource file = storageService.loadAsResource(filename);
+    public void serveFile(@PathVariable String filename, @RequestParam(required = false) String size,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // Con ?size= se sirve el tamaño derivado (thumb, card, detail...), generándolo si aún no existe
+        StoredFile file = storageService.loadFileInfo(filename, size);
+
+        response.setHeader(HttpHeaders.ETAG, file.etag());
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, file.lastModified());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, file.provisional() ? CACHE_CONTROL_PROVISIONAL : CACHE_CONTROL);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (notModified(request, file)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        List<HttpRange> ranges = List.of();
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && ifRangeMatches(request, file)) {
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+                // Cada rango debe empezar dentro del fichero y entre todos no pueden pedir más que el fichero entero
+                long total = 0;
+                for (HttpRange range : ranges) {
+                    long start = range.getRangeStart(file.size());
+                    if (start >= file.size()) {
+                        throw new IllegalArgumentException("El rango empieza después del final del fichero");
+                    }
+                    total += range.getRangeEnd(file.size()) - start + 1;
+                }
+                if (ranges.size() > 1 && total > file.size()) {
+                    throw new IllegalArgumentException("Los rangos suman más que el fichero");
+                }
+            } catch (IllegalArgumentException e) {
+                log.info("Rango no válido para el fichero {}: {}", filename, rangeHeader);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + file.size());
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+        }
+
+        boolean head = "HEAD".equals(request.getMethod());
+        if (ranges.isEmpty()) {
+            response.setContentType(file.mediaType().toString());
+            response.setContentLengthLong(file.size());
+            if (!head) {
+                send(file, 0, file.size(), request, response);
+            }
+        } else if (ranges.size() == 1) {
+            long start = ranges.get(0).getRangeStart(file.size());
+            long end = ranges.get(0).getRangeEnd(file.size());
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType(file.mediaType().toString());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + file.size());
+            response.setContentLengthLong(end - start + 1);
+            if (!head) {
+                send(file, start, end - start + 1, request, response);
+            }
+        } else {
+            sendRanges(file, ranges, head, response);
+        }
+    }
+
+    private boolean notModified(HttpServletRequest request, StoredFile file) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return VersionETag.matches(ifNoneMatch, file.etag());
+        }
+        long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        // Las fechas HTTP tienen precisión de segundos
+        return ifModifiedSince >= 0 && file.lastModified() / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private boolean ifRangeMatches(HttpServletRequest request, StoredFile file) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            // If-Range exige comparación fuerte
+            return ifRange.trim().equals(file.etag());
+        }
+        long date = dateHeader(request, HttpHeaders.IF_RANGE);
+        return date >= 0 && file.lastModified() / 1000 == date / 1000;
+    }
 
-        String contentType = null;
+    private long dateHeader(HttpServletRequest request, String name) {
         try {
-            contentType = request.getServletContext().getMimeType(file.getFile().getAbsolutePath());
-        } catch (IOException ex) {
-            log.info("No se puede determinar el tipo de contenido del fichero");
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
         }
+    }
+
+    /**
+     * Un único tramo del fichero: sendfile si el conector lo permite, si no transferTo sobre la salida
+     */
+    private void send(StoredFile file, long start, long length, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.path().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + length);
+            return;
+        }
+        OutputStream out = response.getOutputStream();
+        transfer(file, start, length, Channels.newChannel(out));
+        out.flush();
+    }
 
-        if (contentType == null) {
-            contentType = "application/octet-stream";
+    private void sendRanges(StoredFile file, List<HttpRange> ranges, boolean head, HttpServletResponse response) throws IOException {
+        String boundary = UUID.randomUUID().toString();
+        long size = file.size();
+        // Se calcula antes la longitud total para no tener que enviar con chunked
+        long contentLength = 0;
+        for (HttpRange range : ranges) {
+            long start = range.getRangeStart(size);
+            long end = range.getRangeEnd(size);
+            contentLength += partHeader(boundary, file, start, end).length + (end - start + 1) + 2;
         }
+        byte[] closing = ("--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
 
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(contentType))
-                .body(file);
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (head) {
+            return;
+        }
+        OutputStream out = response.getOutputStream();
+        WritableByteChannel channel = Channels.newChannel(out);
+        for (HttpRange range : ranges) {
+            long start = range.getRangeStart(size);
+            long end = range.getRangeEnd(size);
+            out.write(partHeader(boundary, file, start, end));
+            transfer(file, start, end - start + 1, channel);
+            out.write(new byte[]{'\r', '\n'});
+        }
+        out.write(closing);
+        out.flush();
+    }
+
+    private byte[] partHeader(String boundary, StoredFile file, long start, long end) {
+        return ("--" + boundary + "\r\n"
+                + HttpHeaders.CONTENT_TYPE + ": " + file.mediaType() + "\r\n"
+                + HttpHeaders.CONTENT_RANGE + ": bytes " + start + "-" + end + "/" + file.size() + "\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
     }
-}
 
+    private void transfer(StoredFile file, long start, long length, WritableByteChannel out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.path(), StandardOpenOption.READ)) {
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.example.storage.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.example.storage.dto.StorageUploadResponse;
+import org.example.storage.exceptions.StorageException;
+import org.example.storage.service.StorageService;
+import org.example.storage.service.StorageUpload;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lectura no bloqueante del cuerpo de una subida
+ * El contenedor avisa cuando hay bytes disponibles y se copian al temporal de la subida con un
+ * único buffer, así que ni se ocupa un hilo mientras el cliente envía ni el fichero pasa por memoria.
+ * Si se supera un límite se contesta enseguida y se cierra la conexión para que el cliente deje de enviar
+ */
+@Slf4j
+class StorageUploadReader implements ReadListener, AsyncListener {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ServletInputStream input;
+    private final AsyncContext asyncContext;
+    private final StorageUpload upload;
+    private final StorageService storageService;
+    private final ObjectMapper objectMapper;
+    private final String baseUrl;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final AtomicBoolean done = new AtomicBoolean(false);
+
+    StorageUploadReader(ServletInputStream input, AsyncContext asyncContext, StorageUpload upload,
+                        StorageService storageService, ObjectMapper objectMapper, String baseUrl) {
+        this.input = input;
+        this.asyncContext = asyncContext;
+        this.upload = upload;
+        this.storageService = storageService;
+        this.objectMapper = objectMapper;
+        this.baseUrl = baseUrl;
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException {
+        try {
+            while (!done.get() && input.isReady()) {
+                int read = input.read(buffer);
+                if (read < 0) {
+                    return;
+                }
+                upload.write(buffer, 0, read);
+            }
+        } catch (StorageException e) {
+            fail(status(e), e.getMessage(), true);
+        }
+    }
+
+    @Override
+    public void onAllDataRead() {
+        if (done.get()) {
+            return;
+        }
+        try {
+            String filename = storageService.completeUpload(upload);
+            log.info("Subida de {} terminada: {} bytes", filename, upload.getSize());
+            finish(HttpStatus.CREATED, new StorageUploadResponse(filename, baseUrl + filename, upload.getSize()), baseUrl + filename);
+        } catch (StorageException e) {
+            fail(status(e), e.getMessage(), false);
+        } catch (RuntimeException e) {
+            log.error("Fallo al terminar la subida de {}", upload.getFilename(), e);
+            fail(HttpStatus.INTERNAL_SERVER_ERROR, "Fallo al almacenar fichero " + upload.getFilename(), false);
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        log.warn("Subida de {} interrumpida: {}", upload.getFilename(), t.getMessage());
+        fail(HttpStatus.BAD_REQUEST, "Subida interrumpida", true);
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        fail(HttpStatus.REQUEST_TIMEOUT, "Tiempo de subida agotado", true);
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        onError(event.getThrowable());
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        // Si el contenedor cierra la petición sin pasar por aquí no quedan temporales
+        upload.abort();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+    private void fail(HttpStatus status, String message, boolean closeConnection) {
+        upload.abort();
+        if (closeConnection) {
+            ((HttpServletResponse) asyncContext.getResponse()).setHeader(HttpHeaders.CONNECTION, "close");
+        }
+        finish(status, Map.of("status", status.value(), "error", status.getReasonPhrase(), "message", message), null);
+    }
+
+    private void finish(HttpStatus status, Object body, String location) {
+        if (!done.compareAndSet(false, true)) {
+            return;
+        }
+        HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+        try {
+            if (!response.isCommitted()) {
+                response.setStatus(status.value());
+                response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+                if (location != null) {
+                    response.setHeader(HttpHeaders.LOCATION, location);
+                }
+                objectMapper.writeValue(response.getOutputStream(), body);
+            }
+        } catch (IOException e) {
+            log.warn("No se ha podido enviar la respuesta de la subida de {}: {}", upload.getFilename(), e.getMessage());
+        } finally {
+            asyncContext.complete();
+        }
+    }
+
+    private static HttpStatus status(StorageException e) {
+        ResponseStatus status = AnnotatedElementUtils.findMergedAnnotation(e.getClass(), ResponseStatus.class);
+        return status != null ? status.code() : HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+}
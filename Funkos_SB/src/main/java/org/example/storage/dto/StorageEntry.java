@@ -0,0 +1,13 @@
+package org.example.storage.dto;
+
+/**
+ * Entrada del manifiesto del almacenamiento: un fichero guardado con su tamaño, tipo y SHA-256
+ */
+public record StorageEntry(
+        String name,
+        long size,
+        String mediaType,
+        String digest,
+        long createdAt
+) {
+}
@@ -0,0 +1,11 @@
+package org.example.storage.dto;
+
+/**
+ * Respuesta de una subida terminada: nombre con el que se ha guardado, URL y bytes recibidos
+ */
+public record StorageUploadResponse(
+        String filename,
+        String url,
+        long size
+) {
+}
@@ -0,0 +1,10 @@
+package org.example.storage.dto;
+
+/**
+ * Uso total del almacenamiento: número de ficheros y bytes que ocupan
+ */
+public record StorageUsage(
+        long files,
+        long bytes
+) {
+}
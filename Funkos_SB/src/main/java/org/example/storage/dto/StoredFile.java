@@ -0,0 +1,23 @@
+package org.example.storage.dto;
+
+import org.springframework.http.MediaType;
+
+import java.nio.file.Path;
+
+/**
+ * Metadatos de un fichero almacenado, leídos de los atributos del sistema de ficheros sin abrirlo
+ * El ETag es fuerte: cambia con el tamaño o la fecha de modificación.
+ * provisional indica que se ha pedido un tamaño y se sirve el original porque el derivado no está disponible
+ */
+public record StoredFile(
+        Path path,
+        long size,
+        long lastModified,
+        String etag,
+        MediaType mediaType,
+        boolean provisional
+) {
+    public StoredFile(Path path, long size, long lastModified, String etag, MediaType mediaType) {
+        this(path, size, lastModified, etag, mediaType, false);
+    }
+}
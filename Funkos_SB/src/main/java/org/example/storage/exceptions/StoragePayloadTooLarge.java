@@ -0,0 +1,18 @@
+package org.example.storage.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.io.Serial;
+
+// Nos permite devolver un estado cuando salta la excepción
+@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+public class StoragePayloadTooLarge extends StorageException {
+    // Por si debemos serializar
+    @Serial
+    private static final long serialVersionUID = 43876691117560211L;
+
+    public StoragePayloadTooLarge(String mensaje) {
+        super(mensaje);
+    }
+}
@@ -0,0 +1,169 @@
+package org.example.storage.manifest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.storage.dto.StorageEntry;
+import org.example.storage.dto.StorageUsage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Manifiesto persistente de los ficheros almacenados
+ * En disco es un log de líneas "+ nombre tamaño tipo sha256 fecha" y "- nombre" (separadas por
+ * tabuladores) al que solo se añade; al abrirlo se reproduce sobre un mapa ordenado en memoria
+ * y se reescribe compactado. Los listados son lecturas paginadas de ese mapa y el uso total
+ * son dos contadores, sin recorrer nunca los directorios
+ */
+@Slf4j
+public class StorageManifest {
+    private static final String ALTA = "+";
+    private static final String BAJA = "-";
+
+    private final Path file;
+    private final ConcurrentSkipListMap<String, StorageEntry> entries = new ConcurrentSkipListMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    // El tamaño de un ConcurrentSkipListMap se calcula recorriéndolo, así que se lleva aparte
+    private final AtomicLong count = new AtomicLong();
+    private FileChannel channel;
+    private long lines = 0;
+
+    public StorageManifest(Path file) {
+        this.file = file;
+    }
+
+    public synchronized void open() throws IOException {
+        entries.clear();
+        bytes.set(0);
+        count.set(0);
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                try {
+                    String[] parts = line.split("\t");
+                    if (parts[0].equals(ALTA)) {
+                        apply(new StorageEntry(parts[1], Long.parseLong(parts[2]), parts[3], parts[4], Long.parseLong(parts[5])));
+                    } else if (parts[0].equals(BAJA)) {
+                        unapply(parts[1]);
+                    }
+                } catch (RuntimeException e) {
+                    // Una línea a medias solo puede ser la última escrita antes de una caída
+                    log.warn("Ignorando línea incompleta del manifiesto {}: {}", file, line);
+                }
+            }
+        }
+        compact();
+        log.info("Manifiesto de almacenamiento abierto con {} ficheros y {} bytes", count.get(), bytes.get());
+    }
+
+    public synchronized void put(StorageEntry entry) throws IOException {
+        append(line(entry));
+        apply(entry);
+        compactIfNeeded();
+    }
+
+    public synchronized void remove(String name) throws IOException {
+        if (!entries.containsKey(name)) {
+            return;
+        }
+        append(String.join("\t", BAJA, name));
+        unapply(name);
+        compactIfNeeded();
+    }
+
+    public StorageEntry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Página de entradas ordenadas por nombre a partir de la siguiente a after
+     */
+    public List<StorageEntry> list(String after, int limit) {
+        NavigableMap<String, StorageEntry> tail = after == null ? entries : entries.tailMap(after, false);
+        List<StorageEntry> page = new ArrayList<>(Math.min(limit, 1024));
+        for (StorageEntry entry : tail.values()) {
+            if (page.size() >= limit) {
+                break;
+            }
+            page.add(entry);
+        }
+        return page;
+    }
+
+    public StorageUsage usage() {
+        return new StorageUsage(count.get(), bytes.get());
+    }
+
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void apply(StorageEntry entry) {
+        StorageEntry previous = entries.put(entry.name(), entry);
+        bytes.addAndGet(entry.size() - (previous != null ? previous.size() : 0));
+        if (previous == null) {
+            count.incrementAndGet();
+        }
+    }
+
+    private void unapply(String name) {
+        StorageEntry previous = entries.remove(name);
+        if (previous != null) {
+            bytes.addAndGet(-previous.size());
+            count.decrementAndGet();
+        }
+    }
+
+    private void append(String line) throws IOException {
+        if (channel == null) {
+            throw new IllegalStateException("El manifiesto de almacenamiento no está abierto");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        lines++;
+    }
+
+    private void compactIfNeeded() throws IOException {
+        // Con muchas bajas y reescrituras el log crece más que el manifiesto
+        if (lines > 2L * count.get() + 1024) {
+            compact();
+        }
+    }
+
+    private static String line(StorageEntry entry) {
+        return String.join("\t", ALTA, entry.name(), Long.toString(entry.size()), entry.mediaType(),
+                entry.digest(), Long.toString(entry.createdAt()));
+    }
+
+    /**
+     * Reescribe el log con una línea por fichero vivo y lo sustituye de forma atómica
+     */
+    private void compact() throws IOException {
+        close();
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        StringBuilder snapshot = new StringBuilder();
+        for (StorageEntry entry : entries.values()) {
+            snapshot.append(line(entry)).append('\n');
+        }
+        Files.writeString(tmp, snapshot, StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        lines = count.get();
+    }
+}
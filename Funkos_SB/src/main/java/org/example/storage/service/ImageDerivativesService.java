@@ -0,0 +1,11 @@
+package org.example.storage.service;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+public interface ImageDerivativesService {
+    Set<String> sizes();
+    void generateAsync(Path original);
+    Path resolve(Path original, String size);
+    void delete(Path original);
+}
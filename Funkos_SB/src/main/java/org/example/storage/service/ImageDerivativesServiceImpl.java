@@ -0,0 +1,235 @@
+package org.example.storage.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.storage.exceptions.StorageBadRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tamaños derivados de las imágenes almacenadas (miniatura, tarjeta, detalle...)
+ * Se generan en segundo plano al guardar cada imagen, en hilos virtuales limitados por un
+ * semáforo a upload.derivatives.workers a la vez, y se escriben junto al original en
+ * .derivatives/<tamaño>/. Si se pide un tamaño que todavía no existe se genera en ese momento;
+ * varias peticiones del mismo tamaño esperan a una única generación, como mucho upload.derivatives.wait-ms.
+ * Lo que ImageIO no sabe leer o escribir, o pasa de upload.derivatives.max-pixels (se mira la cabecera
+ * antes de decodificar, así que una imagen enorme nunca llega a memoria), se sirve con el original
+ */
+@Service
+@Slf4j
+public class ImageDerivativesServiceImpl implements ImageDerivativesService {
+    static final String DERIVATIVES_DIR = ".derivatives";
+
+    private final Map<String, Integer> sizes;
+    private final Semaphore workers;
+    private final long maxPixels;
+    private final long waitMs;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<Path, CompletableFuture<Path>> enCurso = new ConcurrentHashMap<>();
+    private final Set<Path> sinDerivados = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public ImageDerivativesServiceImpl(@Value("${upload.derivatives.sizes:thumb=150,card=400,detail=1000}") String sizes,
+                                       @Value("${upload.derivatives.workers:4}") int workers,
+                                       @Value("${upload.derivatives.max-pixels:40000000}") long maxPixels,
+                                       @Value("${upload.derivatives.wait-ms:5000}") long waitMs) {
+        this.sizes = parseSizes(sizes);
+        this.workers = new Semaphore(workers);
+        this.maxPixels = maxPixels;
+        this.waitMs = waitMs;
+    }
+
+    static Map<String, Integer> parseSizes(String sizes) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (String size : StringUtils.commaDelimitedListToStringArray(sizes)) {
+            String[] parts = size.trim().split("=");
+            if (parts.length == 2) {
+                result.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public Set<String> sizes() {
+        return sizes.keySet();
+    }
+
+    @Override
+    public void generateAsync(Path original) {
+        if (!ImageIO.getImageWritersBySuffix(extension(original)).hasNext()) {
+            return;
+        }
+        sizes.keySet().forEach(size -> generate(original, size));
+    }
+
+    @Override
+    public Path resolve(Path original, String size) {
+        if (!sizes.containsKey(size)) {
+            throw new StorageBadRequest("Tamaño de imagen no válido: " + size + ". Tamaños disponibles: " + sizes.keySet());
+        }
+        Path derivative = derivativePath(original, size);
+        if (Files.exists(derivative)) {
+            return derivative;
+        }
+        if (sinDerivados.contains(original)) {
+            return original;
+        }
+        try {
+            return generate(original, size).get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return original;
+        } catch (TimeoutException e) {
+            // La generación sigue en segundo plano; mientras tanto se sirve el original
+            log.info("El tamaño {} de {} no está listo, se sirve el original", size, original.getFileName());
+            return original;
+        } catch (ExecutionException e) {
+            return original;
+        }
+    }
+
+    @Override
+    public void delete(Path original) {
+        sinDerivados.remove(original);
+        for (String size : sizes.keySet()) {
+            try {
+                Files.deleteIfExists(derivativePath(original, size));
+            } catch (IOException e) {
+                log.warn("No se ha podido eliminar el tamaño {} de {}: {}", size, original, e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    static Path derivativePath(Path original, String size) {
+        return original.resolveSibling(DERIVATIVES_DIR).resolve(size).resolve(original.getFileName());
+    }
+
+    private CompletableFuture<Path> generate(Path original, String size) {
+        Path derivative = derivativePath(original, size);
+        CompletableFuture<Path> nuevo = new CompletableFuture<>();
+        CompletableFuture<Path> existente = enCurso.putIfAbsent(derivative, nuevo);
+        if (existente != null) {
+            return existente;
+        }
+        executor.execute(() -> {
+            try {
+                workers.acquire();
+                try {
+                    nuevo.complete(write(original, size, derivative));
+                } finally {
+                    workers.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                nuevo.complete(original);
+            } catch (IOException | RuntimeException e) {
+                log.warn("No se ha podido generar el tamaño {} de {}: {}", size, original, e.getMessage());
+                nuevo.completeExceptionally(e);
+            } finally {
+                enCurso.remove(derivative, nuevo);
+            }
+        });
+        return nuevo;
+    }
+
+    private Path write(Path original, String size, Path derivative) throws IOException {
+        if (Files.exists(derivative)) {
+            return derivative;
+        }
+        String format = extension(original);
+        BufferedImage image = read(original);
+        if (image == null || !ImageIO.getImageWritersBySuffix(format).hasNext()) {
+            // No es una imagen que ImageIO sepa tratar: se servirá siempre el original
+            sinDerivados.add(original);
+            return original;
+        }
+        // Solo PNG y GIF conservan la transparencia; el resto de escritores no aceptan canal alfa
+        BufferedImage scaled = scale(image, sizes.get(size), format.equals("png") || format.equals("gif"));
+        Files.createDirectories(derivative.getParent());
+        // Se escribe a un temporal y se mueve, así nunca se sirve un fichero a medias
+        Path tmp = derivative.resolveSibling(".tmp-" + UUID.randomUUID());
+        try {
+            if (!ImageIO.write(scaled, format, tmp.toFile())) {
+                sinDerivados.add(original);
+                return original;
+            }
+            Files.move(tmp, derivative, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        log.info("Generado tamaño {} de {}", size, original.getFileName());
+        return derivative;
+    }
+
+    /**
+     * Decodifica la imagen solo si sus dimensiones no pasan del límite de píxeles; null si no se puede tratar
+     */
+    private BufferedImage read(Path original) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    log.warn("La imagen {} tiene {} píxeles, más del máximo de {}: no se generan tamaños", original.getFileName(), pixels, maxPixels);
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Escala para que quepa en un cuadrado de max píxeles manteniendo la proporción; nunca amplía
+     */
+    static BufferedImage scale(BufferedImage image, int max, boolean alpha) {
+        double factor = Math.min(1.0, (double) max / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+        BufferedImage scaled = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private static String extension(Path path) {
+        String extension = StringUtils.getFilenameExtension(path.getFileName().toString());
+        return extension != null ? extension.toLowerCase() : "";
+    }
+}
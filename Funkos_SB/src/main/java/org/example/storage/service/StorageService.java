@@ -1,17 +1,27 @@
 package org.example.storage.service;
 
+import org.example.storage.dto.StorageEntry;
+import org.example.storage.dto.StorageUsage;
+import org.example.storage.dto.StoredFile;
 import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.nio.file.Path;
+import java.util.List;
 import java.util.stream.Stream;
 
 public interface StorageService {
     void init();
     String store(MultipartFile file);
+    StorageUpload openUpload(String filename, String contentType, long contentLength);
+    String completeUpload(StorageUpload upload);
     Stream<Path> loadAll();
+    List<StorageEntry> list(String after, int limit);
+    StorageUsage usage();
     Path load(String filename);
     Resource loadAsResource(String filename);
+    StoredFile loadFileInfo(String filename);
+    StoredFile loadFileInfo(String filename, String size);
     void delete(String fileName);
     void deleteAll();
     String getUrl(String filename);
@@ -2,12 +2,21 @@ package org.example.storage.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.example.storage.controller.StorageController;
+import org.example.storage.dto.StorageEntry;
+import org.example.storage.dto.StorageUsage;
+import org.example.storage.dto.StoredFile;
 import org.example.storage.exceptions.StorageBadRequest;
 import org.example.storage.exceptions.StorageInternal;
 import org.example.storage.exceptions.StorageNotFound;
+import org.example.storage.exceptions.StoragePayloadTooLarge;
+import org.example.storage.exceptions.StorageUnsupportedType;
+import org.example.storage.manifest.StorageManifest;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.util.FileSystemUtils;
 import org.springframework.util.StringUtils;
@@ -16,21 +25,74 @@ import org.springframework.web.servlet.mvc.method.annotation.MvcUriComponentsBui
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
+/**
+ * Almacenamiento de ficheros en disco
+ * En modo direccionado por contenido (upload.content-addressed) cada fichero se guarda con el
+ * SHA-256 de sus bytes como nombre, calculado mientras se escribe. Subir la misma imagen otra vez
+ * solo suma una referencia, y delete borra los bytes cuando se va la última. Los contadores se
+ * guardan en .refs dentro del almacenamiento y se cargan en init.
+ * Cada imagen guardada encarga sus tamaños derivados, que se piden con loadFileInfo(nombre, tamaño).
+ * Con upload.sharded los ficheros se reparten en dos niveles de subdirectorios según el hash del
+ * nombre (ab/cd/nombre) y un manifiesto persistente guarda nombre, tamaño, tipo y SHA-256 de cada
+ * uno, así que listar y calcular el uso no recorre el disco
+ */
 @Service
 @Slf4j
 public class StorageServiceImpl implements StorageService{
+    private static final String REFS_DIR = ".refs";
+    private static final String TMP_PREFIX = ".tmp-";
+    private static final String MANIFEST_FILE = ".manifest";
+    private static final long DEFAULT_MAX_SIZE = 10485760;
+    private static final String DEFAULT_ALLOWED_TYPES = "image/png,image/jpeg,image/gif,image/webp";
 
     private  Path rootLocation;
+    private final boolean contentAddressed;
+    private final boolean sharded;
+    private final long maxSize;
+    private final List<MediaType> allowedTypes;
+    private final ImageDerivativesService derivatives;
+    private StorageManifest manifest;
+    private final Map<String, Integer> refCounts = new ConcurrentHashMap<>();
 
 
-    public StorageServiceImpl(@Value("${upload.root-location}") String path) {
+    public StorageServiceImpl(String path) {
+        this(path, false, false, DEFAULT_MAX_SIZE, DEFAULT_ALLOWED_TYPES, null);
+    }
+
+    public StorageServiceImpl(String path, boolean contentAddressed) {
+        this(path, contentAddressed, false, DEFAULT_MAX_SIZE, DEFAULT_ALLOWED_TYPES, null);
+    }
+
+    @Autowired
+    public StorageServiceImpl(@Value("${upload.root-location}") String path,
+                              @Value("${upload.content-addressed:false}") boolean contentAddressed,
+                              @Value("${upload.sharded:false}") boolean sharded,
+                              @Value("${upload.max-size-bytes:" + DEFAULT_MAX_SIZE + "}") long maxSize,
+                              @Value("${upload.allowed-types:" + DEFAULT_ALLOWED_TYPES + "}") String allowedTypes,
+                              ImageDerivativesService derivatives) {
         this.rootLocation = Paths.get(path);
+        this.contentAddressed = contentAddressed;
+        this.sharded = sharded;
+        this.maxSize = maxSize;
+        this.allowedTypes = MediaType.parseMediaTypes(allowedTypes);
+        this.derivatives = derivatives;
     }
 
 
@@ -39,17 +101,37 @@ public class StorageServiceImpl implements StorageService{
         log.info("Inicializando almacenamiento");
         try {
             Files.createDirectories(rootLocation);
+            if (contentAddressed) {
+                loadRefCounts();
+            }
+            if (sharded) {
+                manifest = new StorageManifest(rootLocation.resolve(MANIFEST_FILE));
+                manifest.open();
+            }
         } catch (IOException e) {
             throw new StorageInternal("No se puede inicializar el almacenamiento " + e);
         }
     }
 
+    private void loadRefCounts() throws IOException {
+        Path refs = Files.createDirectories(rootLocation.resolve(REFS_DIR));
+        refCounts.clear();
+        try (Stream<Path> files = Files.list(refs)) {
+            files.forEach(file -> {
+                try {
+                    refCounts.put(file.getFileName().toString(), Integer.parseInt(Files.readString(file).trim()));
+                } catch (IOException | NumberFormatException e) {
+                    log.warn("Contador de referencias no válido en {}: {}", file, e.getMessage());
+                }
+            });
+        }
+        log.info("Cargados {} ficheros direccionados por contenido", refCounts.size());
+    }
+
     @Override
     public String store(MultipartFile file) {
         String filename = StringUtils.cleanPath(file.getOriginalFilename());
-        String extension = StringUtils.getFilenameExtension(filename);
-        String justFilename = filename.replace("." + extension, "");
-        String storedFilename = "yahyaSpring"+System.currentTimeMillis() + "_" + justFilename.replaceAll("\\s+", "") + "." + extension;
+        String storedFilename = storedFilename(filename);
 
         try {
             if (file.isEmpty()) {
@@ -61,10 +143,20 @@ public class StorageServiceImpl implements StorageService{
                                 + filename);
             }
 
+            if (contentAddressed || sharded) {
+                Path tmp = rootLocation.resolve(TMP_PREFIX + UUID.randomUUID());
+                try {
+                    return place(tmp, writeTemp(file, tmp), filename);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+
             try (InputStream inputStream = file.getInputStream()) {
                 log.info("Almacenando fichero " + filename + " como " + storedFilename);
                 Files.copy(inputStream, this.rootLocation.resolve(storedFilename),
                         StandardCopyOption.REPLACE_EXISTING);
+                generateDerivatives(storedFilename);
                 return storedFilename;
             }
 
@@ -73,27 +165,230 @@ public class StorageServiceImpl implements StorageService{
         }
     }
 
+    private static String storedFilename(String filename) {
+        String extension = StringUtils.getFilenameExtension(filename);
+        String justFilename = filename.replace("." + extension, "");
+        return "yahyaSpring"+System.currentTimeMillis() + "_" + justFilename.replaceAll("\\s+", "") + "." + extension;
+    }
+
+    @Override
+    public StorageUpload openUpload(String filename, String contentType, long contentLength) {
+        String cleanFilename = StringUtils.cleanPath(filename);
+        if (cleanFilename.contains("..") || cleanFilename.contains("/")) {
+            throw new StorageBadRequest(
+                    "No se puede almacenar un fichero con una ruta relativa fuera del directorio actual " + filename);
+        }
+        MediaType mediaType;
+        try {
+            mediaType = MediaType.parseMediaType(contentType);
+        } catch (RuntimeException e) {
+            throw new StorageUnsupportedType("Tipo de contenido no válido: " + contentType);
+        }
+        if (allowedTypes.stream().noneMatch(type -> type.equalsTypeAndSubtype(mediaType))) {
+            throw new StorageUnsupportedType("Tipo de fichero no admitido " + mediaType + ". Tipos admitidos: " + allowedTypes);
+        }
+        // Si el cliente anuncia el tamaño se rechaza antes de leer un solo byte
+        if (contentLength > maxSize) {
+            throw new StoragePayloadTooLarge("El fichero " + filename + " supera el tamaño máximo de " + maxSize + " bytes");
+        }
+        try {
+            Files.createDirectories(rootLocation);
+            return new StorageUpload(cleanFilename, mediaType, maxSize, rootLocation.resolve(TMP_PREFIX + UUID.randomUUID()));
+        } catch (IOException e) {
+            throw new StorageInternal("Fallo al almacenar fichero " + filename + " " + e);
+        }
+    }
+
+    @Override
+    public String completeUpload(StorageUpload upload) {
+        try {
+            String digest = upload.finish();
+            return place(upload.getTmp(), digest, upload.getFilename());
+        } catch (IOException e) {
+            throw new StorageInternal("Fallo al almacenar fichero " + upload.getFilename() + " " + e);
+        } finally {
+            upload.abort();
+        }
+    }
+
+    /**
+     * Lleva a su sitio un fichero ya escrito en un temporal junto con su SHA-256
+     */
+    private String place(Path tmp, String digest, String filename) throws IOException {
+        if (contentAddressed) {
+            String extension = StringUtils.getFilenameExtension(filename);
+            return storeByContent(tmp, digest, filename, extension);
+        }
+        return storeNamed(tmp, digest, filename, storedFilename(filename));
+    }
+
+    /**
+     * Mueve el temporal a su nombre definitivo, o lo descarta si esos bytes ya estaban guardados
+     */
+    private String storeByContent(Path tmp, String digest, String filename, String extension) throws IOException {
+        try {
+            String storedFilename = digest + (extension != null ? "." + extension.toLowerCase() : "");
+            int refs = addReference(storedFilename, tmp, digest);
+            log.info("Almacenando fichero " + filename + " como " + storedFilename + " (" + refs + " referencias)");
+            generateDerivatives(storedFilename);
+            return storedFilename;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private String storeNamed(Path tmp, String digest, String filename, String storedFilename) throws IOException {
+        Path target = locate(storedFilename);
+        Files.createDirectories(target.getParent());
+        StorageEntry entry = entry(storedFilename, Files.size(tmp), digest);
+        log.info("Almacenando fichero " + filename + " como " + storedFilename);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (manifest != null) {
+            manifest.put(entry);
+        }
+        generateDerivatives(storedFilename);
+        return storedFilename;
+    }
+
+    /**
+     * Copia la subida a un temporal y devuelve el SHA-256 de sus bytes, calculado mientras se escribe
+     */
+    private String writeTemp(MultipartFile file, Path tmp) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream inputStream = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(inputStream, tmp);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private StorageEntry entry(String storedFilename, long size, String digest) {
+        String mediaType = MediaTypeFactory.getMediaType(storedFilename).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+        return new StorageEntry(storedFilename, size, mediaType, digest, System.currentTimeMillis());
+    }
+
+    /**
+     * Ruta de un fichero: en el raíz, o repartido en ab/cd/ según el SHA-256 del nombre para que
+     * ningún directorio crezca con cientos de miles de entradas
+     */
+    private Path locate(String filename) {
+        if (!sharded) {
+            return rootLocation.resolve(filename);
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(filename.getBytes(StandardCharsets.UTF_8));
+            HexFormat hex = HexFormat.of();
+            return rootLocation.resolve(hex.toHexDigits(hash[0])).resolve(hex.toHexDigits(hash[1])).resolve(filename);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void generateDerivatives(String storedFilename) {
+        if (derivatives != null) {
+            derivatives.generateAsync(locate(storedFilename));
+        }
+    }
+
+    private int addReference(String storedFilename, Path tmp, String digest) {
+        // compute bloquea la clave: altas y bajas del mismo contenido no se pisan
+        return refCounts.compute(storedFilename, (name, refs) -> {
+            try {
+                Path target = locate(name);
+                if (refs == null && !Files.exists(target)) {
+                    Files.createDirectories(target.getParent());
+                    long size = Files.size(tmp);
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                    if (manifest != null) {
+                        manifest.put(entry(name, size, digest));
+                    }
+                }
+                int updated = refs == null ? 1 : refs + 1;
+                writeRefCount(name, updated);
+                return updated;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void writeRefCount(String storedFilename, int refs) throws IOException {
+        Path file = rootLocation.resolve(REFS_DIR).resolve(storedFilename);
+        if (refs <= 0) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(TMP_PREFIX + storedFilename);
+        Files.writeString(tmp, Integer.toString(refs));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
     @Override
     public Stream<Path> loadAll() {
         log.info("Cargando todos los ficheros almacenados");
+        if (manifest != null) {
+            return manifest.list(null, Integer.MAX_VALUE).stream().map(entry -> Paths.get(entry.name()));
+        }
         try {
             return Files.walk(this.rootLocation, 1)
                     .filter(path -> !path.equals(this.rootLocation))
+                    // Ni los contadores ni los temporales a medio escribir son ficheros almacenados
+                    .filter(path -> !path.getFileName().toString().startsWith("."))
                     .map(this.rootLocation::relativize);
         } catch (IOException e) {
             throw new StorageInternal("Fallo al leer ficheros almacenados " + e);
         }
     }
 
+    @Override
+    public List<StorageEntry> list(String after, int limit) {
+        if (manifest != null) {
+            return manifest.list(after, limit);
+        }
+        // Sin manifiesto no queda otra que recorrer el directorio
+        try (Stream<Path> files = loadAll()) {
+            return files.map(Path::toString)
+                    .filter(name -> after == null || name.compareTo(after) > 0)
+                    .sorted()
+                    .limit(limit)
+                    .map(name -> {
+                        Path path = rootLocation.resolve(name);
+                        try {
+                            return new StorageEntry(name, Files.size(path),
+                                    MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM).toString(),
+                                    null, Files.getLastModifiedTime(path).toMillis());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .toList();
+        } catch (UncheckedIOException e) {
+            throw new StorageInternal("Fallo al leer ficheros almacenados " + e.getCause());
+        }
+    }
+
+    @Override
+    public StorageUsage usage() {
+        if (manifest != null) {
+            return manifest.usage();
+        }
+        var entries = list(null, Integer.MAX_VALUE);
+        return new StorageUsage(entries.size(), entries.stream().mapToLong(StorageEntry::size).sum());
+    }
+
     @Override
     public Path load(String filename) {
         log.info("Cargando fichero " + filename);
-        return rootLocation.resolve(filename);
+        return locate(filename);
     }
 
     @Override
     public Resource loadAsResource(String filename) {
-        Path filePath = rootLocation.resolve(filename);
+        Path filePath = locate(filename);
         if (!Files.exists(filePath)) {
             throw new StorageNotFound("No se puede leer fichero: " + filename);
         }
@@ -105,6 +400,42 @@ public class StorageServiceImpl implements StorageService{
         }
     }
 
+    @Override
+    public StoredFile loadFileInfo(String filename) {
+        return loadFileInfo(filename, null);
+    }
+
+    @Override
+    public StoredFile loadFileInfo(String filename, String size) {
+        Path original = locate(filename).normalize();
+        if (!original.startsWith(rootLocation.normalize())) {
+            throw new StorageBadRequest("No se puede leer un fichero fuera del directorio de almacenamiento " + filename);
+        }
+        if (size != null && !Files.isRegularFile(original)) {
+            throw new StorageNotFound("No se puede leer fichero: " + filename);
+        }
+        // Sin servicio de derivados, o si la imagen no admite tamaños, se sirve el original
+        Path filePath = size != null && derivatives != null ? derivatives.resolve(original, size) : original;
+        String variant = filePath.equals(original) ? "" : "-" + size;
+        try {
+            // Solo atributos: ni se abre el fichero ni se pregunta al contenedor por el tipo
+            BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                throw new StorageNotFound("No se puede leer fichero: " + filename);
+            }
+            long length = attributes.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            // Con direccionamiento por contenido el propio nombre ya identifica los bytes
+            String etag = refCounts.containsKey(original.getFileName().toString())
+                    ? "\"" + StringUtils.stripFilenameExtension(original.getFileName().toString()) + variant + "\""
+                    : "\"" + Long.toString(length, 36) + "-" + Long.toString(lastModified, 36) + "\"";
+            MediaType mediaType = MediaTypeFactory.getMediaType(filename).orElse(MediaType.APPLICATION_OCTET_STREAM);
+            return new StoredFile(filePath, length, lastModified, etag, mediaType, size != null && variant.isEmpty());
+        } catch (IOException e) {
+            throw new StorageNotFound("No se puede leer fichero: " + filename);
+        }
+    }
+
     @Override
     public void delete(String filename) {
         String justFilename = StringUtils.getFilename(filename);
@@ -113,24 +444,71 @@ public class StorageServiceImpl implements StorageService{
             throw new StorageNotFound("No se puede eliminar el fichero " + filename + " porque no existe");
         }
         try {
+            if (contentAddressed && refCounts.containsKey(justFilename)) {
+                removeReference(justFilename);
+                return;
+            }
             log.info("Eliminando fichero " + filename);
             Files.deleteIfExists(file);
+            if (manifest != null) {
+                manifest.remove(justFilename);
+            }
+            deleteDerivatives(file);
+        } catch (UncheckedIOException e) {
+            throw new StorageInternal("No se puede eliminar el fichero " + filename + " " + e.getCause());
         } catch (IOException e) {
             throw new StorageInternal("No se puede eliminar el fichero " + filename + " " + e);
         }
     }
 
+    private void removeReference(String storedFilename) {
+        refCounts.computeIfPresent(storedFilename, (name, refs) -> {
+            try {
+                int updated = refs - 1;
+                writeRefCount(name, updated);
+                if (updated > 0) {
+                    log.info("Eliminando referencia al fichero " + name + " (quedan " + updated + ")");
+                    return updated;
+                }
+                log.info("Eliminando fichero " + name + " sin más referencias");
+                Files.deleteIfExists(locate(name));
+                if (manifest != null) {
+                    manifest.remove(name);
+                }
+                deleteDerivatives(locate(name));
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void deleteDerivatives(Path original) {
+        if (derivatives != null) {
+            derivatives.delete(original);
+        }
+    }
+
     @Override
     public void deleteAll() {
         log.info("Eliminando todos los ficheros almacenados");
+        if (manifest != null) {
+            try {
+                manifest.close();
+            } catch (IOException e) {
+                log.warn("No se ha podido cerrar el manifiesto de almacenamiento: {}", e.getMessage());
+            }
+            manifest = null;
+        }
         FileSystemUtils.deleteRecursively(rootLocation.toFile());
+        refCounts.clear();
     }
 
     @Override
     public String getUrl(String filename) {
         log.info("Obteniendo URL del fichero " + filename);
         return MvcUriComponentsBuilder
-                .fromMethodName(StorageController.class, "serveFile", filename, null)
+                .fromMethodName(StorageController.class, "serveFile", filename, null, null, null)
                 .path("/files/") // Agregar el path /files/ de manera explícita
                 .build().toUriString();
     }
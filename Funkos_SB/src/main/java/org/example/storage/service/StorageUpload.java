@@ -0,0 +1,146 @@
+package org.example.storage.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.example.storage.exceptions.StorageBadRequest;
+import org.example.storage.exceptions.StoragePayloadTooLarge;
+import org.example.storage.exceptions.StorageUnsupportedType;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Subida en curso escrita directamente a un temporal del almacenamiento
+ * Recibe los bytes según llegan, calcula el SHA-256 sobre la marcha y corta en cuanto se pasa
+ * del tamaño máximo o las primeras firmas del fichero no corresponden al tipo declarado,
+ * sin guardar en memoria más que la cabecera para comprobarlo
+ */
+@Slf4j
+public class StorageUpload {
+    private static final int HEAD_LENGTH = 12;
+
+    @Getter
+    private final String filename;
+    @Getter
+    private final MediaType mediaType;
+    @Getter
+    private final Path tmp;
+    private final long maxSize;
+    private final FileChannel channel;
+    private final MessageDigest digest;
+    private final byte[] head = new byte[HEAD_LENGTH];
+    private int headLength = 0;
+    private boolean typeChecked = false;
+    @Getter
+    private long size = 0;
+
+    public StorageUpload(String filename, MediaType mediaType, long maxSize, Path tmp) throws IOException {
+        this.filename = filename;
+        this.mediaType = mediaType;
+        this.maxSize = maxSize;
+        this.tmp = tmp;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        this.channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        size += length;
+        if (size > maxSize) {
+            throw new StoragePayloadTooLarge("El fichero " + filename + " supera el tamaño máximo de " + maxSize + " bytes");
+        }
+        if (!typeChecked) {
+            int copy = Math.min(length, HEAD_LENGTH - headLength);
+            System.arraycopy(buffer, offset, head, headLength, copy);
+            headLength += copy;
+            if (headLength == HEAD_LENGTH) {
+                checkType();
+            }
+        }
+        digest.update(buffer, offset, length);
+        ByteBuffer bytes = ByteBuffer.wrap(buffer, offset, length);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    /**
+     * Cierra el temporal y devuelve el SHA-256 de lo recibido
+     */
+    public String finish() throws IOException {
+        if (size == 0) {
+            throw new StorageBadRequest("Fichero vacío " + filename);
+        }
+        if (!typeChecked) {
+            checkType();
+        }
+        channel.close();
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Descarta la subida; se puede llamar siempre, también después de terminarla
+     */
+    public void abort() {
+        try {
+            channel.close();
+            Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+            log.warn("No se ha podido borrar la subida temporal {}: {}", tmp, e.getMessage());
+        }
+    }
+
+    private void checkType() {
+        typeChecked = true;
+        MediaType sniffed = sniff(Arrays.copyOf(head, headLength));
+        // image/jpg no es oficial pero hay clientes que lo envían
+        MediaType declared = mediaType.getSubtype().equals("jpg") ? MediaType.IMAGE_JPEG : mediaType;
+        if (sniffed == null || !sniffed.equalsTypeAndSubtype(declared)) {
+            throw new StorageUnsupportedType("El contenido de " + filename + " no corresponde al tipo " + mediaType);
+        }
+    }
+
+    /**
+     * Tipo de imagen según sus primeros bytes, o null si no es ninguno de los conocidos
+     */
+    static MediaType sniff(byte[] head) {
+        if (startsWith(head, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return MediaType.IMAGE_PNG;
+        }
+        if (startsWith(head, 0xFF, 0xD8, 0xFF)) {
+            return MediaType.IMAGE_JPEG;
+        }
+        if (startsWith(head, 'G', 'I', 'F', '8')) {
+            return MediaType.IMAGE_GIF;
+        }
+        if (startsWith(head, 'R', 'I', 'F', 'F') && head.length >= 12
+                && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') {
+            return MediaType.parseMediaType("image/webp");
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] head, int... signature) {
+        if (head.length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((head[i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.utils.etag;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * ETag fuerte a partir del id y del updatedAt de la entidad
+ * Se compara antes de serializar, y si es posible antes de cargar la fila,
+ * así un cliente que repite la petición recibe un 304 vacío.
+ * Si la respuesta lleva otras entidades la versión es el updatedAt más reciente de todas, y si lleva
+ * una colección también cuenta sus elementos para notar los que desaparecen
+ */
+public final class VersionETag {
+    private VersionETag() {
+    }
+
+    public static String of(Long id, LocalDateTime updatedAt) {
+        if (id == null || updatedAt == null) {
+            return null;
+        }
+        // La base de datos guarda menos precisión que LocalDateTime: se trunca a milisegundos
+        long version = updatedAt.truncatedTo(ChronoUnit.MILLIS).toInstant(ZoneOffset.UTC).toEpochMilli();
+        return "\"" + id + "-" + Long.toString(version, 36) + "\"";
+    }
+
+    public static String of(Long id, LocalDateTime updatedAt, long elements) {
+        String etag = of(id, updatedAt);
+        return etag == null ? null : etag.substring(0, etag.length() - 1) + "-" + elements + "\"";
+    }
+
+    /**
+     * El más reciente de los updatedAt, ignorando los nulos
+     */
+    public static LocalDateTime latest(LocalDateTime... updatedAts) {
+        LocalDateTime latest = null;
+        for (LocalDateTime updatedAt : updatedAts) {
+            if (updatedAt != null && (latest == null || updatedAt.isAfter(latest))) {
+                latest = updatedAt;
+            }
+        }
+        return latest;
+    }
+
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            // En If-None-Match la comparación es débil
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    public static <T> ResponseEntity<T> ok(T body, String etag) {
+        var builder = ResponseEntity.ok();
+        if (etag != null) {
+            builder.eTag(etag);
+        }
+        return builder.body(body);
+    }
+}
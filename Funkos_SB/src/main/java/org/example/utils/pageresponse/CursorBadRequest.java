@@ -0,0 +1,15 @@
+package org.example.utils.pageresponse;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Excepción de cursor de paginación no válido
+ * Status 400
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class CursorBadRequest extends RuntimeException {
+    public CursorBadRequest(String cursor) {
+        super("Cursor de paginación no válido: " + cursor);
+    }
+}
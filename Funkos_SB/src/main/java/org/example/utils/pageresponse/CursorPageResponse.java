@@ -0,0 +1,38 @@
+package org.example.utils.pageresponse;
+
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Variante ligera de PageResponse para la paginación por keyset (seek)
+ * No lleva totales: no se hace COUNT, solo se indica el cursor de la siguiente página
+ */
+public record CursorPageResponse<T>(
+        List<T> content,
+        int pageSize,
+        int totalPageElements,
+        boolean empty,
+        boolean last,
+        String next,
+        String sortBy,
+        String direction
+) {
+    public static <T> CursorPageResponse<T> of(Slice<T> slice, Function<T, KeysetCursor> cursorOf, String sortBy, String direction) {
+        List<T> content = slice.getContent();
+        String next = slice.hasNext() && !content.isEmpty()
+                ? cursorOf.apply(content.get(content.size() - 1)).encode()
+                : null;
+        return new CursorPageResponse<>(
+                content,
+                slice.getSize(),
+                slice.getNumberOfElements(),
+                slice.isEmpty(),
+                !slice.hasNext(),
+                next,
+                sortBy,
+                direction
+        );
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.utils.pageresponse;
+
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Cursor opaco de la paginación por keyset: valor de la columna de ordenación
+ * y id de la última fila devuelta. La siguiente página se busca con
+ * (columna, id) > (valor, id) en lugar de con un OFFSET, así que cuesta lo mismo
+ * la página 1 que la 10.000
+ */
+public record KeysetCursor(String value, Long id) {
+    private static final String ID = "id";
+
+    public static KeysetCursor of(Object entity, String sortBy, Long id) {
+        Object value = new BeanWrapperImpl(entity).getPropertyValue(sortBy);
+        return new KeysetCursor(value != null ? value.toString() : null, id);
+    }
+
+    public static KeysetCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", 2);
+            return new KeysetCursor(parts.length > 1 ? parts[1] : null, Long.valueOf(parts[0]));
+        } catch (IllegalArgumentException e) {
+            throw new CursorBadRequest(token);
+        }
+    }
+
+    public String encode() {
+        String raw = value == null ? String.valueOf(id) : id + ":" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Orden estable para el seek: la columna pedida y el id como desempate
+     */
+    public static Sort sort(String sortBy, Sort.Direction direction) {
+        return sortBy.equals(ID) ? Sort.by(direction, ID) : Sort.by(direction, sortBy, ID);
+    }
+
+    /**
+     * Filas posteriores al cursor según el orden de {@link #sort(String, Sort.Direction)}
+     * Los nulos se tratan como en H2: primero en orden ascendente y al final en descendente
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public <T> Specification<T> after(String sortBy, Sort.Direction direction) {
+        return (root, query, criteriaBuilder) -> {
+            boolean asc = direction.isAscending();
+            Path<Long> idPath = root.get(ID);
+            Predicate idAfter = asc ? criteriaBuilder.greaterThan(idPath, id) : criteriaBuilder.lessThan(idPath, id);
+            if (sortBy.equals(ID)) {
+                return idAfter;
+            }
+            Path<Comparable> path = root.get(sortBy);
+            if (value == null) {
+                Predicate sameNull = criteriaBuilder.and(criteriaBuilder.isNull(path), idAfter);
+                return asc ? criteriaBuilder.or(sameNull, criteriaBuilder.isNotNull(path)) : sameNull;
+            }
+            Comparable typed = convert(value, path.getJavaType());
+            Predicate valueAfter = asc ? criteriaBuilder.greaterThan(path, typed) : criteriaBuilder.lessThan(path, typed);
+            Predicate sameValue = criteriaBuilder.and(criteriaBuilder.equal(path, typed), idAfter);
+            Predicate after = criteriaBuilder.or(valueAfter, sameValue);
+            return asc ? after : criteriaBuilder.or(after, criteriaBuilder.isNull(path));
+        };
+    }
+
+    private Comparable<?> convert(String raw, Class<?> type) {
+        try {
+            if (type == String.class) return raw;
+            if (type == Long.class || type == long.class) return Long.valueOf(raw);
+            if (type == Integer.class || type == int.class) return Integer.valueOf(raw);
+            if (type == Double.class || type == double.class) return Double.valueOf(raw);
+            if (type == Boolean.class || type == boolean.class) return Boolean.valueOf(raw);
+            if (type == LocalDateTime.class) return LocalDateTime.parse(raw);
+        } catch (RuntimeException e) {
+            throw new CursorBadRequest(encode());
+        }
+        throw new CursorBadRequest(encode());
+    }
+}
@@ -0,0 +1,101 @@
+package org.example.utils.search;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Índice invertido de trigramas en memoria para búsquedas por subcadena (LIKE '%x%')
+ * Cada texto se normaliza a minúsculas y se indexa por sus trigramas; una búsqueda
+ * intersecta las listas de ids de los trigramas de la consulta y luego comprueba
+ * la subcadena solo sobre esos candidatos
+ */
+public class TrigramIndex {
+    public static final int MIN_QUERY_LENGTH = 3;
+
+    private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+    private final Map<Long, String> documents = new ConcurrentHashMap<>();
+
+    public synchronized void put(Long id, String text) {
+        remove(id);
+        if (id == null || text == null) {
+            return;
+        }
+        String normalized = normalize(text);
+        documents.put(id, normalized);
+        for (String trigram : trigrams(normalized)) {
+            postings.computeIfAbsent(trigram, k -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    public synchronized void remove(Long id) {
+        if (id == null) {
+            return;
+        }
+        String old = documents.remove(id);
+        if (old == null) {
+            return;
+        }
+        for (String trigram : trigrams(old)) {
+            postings.computeIfPresent(trigram, (k, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    public synchronized void clear() {
+        postings.clear();
+        documents.clear();
+    }
+
+    public static boolean isSearchable(String query) {
+        return query != null && normalize(query).length() >= MIN_QUERY_LENGTH;
+    }
+
+    /**
+     * Ids cuyo texto contiene la consulta (sin distinguir mayúsculas)
+     * La consulta debe tener al menos {@link #MIN_QUERY_LENGTH} caracteres
+     */
+    public Set<Long> search(String query) {
+        if (!isSearchable(query)) {
+            throw new IllegalArgumentException("La búsqueda necesita al menos " + MIN_QUERY_LENGTH + " caracteres");
+        }
+        String normalized = normalize(query);
+        List<Set<Long>> lists = new ArrayList<>();
+        for (String trigram : trigrams(normalized)) {
+            Set<Long> ids = postings.get(trigram);
+            if (ids == null) {
+                return Set.of();
+            }
+            lists.add(ids);
+        }
+        // Se parte de la lista más corta para que la intersección sea lo más barata posible
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<Long> result = new HashSet<>();
+        for (Long id : lists.get(0)) {
+            if (lists.stream().allMatch(ids -> ids.contains(id))) {
+                String document = documents.get(id);
+                if (document != null && document.contains(normalized)) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    static Set<String> trigrams(String text) {
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + MIN_QUERY_LENGTH <= text.length(); i++) {
+            trigrams.add(text.substring(i, i + MIN_QUERY_LENGTH));
+        }
+        return trigrams;
+    }
+}
@@ -0,0 +1,114 @@
+package org.example.utils.timing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rueda de tiempo jerárquica para programar muchas caducidades sin un timer por elemento
+ * Cada nivel tiene slots ticks; el nivel 0 avanza de tick en tick y cada nivel superior
+ * cubre slots veces más tiempo. Programar es O(1) y al avanzar solo se tocan los slots
+ * que vencen: los de niveles altos bajan (cascada) hacia el nivel 0 cuando se acercan.
+ * No es thread-safe, quien la use debe sincronizar
+ */
+public class TimingWheel<T> {
+    private final long tickMs;
+    private final long startMs;
+    private final int bits;
+    private final int mask;
+    private final List<ArrayDeque<Entry<T>>[]> niveles = new ArrayList<>();
+    private long currentTick = 0;
+    private int size = 0;
+
+    private record Entry<T>(long deadlineTick, T value) {
+    }
+
+    /**
+     * @param slots slots por nivel, potencia de 2
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMs, int slots, int levels, long startMs) {
+        if (tickMs <= 0 || slots < 2 || Integer.bitCount(slots) != 1 || levels < 1) {
+            throw new IllegalArgumentException("Rueda de tiempo mal configurada");
+        }
+        this.tickMs = tickMs;
+        this.startMs = startMs;
+        this.bits = Integer.numberOfTrailingZeros(slots);
+        this.mask = slots - 1;
+        for (int nivel = 0; nivel < levels; nivel++) {
+            ArrayDeque<Entry<T>>[] wheel = new ArrayDeque[slots];
+            for (int slot = 0; slot < slots; slot++) {
+                wheel[slot] = new ArrayDeque<>();
+            }
+            niveles.add(wheel);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Programa value para que venza en deadlineMs; si ya ha pasado vence en el siguiente tick
+     */
+    public void schedule(T value, long deadlineMs) {
+        long deadlineTick = Math.max(toTick(deadlineMs + tickMs - 1), currentTick + 1);
+        place(new Entry<>(deadlineTick, value));
+        size++;
+    }
+
+    /**
+     * Avanza hasta nowMs y devuelve todo lo que ha vencido
+     */
+    public List<T> advance(long nowMs) {
+        long targetTick = toTick(nowMs);
+        List<T> vencidos = new ArrayList<>();
+        while (currentTick < targetTick) {
+            if (size == 0) {
+                // Nada programado: se salta directamente al final
+                currentTick = targetTick;
+                break;
+            }
+            tick(currentTick + 1, vencidos);
+        }
+        return vencidos;
+    }
+
+    private void tick(long tick, List<T> vencidos) {
+        currentTick = tick;
+        // Primero la cascada, de arriba abajo, para que lo que vence en este tick llegue al nivel 0
+        for (int nivel = niveles.size() - 1; nivel > 0; nivel--) {
+            if ((tick & ((1L << (bits * nivel)) - 1)) == 0) {
+                var wheel = niveles.get(nivel);
+                int slot = (int) ((tick >>> (bits * nivel)) & mask);
+                var entries = wheel[slot];
+                wheel[slot] = new ArrayDeque<>();
+                entries.forEach(this::place);
+            }
+        }
+        var wheel = niveles.get(0);
+        int slot = (int) (tick & mask);
+        var entries = wheel[slot];
+        wheel[slot] = new ArrayDeque<>();
+        for (Entry<T> entry : entries) {
+            vencidos.add(entry.value());
+            size--;
+        }
+    }
+
+    private void place(Entry<T> entry) {
+        long delta = entry.deadlineTick() - currentTick;
+        int top = niveles.size() - 1;
+        int nivel = 0;
+        while (nivel < top && delta >= (1L << (bits * (nivel + 1)))) {
+            nivel++;
+        }
+        // Si no cabe ni en el último nivel se deja en él y se vuelve a colocar en su próxima cascada
+        int slot = (int) ((entry.deadlineTick() >>> (bits * nivel)) & mask);
+        niveles.get(nivel)[slot].add(entry);
+    }
+
+    private long toTick(long ms) {
+        return Math.max(0, (ms - startMs) / tickMs);
+    }
+}
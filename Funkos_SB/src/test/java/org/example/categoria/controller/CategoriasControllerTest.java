@@ -9,6 +9,9 @@ import org.example.categoria.mapper.CategoriaMapper;
 import org.example.categoria.models.Categoria;
 import org.example.categoria.service.CategoriasService;
 import org.example.funko.exceptions.FunkosExceptions;
+import org.example.funko.models.Descripcion;
+import org.example.funko.models.Funko;
+import org.example.utils.etag.VersionETag;
 import org.example.utils.pageresponse.PageResponse;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -20,11 +23,13 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.json.JacksonTester;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.*;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -101,6 +106,28 @@ public class CategoriasControllerTest {
         verify(categoriasService, times(1)).getById(1L);
     }
 
+    @Test
+    void getCategoriaByIdETagCambiaConSusFunkos() throws Exception {
+        var conFunkos = new Categoria(1L, "TEST", null, LocalDateTime.now().minusDays(1), LocalDateTime.now().minusDays(1), true);
+        var funko = new Funko(1L, "FunkoTest", new Descripcion("SoyTest"), conFunkos, "soy.png", 19.99, 1, LocalDateTime.now(), LocalDateTime.now());
+        conFunkos.setFunkos(new ArrayList<>(List.of(funko)));
+        when(categoriasService.getById(1L)).thenReturn(conFunkos);
+
+        var antes = mockMvc.perform(get(myEndpoint + "/1").accept(MediaType.APPLICATION_JSON)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        // Cambiar un funko de la categoría cambia el cuerpo aunque la categoría no se toque
+        funko.setUpdatedAt(funko.getUpdatedAt().plusSeconds(1));
+        var despues = mockMvc.perform(get(myEndpoint + "/1").accept(MediaType.APPLICATION_JSON)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        // Y también quitarlo
+        conFunkos.getFunkos().clear();
+        var sinFunkos = mockMvc.perform(get(myEndpoint + "/1").accept(MediaType.APPLICATION_JSON)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        assertAll(
+                () -> assertEquals(VersionETag.of(1L, funko.getUpdatedAt(), 1), despues),
+                () -> assertNotEquals(antes, despues),
+                () -> assertNotEquals(despues, sinFunkos)
+        );
+    }
+
     @Test
     void getCategoriaByIdNotFound() throws Exception {
         var myLocalEndpoint = "/funkos/v1/categorias/99999";
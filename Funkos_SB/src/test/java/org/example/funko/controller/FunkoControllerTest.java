@@ -10,6 +10,7 @@ import org.example.funko.mapper.FunkosMapper;
 import org.example.funko.models.Descripcion;
 import org.example.funko.models.Funko;
 import org.example.funko.service.FunkosService;
+import org.example.utils.etag.VersionETag;
 import org.example.utils.pageresponse.PageResponse;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -23,6 +24,7 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
@@ -114,6 +116,42 @@ public class FunkoControllerTest {
     }
 
 
+    @Test
+    void getFunkoByIdDevuelveETag() throws Exception {
+        when(funkosService.getFunkoById(anyLong())).thenReturn(funko);
+
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint + "/1")
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(200, response.getStatus()),
+                () -> assertEquals(VersionETag.of(funko.getId(), VersionETag.latest(funko.getUpdatedAt(), categoria.getUpdatedAt())), response.getHeader(HttpHeaders.ETAG))
+        );
+        verify(funkosService, never()).getFunkoVersion(anyLong());
+    }
+
+    @Test
+    void getFunkoByIdNoModificado() throws Exception {
+        var etag = VersionETag.of(funko.getId(), funko.getUpdatedAt());
+        when(funkosService.getFunkoVersion(1L)).thenReturn(Optional.of(funko.getUpdatedAt()));
+
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myEndpoint + "/1")
+                                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(304, response.getStatus()),
+                () -> assertEquals(etag, response.getHeader(HttpHeaders.ETAG)),
+                () -> assertEquals("", response.getContentAsString())
+        );
+        // Con la versión basta: ni se carga ni se serializa el funko
+        verify(funkosService, never()).getFunkoById(anyLong());
+    }
+
     @Test
     void getProductByIdNotFound() throws Exception {
         var myLocalEndpoint = myEndpoint + "/1";
@@ -1,10 +1,15 @@
 package org.example.funko.mapper;
 
+import org.example.categoria.models.Categoria;
 import org.example.funko.dto.FunkoDto;
+import org.example.funko.dto.FunkoListDto;
+import org.example.funko.models.Descripcion;
 import org.example.funko.models.Funko;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.LocalDateTime;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
@@ -26,4 +31,17 @@ public class FunkoMapperTest {
 
     }
 
+    @Test
+    void toFunkoListDtoOk() {
+        Categoria categoria = new Categoria(1L, "TEST", null, LocalDateTime.now(), LocalDateTime.now(), true);
+        Funko funko = new Funko(1L, "Funko test", new Descripcion("SoyTest"), categoria, "soy.png", 19.99, 3, LocalDateTime.now(), LocalDateTime.now());
+        FunkoListDto dto = mapper.toFunkoListDto(funko);
+
+        assertNotNull(dto);
+        assertEquals(funko.getId(), dto.id());
+        assertEquals("SoyTest", dto.descripcion());
+        assertEquals("TEST", dto.categoria());
+        assertEquals(funko.getStock(), dto.stock());
+    }
+
 }
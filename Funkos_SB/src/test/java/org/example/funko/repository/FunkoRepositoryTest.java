@@ -4,17 +4,33 @@ package org.example.funko.repository;
 import org.example.categoria.models.Categoria;
 import org.example.funko.models.Descripcion;
 import org.example.funko.models.Funko;
+import org.example.utils.pageresponse.KeysetCursor;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-@DataJpaTest
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 class FunkoRepositoryTest {
     private final Descripcion descripcion = new Descripcion("SoyTest");
     private final Categoria categoria = new Categoria(null, "TEST", null, LocalDateTime.now(), LocalDateTime.now(), true);
@@ -45,4 +61,146 @@ class FunkoRepositoryTest {
                 () -> assertEquals(funko.getName(), result.getName())
         );
     }
+
+    @Test
+    void findAllPaginaConSusCategoriasEnUnaConsulta() {
+        for (int i = 0; i < 5; i++) {
+            Categoria otra = new Categoria(null, "CAT" + i, null, LocalDateTime.now(), LocalDateTime.now(), true);
+            entityManager.persist(otra);
+            for (int j = 0; j < 6; j++) {
+                entityManager.persist(new Funko(null, "Funko " + i + "-" + j, new Descripcion("SoyTest"), otra, "soy.png", 19.99, 1, LocalDateTime.now(), LocalDateTime.now()));
+            }
+        }
+        entityManager.flush();
+
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+
+        long pequena = statementsPorPagina(statistics, PageRequest.of(1, 5, Sort.by("id")));
+        long grande = statementsPorPagina(statistics, PageRequest.of(1, 10, Sort.by("id")));
+
+        assertAll(
+                // Una consulta para la página con sus categorías y otra para el count
+                () -> assertEquals(2, pequena),
+                () -> assertEquals(pequena, grande)
+        );
+    }
+
+    @Test
+    void seekRecorreTodasLasFilasSinRepetirConValoresDuplicados() {
+        // Precios repetidos e imágenes nulas: el desempate por id tiene que separar las páginas
+        double[] precios = {29.99, 19.99, 29.99, 39.99, 19.99, 29.99, 19.99, 39.99, 29.99, 19.99, 29.99};
+        for (int i = 0; i < precios.length; i++) {
+            entityManager.persist(new Funko(null, "Funko Seek " + i, descripcion, categoria, i % 3 == 0 ? null : "seek" + (i % 2) + ".png",
+                    precios[i], 1, LocalDateTime.now(), LocalDateTime.now()));
+        }
+        entityManager.flush();
+
+        for (String sortBy : List.of("price", "imagen", "id")) {
+            for (Sort.Direction direction : Sort.Direction.values()) {
+                List<Long> esperado = repository.findAll(KeysetCursor.sort(sortBy, direction)).stream().map(Funko::getId).toList();
+
+                List<Long> recorrido = recorrerSeek(sortBy, direction, 3, esperado.size());
+
+                assertEquals(esperado, recorrido, "Orden por " + sortBy + " " + direction);
+            }
+        }
+    }
+
+    @Test
+    void streamAllByRecorreTodosLosFunkosPorIdConSuCategoria() {
+        entityManager.persist(new Funko(null, "Funko Stream", descripcion, categoria, "soy.png", 9.99, 1, LocalDateTime.now(), LocalDateTime.now()));
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Long> esperado = repository.findAll(Sort.by("id")).stream().map(Funko::getId).toList();
+        entityManager.clear();
+
+        List<Funko> recorrido;
+        try (Stream<Funko> funkos = repository.streamAllBy()) {
+            recorrido = funkos.toList();
+        }
+
+        assertAll(
+                () -> assertEquals(esperado, recorrido.stream().map(Funko::getId).toList()),
+                // La categoría llega con el join fetch, no como proxy por inicializar
+                () -> assertTrue(recorrido.stream().allMatch(f -> Hibernate.isInitialized(f.getCategoria())))
+        );
+    }
+
+    private List<Long> recorrerSeek(String sortBy, Sort.Direction direction, int size, int total) {
+        Sort sort = KeysetCursor.sort(sortBy, direction);
+        List<Long> vistos = new ArrayList<>();
+        Optional<KeysetCursor> cursor = Optional.empty();
+        while (true) {
+            Specification<Funko> criterio = cursor.isPresent()
+                    ? cursor.get().after(sortBy, direction)
+                    : (root, query, criteriaBuilder) -> criteriaBuilder.conjunction();
+            List<Funko> filas = repository.findBy(criterio, query -> query.sortBy(sort).limit(size + 1).all());
+            List<Funko> pagina = filas.size() > size ? filas.subList(0, size) : filas;
+            pagina.forEach(funko -> vistos.add(funko.getId()));
+            // Si el cursor no avanzara el bucle no terminaría nunca
+            assertTrue(vistos.size() <= total, "El seek repite filas ordenando por " + sortBy + " " + direction);
+            if (filas.size() <= size) {
+                return vistos;
+            }
+            Funko ultimo = pagina.get(pagina.size() - 1);
+            // Como el cliente: el cursor va y vuelve codificado
+            cursor = Optional.of(KeysetCursor.decode(KeysetCursor.of(ultimo, sortBy, ultimo.getId()).encode()));
+        }
+    }
+
+    @Test
+    void reserveStockEnBatchSoloDescuentaConStockSuficiente() {
+        Funko otro = new Funko(null, "Funko Otro", new Descripcion("SoyTest"), categoria, "soy.png", 19.99, 10, LocalDateTime.now(), LocalDateTime.now());
+        entityManager.persist(otro);
+        entityManager.flush();
+
+        Map<Long, Integer> cantidades = new TreeMap<>(Map.of(funko.getId(), 2, otro.getId(), 3));
+        int[] reservados = repository.reserveStock(cantidades, LocalDateTime.now());
+        entityManager.clear();
+
+        assertAll(
+                // El primero solo tiene 1 unidad, el segundo sí tiene stock
+                () -> assertArrayEquals(new int[]{0, 1}, reservados),
+                () -> assertEquals(1, repository.findById(funko.getId()).orElseThrow().getStock()),
+                () -> assertEquals(7, repository.findById(otro.getId()).orElseThrow().getStock())
+        );
+    }
+
+    @Test
+    void returnStockEnBatch() {
+        int[] devueltos = repository.returnStock(Map.of(funko.getId(), 4, -1L, 1), LocalDateTime.now());
+        entityManager.clear();
+
+        assertAll(
+                () -> assertEquals(1, Arrays.stream(devueltos).sum()),
+                () -> assertEquals(5, repository.findById(funko.getId()).orElseThrow().getStock())
+        );
+    }
+
+    @Test
+    void reserveStockConDeltasNegativosDevuelveEnElMismoBatch() {
+        Funko otro = new Funko(null, "Funko Otro", new Descripcion("SoyTest"), categoria, "soy.png", 19.99, 10, LocalDateTime.now(), LocalDateTime.now());
+        entityManager.persist(otro);
+        entityManager.flush();
+
+        Map<Long, Integer> deltas = new TreeMap<>(Map.of(funko.getId(), -2, otro.getId(), 4));
+        int[] aplicados = repository.reserveStock(deltas, LocalDateTime.now());
+        entityManager.clear();
+
+        assertAll(
+                () -> assertArrayEquals(new int[]{1, 1}, aplicados),
+                () -> assertEquals(3, repository.findById(funko.getId()).orElseThrow().getStock()),
+                () -> assertEquals(6, repository.findById(otro.getId()).orElseThrow().getStock())
+        );
+    }
+
+    private long statementsPorPagina(Statistics statistics, Pageable pageable) {
+        entityManager.clear();
+        statistics.clear();
+        Page<Funko> page = repository.findAll(Specification.where(null), pageable);
+        page.getContent().forEach(f -> assertNotNull(f.getCategoria().getTipo()));
+        return statistics.getPrepareStatementCount();
+    }
 }
@@ -0,0 +1,80 @@
+package org.example.funko.repository;
+
+import org.example.config.CacheConfig;
+import org.example.funko.models.Funko;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FunkoStockRepositoryImplTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private ObjectProvider<CacheManager> cacheManagerProvider;
+
+    private final CaffeineCacheManager cacheManager = new CaffeineCacheManager(CacheConfig.FUNKOS, CacheConfig.FUNKOS_NOMBRE);
+    private FunkoStockRepositoryImpl repository;
+
+    @BeforeEach
+    void setUp() {
+        when(cacheManagerProvider.getIfAvailable()).thenReturn(cacheManager);
+        repository = new FunkoStockRepositoryImpl(jdbcTemplate, cacheManagerProvider);
+        cacheManager.getCache(CacheConfig.FUNKOS).put(1L, Funko.builder().id(1L).name("Uno").stock(5).build());
+        cacheManager.getCache(CacheConfig.FUNKOS).put(2L, Funko.builder().id(2L).name("Dos").stock(5).build());
+        cacheManager.getCache(CacheConfig.FUNKOS_NOMBRE).put("Uno", Funko.builder().id(1L).name("Uno").stock(5).build());
+        cacheManager.getCache(CacheConfig.FUNKOS_NOMBRE).put("Dos", Funko.builder().id(2L).name("Dos").stock(5).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void reserveStockSacaDeLaCacheLosFunkosTocados() {
+        repository.reserveStock(Map.of(1L, 2), LocalDateTime.now());
+
+        assertAll(
+                () -> assertNull(cacheManager.getCache(CacheConfig.FUNKOS).get(1L)),
+                () -> assertNull(cacheManager.getCache(CacheConfig.FUNKOS_NOMBRE).get("Uno")),
+                () -> assertNotNull(cacheManager.getCache(CacheConfig.FUNKOS).get(2L)),
+                () -> assertNotNull(cacheManager.getCache(CacheConfig.FUNKOS_NOMBRE).get("Dos"))
+        );
+    }
+
+    @Test
+    void adjustStockEnTransaccionSoloSacaDeLaCacheAlConfirmar() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        repository.adjustStock(Map.of(2L, -1), LocalDateTime.now());
+        assertNotNull(cacheManager.getCache(CacheConfig.FUNKOS).get(2L));
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+
+        assertAll(
+                () -> assertNull(cacheManager.getCache(CacheConfig.FUNKOS).get(2L)),
+                () -> assertNull(cacheManager.getCache(CacheConfig.FUNKOS_NOMBRE).get("Dos")),
+                () -> assertNotNull(cacheManager.getCache(CacheConfig.FUNKOS).get(1L))
+        );
+    }
+}
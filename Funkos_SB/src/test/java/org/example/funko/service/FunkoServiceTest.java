@@ -1,28 +1,43 @@
 package org.example.funko.service;
 
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
 import jakarta.validation.ConstraintViolationException;
 import org.example.categoria.models.Categoria;
+import org.example.funko.dto.FunkoBulkUpdateDto;
 import org.example.funko.exceptions.FunkosExceptions;
 import org.example.funko.models.Descripcion;
 import org.example.funko.models.Funko;
 import org.example.funko.repository.FunkoRepository;
+import org.example.funko.search.FunkoSearchIndex;
 import org.example.notification.config.WebSocketConfig;
 import org.example.notification.config.WebSocketHandler;
 import org.example.notification.mapper.NotificationMapper;
 import org.example.notification.models.Notification;
+import org.example.pedido.stock.StockLedger;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.data.domain.*;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -40,6 +55,14 @@ public class FunkoServiceTest {
     private NotificationMapper mapper;
     @Mock
     private FunkoRepository funkoRepository;
+    @Mock
+    private FunkoSearchIndex funkoSearchIndex;
+    @Mock
+    private CacheManager cacheManager;
+    @Mock
+    private Cache cache;
+    @Mock
+    private StockLedger stockLedger;
     @InjectMocks
     private FunkosServiceImpl funkosService;
 
@@ -68,6 +91,63 @@ public class FunkoServiceTest {
         verify(funkoRepository, times(1)).findAll(any(Specification.class), any(Pageable.class));
     }
 
+    @Test
+    void searchFunkosUsaIndice() {
+        Funko funko1 = new Funko(1L, "Funko Test 1", descripcion, categoria,"soy.png", 19.99 , 1,  LocalDateTime.now(), LocalDateTime.now());
+        Funko funko2 = new Funko(2L, "Funko Test 2", descripcion, categoria,"soy.png", 19.99 , 1,  LocalDateTime.now(), LocalDateTime.now());
+        Pageable pageable = PageRequest.of(0, 2, Sort.by("id").ascending());
+
+        when(funkoSearchIndex.search("test")).thenReturn(Optional.of(Set.of(1L, 2L, 3L)));
+        when(funkoRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(funko2, funko1));
+
+        Page<Funko> actualPage = funkosService.searchFunkos("test", pageable);
+
+        assertAll("search",
+                () -> assertEquals(List.of(funko1, funko2), actualPage.getContent()),
+                () -> assertEquals(3, actualPage.getTotalElements())
+        );
+
+        verify(funkoRepository, times(1)).findAllById(List.of(1L, 2L));
+        verify(funkoRepository, never()).findAll(any(Specification.class), any(Pageable.class));
+    }
+
+    @Test
+    void searchFunkosConDemasiadosCandidatosUsaLike() {
+        Pageable pageable = PageRequest.of(0, 10, Sort.by("name").ascending());
+        Set<Long> candidatos = LongStream.rangeClosed(1, 1001).boxed().collect(Collectors.toSet());
+        when(funkoSearchIndex.search("test")).thenReturn(Optional.of(candidatos));
+        when(funkoRepository.findAll(any(Specification.class), eq(pageable))).thenReturn(new PageImpl<>(List.of(funko)));
+
+        funkosService.searchFunkos("test", pageable);
+
+        ArgumentCaptor<Specification<Funko>> spec = ArgumentCaptor.forClass(Specification.class);
+        verify(funkoRepository, times(1)).findAll(spec.capture(), eq(pageable));
+        verify(funkoRepository, never()).findAllById(anyIterable());
+        // El filtro que llega a la base de datos es el LIKE, no un IN con los 1001 ids
+        Root<Funko> root = mock(Root.class);
+        Path<Object> path = mock(Path.class);
+        CriteriaBuilder criteriaBuilder = mock(CriteriaBuilder.class);
+        when(root.get(anyString())).thenReturn(path);
+        when(path.get("descripcion")).thenReturn(path);
+        spec.getValue().toPredicate(root, mock(CriteriaQuery.class), criteriaBuilder);
+        verify(criteriaBuilder, times(2)).like(any(), eq("%test%"));
+        verify(path, never()).in(anyCollection());
+    }
+
+    @Test
+    void searchFunkosSinIndice() {
+        Pageable pageable = PageRequest.of(0, 10, Sort.by("id").ascending());
+        Page<Funko> expectedPage = new PageImpl<>(List.of(funko));
+
+        when(funkoSearchIndex.search("te")).thenReturn(Optional.empty());
+        when(funkoRepository.findAll(any(Specification.class), any(Pageable.class))).thenReturn(expectedPage);
+
+        Page<Funko> actualPage = funkosService.searchFunkos("te", pageable);
+
+        assertEquals(expectedPage, actualPage);
+        verify(funkoRepository, times(1)).findAll(any(Specification.class), any(Pageable.class));
+    }
+
     @Test
     void getFunkoById() {
         when(funkoRepository.findById(1L)).thenReturn(java.util.Optional.of(funko));
@@ -186,6 +266,27 @@ public class FunkoServiceTest {
         verify(funkoRepository, times(1)).save(any(Funko.class));
     }
 
+    @Test
+    void updateFunkoSoloIndexaTrasConfirmar() {
+        Funko funkoNew = new Funko(null, "Funko Update", descripcion, categoria,"soy.png", 19.99 , 1 , LocalDateTime.now(), LocalDateTime.now());
+        when(funkoRepository.findById(funko.getId())).thenReturn(java.util.Optional.of(funko));
+        when(funkoRepository.save(any(Funko.class))).thenReturn(funkoNew);
+
+        TransactionSynchronizationManager.initSynchronization();
+        List<TransactionSynchronization> sincronizaciones;
+        try {
+            funkosService.updateFunko(funko.getId(), funkoNew);
+            sincronizaciones = TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Si la transacción se deshace el índice no llega a ver el nombre nuevo
+        verify(funkoSearchIndex, never()).index(any(Funko.class));
+        sincronizaciones.forEach(TransactionSynchronization::afterCommit);
+        verify(funkoSearchIndex, times(1)).index(funkoNew);
+    }
+
     @Test
     void updateFunkoNotFound(){
         Funko funkoNew = new Funko(null, "Funko Update", descripcion, categoria,"soy.png", 19.99 , 1, LocalDateTime.now(), LocalDateTime.now());
@@ -207,6 +308,7 @@ public class FunkoServiceTest {
         );
         verify(funkoRepository, times(1)).findById(funko.getId());
         verify(funkoRepository, times(1)).deleteById(funko.getId());
+        verify(funkoSearchIndex, times(1)).remove(funko.getId());
     }
 
     @Test
@@ -217,6 +319,28 @@ public class FunkoServiceTest {
         verify(funkoRepository, times(0)).deleteById(funko.getId());
     }
 
+    @Test
+    void bulkUpdate() {
+        var items = List.of(
+                new FunkoBulkUpdateDto(1L, 10.0, null),
+                new FunkoBulkUpdateDto(2L, 10.0, 5),
+                new FunkoBulkUpdateDto(3L, null, 5)
+        );
+        when(funkoRepository.findExistingIds(anyCollection())).thenReturn(List.of(1L, 2L));
+        when(cacheManager.getCache(anyString())).thenReturn(cache);
 
-}
+        var res = funkosService.bulkUpdate(items);
 
+        assertAll(
+                () -> assertEquals(3, res.requested()),
+                () -> assertEquals(2, res.updated()),
+                () -> assertEquals(List.of(3L), res.notFound())
+        );
+        verify(funkoRepository, times(1)).updatePrice(eq(List.of(1L, 2L)), eq(10.0), any(LocalDateTime.class));
+        verify(funkoRepository, times(1)).updateStock(eq(List.of(2L)), eq(5), any(LocalDateTime.class));
+        verify(cache, times(1)).evict(1L);
+        verify(cache, times(1)).evict(2L);
+        verify(cache, times(1)).clear();
+        verify(stockLedger, times(1)).invalidate(Set.of(2L));
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.funko.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.persistence.EntityManager;
+import org.example.categoria.models.Categoria;
+import org.example.funko.mapper.FunkosMapper;
+import org.example.funko.models.Descripcion;
+import org.example.funko.models.Funko;
+import org.example.funko.repository.FunkoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FunkosExportServiceImplTest {
+    private final Categoria categoria = new Categoria(1L, "TEST", null, LocalDateTime.now(), LocalDateTime.now(), true);
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    @Mock
+    private FunkoRepository funkoRepository;
+    @Mock
+    private EntityManager entityManager;
+    private FunkosExportServiceImpl exportService;
+
+    @BeforeEach
+    void setUp() {
+        exportService = new FunkosExportServiceImpl(funkoRepository, new FunkosMapper(), objectMapper, entityManager, 2);
+    }
+
+    private Funko funko(long id) {
+        return new Funko(id, "Funko " + id, new Descripcion("Desc"), categoria, "soy.png", 19.99, 1, LocalDateTime.now(), LocalDateTime.now());
+    }
+
+    @Test
+    void exportFunkosEscribeUnaLineaPorFunko() throws Exception {
+        when(funkoRepository.streamAllBy()).thenReturn(LongStream.rangeClosed(1, 5).mapToObj(this::funko));
+        var out = new ByteArrayOutputStream();
+
+        long total = exportService.exportFunkos(out);
+
+        var lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertAll(
+                () -> assertEquals(5, total),
+                () -> assertEquals(5, lines.length),
+                () -> assertEquals(1L, objectMapper.readTree(lines[0]).get("id").asLong()),
+                () -> assertEquals("TEST", objectMapper.readTree(lines[4]).get("categoria").asText())
+        );
+        // Con lotes de 2 el contexto se vacía tras el 2º y el 4º funko
+        verify(entityManager, times(2)).clear();
+    }
+
+    @Test
+    void exportFunkosVacio() throws Exception {
+        when(funkoRepository.streamAllBy()).thenReturn(Stream.empty());
+        var out = new ByteArrayOutputStream();
+
+        assertEquals(0, exportService.exportFunkos(out));
+        assertEquals(0, out.size());
+        verify(entityManager, never()).clear();
+    }
+}
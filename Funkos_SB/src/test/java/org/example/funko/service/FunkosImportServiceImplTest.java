@@ -0,0 +1,168 @@
+package org.example.funko.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.Validation;
+import org.example.categoria.models.Categoria;
+import org.example.categoria.repository.CategoriasRepository;
+import org.example.funko.dto.FunkoImportResult;
+import org.example.funko.mapper.FunkosMapper;
+import org.example.funko.models.Funko;
+import org.example.funko.repository.FunkoRepository;
+import org.example.funko.search.FunkoSearchIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FunkosImportServiceImplTest {
+    private final Categoria categoria = new Categoria(1L, "TEST", null, LocalDateTime.now(), LocalDateTime.now(), true);
+    @Mock
+    private FunkoRepository funkoRepository;
+    @Mock
+    private CategoriasRepository categoriasRepository;
+    @Mock
+    private FunkoSearchIndex funkoSearchIndex;
+    @Mock
+    private EntityManager entityManager;
+
+    private FunkosImportServiceImpl importService;
+
+    @BeforeEach
+    void setUp() {
+        importService = new FunkosImportServiceImpl(
+                funkoRepository,
+                categoriasRepository,
+                new FunkosMapper(),
+                funkoSearchIndex,
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                new ObjectMapper(),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                entityManager,
+                2
+        );
+    }
+
+    private InputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void importCsv() {
+        String csv = """
+                name,categoria,description,imagen,price
+                Funko 1,TEST,"Descripción, con coma",uno.png,19.99
+                Funko 2,TEST,Otra,dos.png,5.0
+                Funko 3,NOEXISTE,Otra,tres.png,19.99
+                Funko 4,TEST,Otra,,29.99
+                """;
+        when(categoriasRepository.findByTipo("TEST")).thenReturn(categoria);
+        when(categoriasRepository.findByTipo("NOEXISTE")).thenReturn(null);
+
+        FunkoImportResult result = importService.importFunkos(body(csv), FunkosImportServiceImpl.TEXT_CSV);
+
+        assertAll(
+                () -> assertEquals(4, result.total()),
+                () -> assertEquals(2, result.imported()),
+                () -> assertEquals(2, result.failed()),
+                () -> assertEquals(3, result.errors().get(0).linea()),
+                () -> assertEquals(4, result.errors().get(1).linea())
+        );
+        // Las categorías se buscan una vez por tipo y los dos funkos válidos van en un único lote
+        verify(categoriasRepository, times(1)).findByTipo("TEST");
+        verify(funkoRepository, times(1)).saveAll(anyList());
+        verify(entityManager, times(1)).flush();
+    }
+
+    @Test
+    void importNdjsonEnLotes() {
+        String ndjson = """
+                {"name":"Funko 1","categoria":"TEST","description":"Uno","price":19.99}
+                {"name":"Funko 2","categoria":"TEST","description":"Dos","price":19.99}
+                {"name":"Funko 3","categoria":"TEST","description":"Tres","price":19.99}
+                no es json
+                """;
+        when(categoriasRepository.findByTipo(anyString())).thenReturn(categoria);
+
+        FunkoImportResult result = importService.importFunkos(body(ndjson), FunkosImportServiceImpl.APPLICATION_NDJSON);
+
+        assertAll(
+                () -> assertEquals(4, result.total()),
+                () -> assertEquals(3, result.imported()),
+                () -> assertEquals(1, result.failed()),
+                () -> assertEquals(4, result.errors().get(0).linea())
+        );
+        verify(funkoRepository, times(2)).saveAll(anyList());
+        verify(funkoSearchIndex, times(3)).index(any());
+    }
+
+    @Test
+    void importLoteConErrorNoAbortaElFichero() {
+        String ndjson = """
+                {"name":"Funko 1","categoria":"TEST","description":"Uno","price":19.99}
+                {"name":"Funko 2","categoria":"TEST","description":"Dos","price":19.99}
+                {"name":"Funko 3","categoria":"TEST","description":"Tres","price":19.99}
+                """;
+        when(categoriasRepository.findByTipo(anyString())).thenReturn(categoria);
+        when(funkoRepository.saveAll(anyList()))
+                .thenThrow(new IllegalStateException("duplicado"))
+                .thenReturn(List.of());
+        // Al repetir el lote fila a fila solo falla la segunda
+        when(funkoRepository.save(any(Funko.class))).thenAnswer(invocation -> {
+            Funko funko = invocation.getArgument(0);
+            if (funko.getName().equals("Funko 2")) {
+                throw new IllegalStateException("duplicado");
+            }
+            return funko;
+        });
+
+        FunkoImportResult result = importService.importFunkos(body(ndjson), FunkosImportServiceImpl.APPLICATION_NDJSON);
+
+        assertAll(
+                () -> assertEquals(3, result.total()),
+                () -> assertEquals(2, result.imported()),
+                () -> assertEquals(1, result.failed()),
+                () -> assertEquals(1, result.errors().size()),
+                () -> assertEquals(2, result.errors().get(0).linea())
+        );
+        verify(funkoRepository, times(2)).save(any(Funko.class));
+        verify(funkoSearchIndex, times(2)).index(any(Funko.class));
+    }
+
+    @Test
+    void importSinPrecioEsErrorDeValidacion() {
+        String ndjson = """
+                {"name":"Funko 1","categoria":"TEST","description":"Uno"}
+                """;
+
+        FunkoImportResult result = importService.importFunkos(body(ndjson), FunkosImportServiceImpl.APPLICATION_NDJSON);
+
+        assertAll(
+                () -> assertEquals(0, result.imported()),
+                () -> assertEquals(1, result.failed()),
+                () -> assertEquals("El precio no puede estar vacío", result.errors().get(0).error())
+        );
+        verifyNoInteractions(funkoRepository);
+    }
+
+    @Test
+    void parseCsvLineConComillas() {
+        assertEquals(List.of("a", "b, c", "d \"e\"", ""), FunkosImportServiceImpl.parseCsvLine("a,\"b, c\",\"d \"\"e\"\"\","));
+    }
+}
@@ -6,11 +6,17 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.bson.types.ObjectId;
+import org.example.pedido.dto.PedidoResumen;
 import org.example.pedido.exceptions.*;
 import org.example.pedido.models.Cliente;
 import org.example.pedido.models.Direccion;
 import org.example.pedido.models.LineaPedido;
 import org.example.pedido.models.Pedido;
+import org.example.pedido.models.PedidoOutbox;
+import org.example.pedido.models.PedidoUsuarioResumen;
+import org.example.pedido.service.PedidosAnalyticsService;
+import org.example.pedido.service.PedidosIdempotenciaService;
+import org.example.pedido.service.PedidosOutboxService;
 import org.example.pedido.service.PedidosService;
 import org.example.utils.pageresponse.PageResponse;
 import org.junit.jupiter.api.Test;
@@ -28,11 +34,15 @@ import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 
@@ -56,10 +66,18 @@ class PedidosRestControllerTest {
                     .precioProducto(10.0)
                     .build()))
             .build();
+    private final PedidoResumen pedidoResumen1 = new PedidoResumen(
+            "5f9f1a3b9d6b6d2e3c1d6f1a", 1L, 1, 20.0, LocalDateTime.now(), LocalDateTime.now());
     @Autowired
     MockMvc mockMvc; // Cliente MVC
     @MockBean
     private PedidosService pedidosService;
+    @MockBean
+    private PedidosAnalyticsService pedidosAnalyticsService;
+    @MockBean
+    private PedidosOutboxService pedidosOutboxService;
+    @MockBean
+    private PedidosIdempotenciaService pedidosIdempotenciaService;
 
     @Autowired
     public PedidosRestControllerTest(PedidosService pedidosService) {
@@ -69,7 +87,7 @@ class PedidosRestControllerTest {
 
     @Test
     void getAllPedidos() throws Exception {
-        var pedidosList = List.of(pedido1);
+        var pedidosList = List.of(pedidoResumen1);
         var pageable = PageRequest.of(0, 10, Sort.by("id").ascending());
         var page = new PageImpl<>(pedidosList);
 
@@ -82,7 +100,7 @@ class PedidosRestControllerTest {
                                 .accept(MediaType.APPLICATION_JSON))
                 .andReturn().getResponse();
 
-        PageResponse<Pedido> res = mapper.readValue(response.getContentAsString(), new TypeReference<>() {
+        PageResponse<PedidoResumen> res = mapper.readValue(response.getContentAsString(), new TypeReference<>() {
         });
 
         // Assert
@@ -149,7 +167,7 @@ class PedidosRestControllerTest {
     void getPedidosByUsuario() throws Exception {
         // Arrange
         var myLocalEndpoint = myEndpoint + "/usuario/1";
-        var pedidosList = List.of(pedido1);
+        var pedidosList = List.of(pedidoResumen1);
         var pageable = PageRequest.of(0, 10, Sort.by("id").ascending());
         var page = new PageImpl<>(pedidosList);
 
@@ -162,7 +180,7 @@ class PedidosRestControllerTest {
                                 .accept(MediaType.APPLICATION_JSON))
                 .andReturn().getResponse();
 
-        PageResponse<Pedido> res = mapper.readValue(response.getContentAsString(), new TypeReference<>() {
+        PageResponse<PedidoResumen> res = mapper.readValue(response.getContentAsString(), new TypeReference<>() {
         });
 
         // Assert
@@ -175,6 +193,31 @@ class PedidosRestControllerTest {
         verify(pedidosService, times(1)).findByIdUsuario(anyLong(), any(Pageable.class));
     }
 
+    @Test
+    void getResumenUsuario() throws Exception {
+        // Arrange
+        var myLocalEndpoint = myEndpoint + "/usuario/1/resumen";
+        var resumen = PedidoUsuarioResumen.builder().idUsuario(1L).pedidos(3L).total(60.0).totalItems(6L).build();
+        when(pedidosAnalyticsService.getResumenUsuario(1L)).thenReturn(resumen);
+
+        // Consulto el endpoint
+        MockHttpServletResponse response = mockMvc.perform(
+                        get(myLocalEndpoint)
+                                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        PedidoUsuarioResumen res = mapper.readValue(response.getContentAsString(), PedidoUsuarioResumen.class);
+
+        // Assert
+        assertAll(
+                () -> assertEquals(200, response.getStatus()),
+                () -> assertEquals(resumen, res)
+        );
+
+        // Verify
+        verify(pedidosAnalyticsService, times(1)).getResumenUsuario(1L);
+    }
+
     @Test
     void createPedido() throws Exception {
         // Arrange
@@ -201,6 +244,55 @@ class PedidosRestControllerTest {
         verify(pedidosService, times(1)).save(any(Pedido.class));
     }
 
+    @Test
+    void createPedidoAsincronoConClaveGuardaLaEntradaDeLaOutbox() throws Exception {
+        var entrada = PedidoOutbox.builder().id(pedido1.getId()).pedido(pedido1).estado(PedidoOutbox.Estado.PENDIENTE).build();
+        when(pedidosOutboxService.isEnabled()).thenReturn(true);
+        when(pedidosOutboxService.accept(any(Pedido.class))).thenReturn(entrada);
+        when(pedidosIdempotenciaService.save(eq("clave-1"), any(Pedido.class), any()))
+                .thenAnswer(invocation -> new PedidosIdempotenciaService.Resultado(
+                        invocation.<Supplier<Pedido>>getArgument(2).get(), false));
+
+        MockHttpServletResponse response = mockMvc.perform(
+                        post(myEndpoint)
+                                .header("Prefer", "respond-async")
+                                .header("Idempotency-Key", "clave-1")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(mapper.writeValueAsString(pedido1)))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(202, response.getStatus()),
+                () -> assertEquals("false", response.getHeader("Idempotent-Replayed")),
+                () -> assertTrue(response.getHeader("Location").endsWith("/estado/" + pedido1.getId().toHexString()))
+        );
+        verify(pedidosOutboxService, times(1)).accept(any(Pedido.class));
+    }
+
+    @Test
+    void createPedidoAsincronoConClaveRepetidaNoVuelveAEncolar() throws Exception {
+        var entrada = PedidoOutbox.builder().id(pedido1.getId()).pedido(pedido1).estado(PedidoOutbox.Estado.COMPLETADO).build();
+        when(pedidosOutboxService.isEnabled()).thenReturn(true);
+        when(pedidosIdempotenciaService.save(eq("clave-1"), any(Pedido.class), any()))
+                .thenReturn(new PedidosIdempotenciaService.Resultado(pedido1, true));
+        when(pedidosOutboxService.getEstado(pedido1.getId())).thenReturn(entrada);
+
+        MockHttpServletResponse response = mockMvc.perform(
+                        post(myEndpoint)
+                                .header("Prefer", "respond-async")
+                                .header("Idempotency-Key", "clave-1")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(mapper.writeValueAsString(pedido1)))
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(202, response.getStatus()),
+                () -> assertEquals("true", response.getHeader("Idempotent-Replayed")),
+                () -> assertTrue(response.getContentAsString().contains("COMPLETADO"))
+        );
+        verify(pedidosOutboxService, never()).accept(any(Pedido.class));
+    }
+
     @Test
     void createPedidoNoItemsBadRequest() throws Exception {
         // Arrange
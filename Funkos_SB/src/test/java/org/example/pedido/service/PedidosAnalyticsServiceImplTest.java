@@ -0,0 +1,224 @@
+package org.example.pedido.service;
+
+import org.bson.Document;
+import org.example.categoria.models.Categoria;
+import org.example.funko.models.Descripcion;
+import org.example.funko.models.Funko;
+import org.example.funko.repository.FunkoRepository;
+import org.example.pedido.models.LineaPedido;
+import org.example.pedido.models.Pedido;
+import org.example.pedido.models.PedidoRollup;
+import org.example.pedido.models.PedidoUsuarioResumen;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PedidosAnalyticsServiceImplTest {
+    @Mock
+    private MongoTemplate mongoTemplate;
+    @Mock
+    private FunkoRepository funkoRepository;
+    @Mock
+    private BulkOperations bulkOperations;
+    @Mock
+    private BulkOperations bulkUsuarios;
+
+    private Pedido pedido(LocalDateTime createdAt, LineaPedido... lineas) {
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(lineas));
+        pedido.setCreatedAt(createdAt);
+        PedidosServiceImpl.calcularTotales(pedido);
+        return pedido;
+    }
+
+    private LineaPedido linea(Long idProducto, int cantidad, double precio) {
+        return LineaPedido.builder().idProducto(idProducto).cantidad(cantidad).precioProducto(precio).build();
+    }
+
+    @Test
+    void registrarSumaUnBucketPorDiaYProducto() {
+        var service = new PedidosAnalyticsServiceImpl(mongoTemplate, funkoRepository);
+        var dia = LocalDateTime.of(2024, 3, 1, 10, 0);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PedidoRollup.class)).thenReturn(bulkOperations);
+
+        service.registrar(List.of(
+                pedido(dia, linea(1L, 2, 10.0), linea(1L, 1, 10.0), linea(2L, 1, 5.0)),
+                pedido(dia, linea(1L, 1, 10.0))));
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOperations, times(2)).upsert(queries.capture(), updates.capture());
+        verify(bulkOperations).execute();
+
+        // Los buckets van ordenados por id: primero el producto 1
+        var inc = (Document) updates.getAllValues().get(0).getUpdateObject().get("$inc");
+        assertAll(
+                () -> assertEquals("2024-03-01:1", queries.getAllValues().get(0).getQueryObject().get("_id")),
+                () -> assertEquals(4L, inc.get("unidades")),
+                () -> assertEquals(40.0, inc.get("ingresos")),
+                () -> assertEquals(2L, inc.get("pedidos"))
+        );
+    }
+
+    @Test
+    void anularRestaElPedido() {
+        var service = new PedidosAnalyticsServiceImpl(mongoTemplate, funkoRepository);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PedidoRollup.class)).thenReturn(bulkOperations);
+
+        service.anular(pedido(LocalDateTime.of(2024, 3, 1, 10, 0), linea(1L, 2, 10.0)));
+
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOperations).upsert(any(Query.class), updates.capture());
+        var inc = (Document) updates.getValue().getUpdateObject().get("$inc");
+        assertAll(
+                () -> assertEquals(-2L, inc.get("unidades")),
+                () -> assertEquals(-20.0, inc.get("ingresos")),
+                () -> assertEquals(-1L, inc.get("pedidos"))
+        );
+    }
+
+    @Test
+    void registrarConMongoCaidoNoLanzaExcepcion() {
+        var service = new PedidosAnalyticsServiceImpl(mongoTemplate, funkoRepository);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PedidoRollup.class)).thenReturn(bulkOperations);
+        when(bulkOperations.execute()).thenThrow(new IllegalStateException("Mongo caído"));
+
+        assertDoesNotThrow(() -> service.registrar(List.of(pedido(LocalDateTime.now(), linea(1L, 1, 10.0)))));
+    }
+
+    @Test
+    void ventasPorCategoriaAgrupaLosProductosPorSuCategoria() {
+        var service = new PedidosAnalyticsServiceImpl(mongoTemplate, funkoRepository);
+        var marvel = new Categoria(1L, "MARVEL", null, LocalDateTime.now(), LocalDateTime.now(), true);
+        var disney = new Categoria(2L, "DISNEY", null, LocalDateTime.now(), LocalDateTime.now(), true);
+        var funkos = List.of(
+                new Funko(1L, "Iron Man", new Descripcion("a"), marvel, "a.png", 10.0, 5, LocalDateTime.now(), LocalDateTime.now()),
+                new Funko(2L, "Thor", new Descripcion("b"), marvel, "b.png", 5.0, 5, LocalDateTime.now(), LocalDateTime.now()),
+                new Funko(3L, "Mickey", new Descripcion("c"), disney, "c.png", 1.0, 5, LocalDateTime.now(), LocalDateTime.now()));
+        var porProducto = List.of(
+                new Document("_id", 1L).append("unidades", 4L).append("ingresos", 40.0).append("pedidos", 2L),
+                new Document("_id", 2L).append("unidades", 2L).append("ingresos", 10.0).append("pedidos", 1L),
+                new Document("_id", 3L).append("unidades", 3L).append("ingresos", 3.0).append("pedidos", 3L));
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(PedidoRollup.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(porProducto, new Document()));
+        when(funkoRepository.findAllById(List.of(1L, 2L, 3L))).thenReturn(funkos);
+
+        var result = service.ventasPorCategoria(LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31));
+
+        assertAll(
+                () -> assertEquals(2, result.size()),
+                () -> assertEquals("MARVEL", result.get(0).categoria()),
+                () -> assertEquals(6L, result.get(0).unidades()),
+                () -> assertEquals(50.0, result.get(0).ingresos()),
+                () -> assertEquals("DISNEY", result.get(1).categoria())
+        );
+    }
+
+    @Test
+    void registrarSumaLosPedidosEnElResumenDelUsuario() {
+        var service = new PedidosAnalyticsServiceImpl(mongoTemplate, funkoRepository);
+        var primero = pedido(LocalDateTime.of(2024, 3, 1, 10, 0), linea(1L, 2, 10.0));
+        var segundo = pedido(LocalDateTime.of(2024, 3, 2, 10, 0), linea(1L, 1, 10.0));
+        primero.setIdUsuario(7L);
+        segundo.setIdUsuario(7L);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PedidoRollup.class)).thenReturn(bulkOperations);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PedidoUsuarioResumen.class)).thenReturn(bulkUsuarios);
+
+        service.registrar(List.of(primero, segundo));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(bulkUsuarios).upsert(query.capture(), update.capture());
+        verify(bulkUsuarios).execute();
+        var inc = (Document) update.getValue().getUpdateObject().get("$inc");
+        var max = (Document) update.getValue().getUpdateObject().get("$max");
+        assertAll(
+                () -> assertEquals(7L, query.getValue().getQueryObject().get("_id")),
+                () -> assertEquals(2L, inc.get("pedidos")),
+                () -> assertEquals(30.0, inc.get("total")),
+                () -> assertEquals(3L, inc.get("totalItems")),
+                () -> assertEquals(segundo.getCreatedAt(), max.get("ultimoPedido"))
+        );
+    }
+
+    @Test
+    void anularRecalculaElUltimoPedidoDelUsuario() {
+        var service = new PedidosAnalyticsServiceImpl(mongoTemplate, funkoRepository);
+        var borrado = pedido(LocalDateTime.of(2024, 3, 2, 10, 0), linea(1L, 1, 10.0));
+        borrado.setIdUsuario(7L);
+        var anterior = pedido(LocalDateTime.of(2024, 3, 1, 10, 0), linea(1L, 1, 10.0));
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PedidoRollup.class)).thenReturn(bulkOperations);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PedidoUsuarioResumen.class)).thenReturn(bulkUsuarios);
+        when(mongoTemplate.findOne(any(Query.class), eq(Pedido.class))).thenReturn(anterior);
+
+        service.anular(borrado);
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(PedidoUsuarioResumen.class));
+        var set = (Document) update.getValue().getUpdateObject().get("$set");
+        assertEquals(anterior.getCreatedAt(), set.get("ultimoPedido"));
+    }
+
+    @Test
+    void getResumenUsuarioSinPedidosDevuelveCeros() {
+        var service = new PedidosAnalyticsServiceImpl(mongoTemplate, funkoRepository);
+        when(mongoTemplate.findById(9L, PedidoUsuarioResumen.class)).thenReturn(null);
+
+        var resumen = service.getResumenUsuario(9L);
+
+        assertAll(
+                () -> assertEquals(9L, resumen.getIdUsuario()),
+                () -> assertEquals(0L, resumen.getPedidos()),
+                () -> assertEquals(0.0, resumen.getTotal()),
+                () -> assertNull(resumen.getUltimoPedido())
+        );
+    }
+
+    @Test
+    void rebuildSustituyeLaColeccionConOut() {
+        var service = new PedidosAnalyticsServiceImpl(mongoTemplate, funkoRepository);
+        when(mongoTemplate.getCollectionName(PedidoRollup.class)).thenReturn("pedidos_rollups");
+        when(mongoTemplate.estimatedCount(PedidoRollup.class)).thenReturn(3L);
+
+        assertEquals(3, service.rebuild());
+
+        ArgumentCaptor<Aggregation> aggregation = ArgumentCaptor.forClass(Aggregation.class);
+        verify(mongoTemplate).aggregate(aggregation.capture(), eq(Pedido.class), eq(Document.class));
+        var pipeline = aggregation.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT);
+        // Sin borrar antes: $out cambia la colección entera al terminar
+        assertEquals(new Document("$out", "pedidos_rollups"), pipeline.get(pipeline.size() - 1));
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(PedidoRollup.class));
+    }
+
+    @Test
+    void rebuildUsuariosSustituyeLaColeccionConOut() {
+        var service = new PedidosAnalyticsServiceImpl(mongoTemplate, funkoRepository);
+        when(mongoTemplate.getCollectionName(PedidoUsuarioResumen.class)).thenReturn("pedidos_usuarios");
+        when(mongoTemplate.estimatedCount(PedidoUsuarioResumen.class)).thenReturn(2L);
+
+        assertEquals(2, service.rebuildUsuarios());
+
+        ArgumentCaptor<Aggregation> aggregation = ArgumentCaptor.forClass(Aggregation.class);
+        verify(mongoTemplate).aggregate(aggregation.capture(), eq(Pedido.class), eq(Document.class));
+        var pipeline = aggregation.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT);
+        assertEquals(new Document("$out", "pedidos_usuarios"), pipeline.get(pipeline.size() - 1));
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(PedidoUsuarioResumen.class));
+    }
+}
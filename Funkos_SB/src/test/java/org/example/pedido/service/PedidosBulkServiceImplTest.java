@@ -0,0 +1,183 @@
+package org.example.pedido.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import jakarta.validation.Validation;
+import org.bson.BsonDocument;
+import org.example.categoria.models.Categoria;
+import org.example.funko.models.Descripcion;
+import org.example.funko.models.Funko;
+import org.example.funko.repository.FunkoRepository;
+import org.example.pedido.dto.PedidoBulkResultado;
+import org.example.pedido.exceptions.PedidosBulkExcedido;
+import org.example.pedido.models.Cliente;
+import org.example.pedido.models.Direccion;
+import org.example.pedido.models.LineaPedido;
+import org.example.pedido.models.Pedido;
+import org.example.pedido.stock.StockLedger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PedidosBulkServiceImplTest {
+    private final Categoria categoria = new Categoria(1L, "TEST", null, LocalDateTime.now(), LocalDateTime.now(), true);
+    private final Funko funko = new Funko(1L, "Funko Test", new Descripcion("SoyTest"), categoria, "soy.png", 10.0, 5, LocalDateTime.now(), LocalDateTime.now());
+    @Mock
+    private FunkoRepository funkoRepository;
+    @Mock
+    private MongoTemplate mongoTemplate;
+    @Mock
+    private PedidosService pedidosService;
+    @Mock
+    private StockLedger stockLedger;
+    @Mock
+    private PedidosAnalyticsService pedidosAnalyticsService;
+    @Mock
+    private BulkOperations bulkOperations;
+
+    private PedidosBulkServiceImpl nuevoBulk(int maxPedidos) {
+        return new PedidosBulkServiceImpl(funkoRepository, mongoTemplate, pedidosService, stockLedger, pedidosAnalyticsService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                Validation.buildDefaultValidatorFactory().getValidator(), maxPedidos);
+    }
+
+    private Pedido pedido(int cantidad, double precio) {
+        Pedido pedido = new Pedido();
+        pedido.setIdUsuario(1L);
+        pedido.setCliente(new Cliente("Samuel", "samuelvives@gmail.com", "1234567890",
+                new Direccion("Calle", "1", "Ciudad", "Provincia", "Pais", "12345")));
+        pedido.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(cantidad).precioProducto(precio).build()));
+        return pedido;
+    }
+
+    @Test
+    void saveAllReservaAgregadoYGuardaConUnBulk() {
+        var bulk = nuevoBulk(10);
+        var pedidos = List.of(pedido(2, 10.0), pedido(1, 10.0));
+        when(funkoRepository.findAllById(anyIterable())).thenReturn(List.of(funko));
+        when(funkoRepository.reserveStock(eq(Map.of(1L, 3)), any(LocalDateTime.class))).thenReturn(new int[]{1});
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Pedido.class)).thenReturn(bulkOperations);
+
+        var resultados = bulk.saveAll(pedidos, false);
+
+        assertAll(
+                () -> assertTrue(resultados.stream().allMatch(PedidoBulkResultado::creado)),
+                () -> assertEquals(pedidos.get(0).getId().toHexString(), resultados.get(0).id()),
+                () -> assertEquals(20.0, pedidos.get(0).getTotal())
+        );
+        verify(funkoRepository, times(1)).findAllById(anyIterable());
+        verify(bulkOperations, times(2)).insert(any(Pedido.class));
+        verify(bulkOperations, times(1)).execute();
+        verify(funkoRepository, never()).returnStock(anyMap(), any(LocalDateTime.class));
+        verify(pedidosAnalyticsService, times(1)).registrar(pedidos);
+    }
+
+    @Test
+    void saveAllPedidoInvalidoNoEntraEnElLote() {
+        var bulk = nuevoBulk(10);
+        var sinUsuario = pedido(1, 10.0);
+        sinUsuario.setIdUsuario(null);
+        var pedidos = List.of(pedido(2, 10.0), pedido(1, 99.0), sinUsuario, pedido(9, 10.0));
+        when(funkoRepository.findAllById(anyIterable())).thenReturn(List.of(funko));
+        when(funkoRepository.reserveStock(eq(Map.of(1L, 2)), any(LocalDateTime.class))).thenReturn(new int[]{1});
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Pedido.class)).thenReturn(bulkOperations);
+
+        var resultados = bulk.saveAll(pedidos, true);
+
+        assertAll(
+                () -> assertEquals(201, resultados.get(0).status()),
+                () -> assertEquals(400, resultados.get(1).status()),
+                () -> assertEquals(400, resultados.get(2).status()),
+                () -> assertNotNull(resultados.get(3).error()),
+                () -> assertFalse(resultados.get(3).creado())
+        );
+        verify(bulkOperations, times(1)).insert(any(Pedido.class));
+    }
+
+    @Test
+    void saveAllDevuelveSoloElStockDeLosRechazadosPorMongo() {
+        var bulk = nuevoBulk(10);
+        var pedidos = List.of(pedido(2, 10.0), pedido(1, 10.0), pedido(1, 10.0));
+        var fallo = mock(BulkOperationException.class);
+        when(fallo.getErrors()).thenReturn(List.of(new BulkWriteError(11000, "duplicado", new BsonDocument(), 1)));
+        when(funkoRepository.findAllById(anyIterable())).thenReturn(List.of(funko));
+        when(funkoRepository.reserveStock(eq(Map.of(1L, 4)), any(LocalDateTime.class))).thenReturn(new int[]{1});
+        when(funkoRepository.returnStock(eq(Map.of(1L, 1)), any(LocalDateTime.class))).thenReturn(new int[]{1});
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Pedido.class)).thenReturn(bulkOperations);
+        when(bulkOperations.execute()).thenThrow(fallo);
+
+        var resultados = bulk.saveAll(pedidos, false);
+
+        assertAll(
+                () -> assertTrue(resultados.get(0).creado()),
+                () -> assertEquals(409, resultados.get(1).status()),
+                () -> assertTrue(resultados.get(2).creado())
+        );
+        verify(funkoRepository, times(1)).returnStock(eq(Map.of(1L, 1)), any(LocalDateTime.class));
+    }
+
+    @Test
+    void saveAllOrdenadoDaPorFallidosLosPosterioresAlError() {
+        var bulk = nuevoBulk(10);
+        var pedidos = List.of(pedido(2, 10.0), pedido(1, 10.0), pedido(1, 10.0));
+        var fallo = mock(BulkOperationException.class);
+        when(fallo.getErrors()).thenReturn(List.of(new BulkWriteError(11000, "duplicado", new BsonDocument(), 1)));
+        when(funkoRepository.findAllById(anyIterable())).thenReturn(List.of(funko));
+        when(funkoRepository.reserveStock(eq(Map.of(1L, 4)), any(LocalDateTime.class))).thenReturn(new int[]{1});
+        when(funkoRepository.returnStock(eq(Map.of(1L, 2)), any(LocalDateTime.class))).thenReturn(new int[]{1});
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Pedido.class)).thenReturn(bulkOperations);
+        when(bulkOperations.execute()).thenThrow(fallo);
+
+        var resultados = bulk.saveAll(pedidos, true);
+
+        assertAll(
+                () -> assertTrue(resultados.get(0).creado()),
+                () -> assertFalse(resultados.get(1).creado()),
+                () -> assertFalse(resultados.get(2).creado())
+        );
+        verify(funkoRepository, times(1)).returnStock(eq(Map.of(1L, 2)), any(LocalDateTime.class));
+    }
+
+    @Test
+    void saveAllDevuelveTodoElStockSiElBulkFallaSinDetalle() {
+        var bulk = nuevoBulk(10);
+        var pedidos = List.of(pedido(2, 10.0), pedido(1, 10.0));
+        when(funkoRepository.findAllById(anyIterable())).thenReturn(List.of(funko));
+        when(funkoRepository.reserveStock(eq(Map.of(1L, 3)), any(LocalDateTime.class))).thenReturn(new int[]{1});
+        when(funkoRepository.returnStock(eq(Map.of(1L, 3)), any(LocalDateTime.class))).thenReturn(new int[]{1});
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Pedido.class)).thenReturn(bulkOperations);
+        when(bulkOperations.execute()).thenThrow(new DataAccessResourceFailureException("timeout"));
+
+        var resultados = bulk.saveAll(pedidos, false);
+
+        assertAll(
+                () -> assertEquals(503, resultados.get(0).status()),
+                () -> assertEquals(503, resultados.get(1).status())
+        );
+        verify(funkoRepository, times(1)).returnStock(eq(Map.of(1L, 3)), any(LocalDateTime.class));
+        verify(pedidosAnalyticsService).registrar(List.of());
+    }
+
+    @Test
+    void saveAllDemasiadosPedidosLanzaExcepcion() {
+        var bulk = nuevoBulk(1);
+
+        assertThrows(PedidosBulkExcedido.class, () -> bulk.saveAll(List.of(pedido(1, 10.0), pedido(1, 10.0)), false));
+        verifyNoInteractions(funkoRepository, mongoTemplate);
+    }
+}
@@ -0,0 +1,218 @@
+package org.example.pedido.service;
+
+import org.example.categoria.models.Categoria;
+import org.example.funko.models.Descripcion;
+import org.example.funko.models.Funko;
+import org.example.funko.repository.FunkoRepository;
+import org.example.pedido.exceptions.ProductoBadPrice;
+import org.example.pedido.exceptions.PedidosSaturados;
+import org.example.pedido.exceptions.ProductoNotStock;
+import org.example.pedido.models.LineaPedido;
+import org.example.pedido.models.Pedido;
+import org.example.pedido.repository.PedidosRepository;
+import org.example.pedido.stock.StockLedger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PedidosFlashSaleTest {
+    private final Categoria categoria = new Categoria(1L, "TEST", null, LocalDateTime.now(), LocalDateTime.now(), true);
+    private final Funko funko = new Funko(1L, "Funko Test", new Descripcion("SoyTest"), categoria, "soy.png", 10.0, 3, LocalDateTime.now(), LocalDateTime.now());
+    @Mock
+    private FunkoRepository funkoRepository;
+    @Mock
+    private PedidosRepository pedidosRepository;
+    @Mock
+    private PedidosService pedidosService;
+    @Mock
+    private StockLedger stockLedger;
+    @Mock
+    private PedidosAnalyticsService pedidosAnalyticsService;
+
+    private PedidosFlashSale flashSale;
+
+    @AfterEach
+    void tearDown() {
+        if (flashSale != null) {
+            flashSale.stop();
+        }
+    }
+
+    private PedidosFlashSale nuevoFlashSale(boolean enabled, int maxBatch, long maxWaitMs) {
+        return new PedidosFlashSale(funkoRepository, pedidosRepository, pedidosService, stockLedger, pedidosAnalyticsService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                enabled, maxBatch, maxWaitMs, 100, 5000);
+    }
+
+    private PedidosFlashSale nuevoFlashSale(boolean enabled, int maxBatch, long maxWaitMs, long timeoutMs) {
+        return new PedidosFlashSale(funkoRepository, pedidosRepository, pedidosService, stockLedger, pedidosAnalyticsService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                enabled, maxBatch, maxWaitMs, 100, timeoutMs);
+    }
+
+    private PedidosFlashSale.Solicitud solicitud(int cantidad, double precio) {
+        Pedido pedido = new Pedido();
+        pedido.setIdUsuario(1L);
+        pedido.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(cantidad).precioProducto(precio).build()));
+        return new PedidosFlashSale.Solicitud(pedido, new CompletableFuture<>());
+    }
+
+    @Test
+    void processValidaElLoteContraUnaFotoDelStock() throws Exception {
+        flashSale = nuevoFlashSale(false, 10, 5);
+        var a = solicitud(2, 10.0);
+        var b = solicitud(2, 10.0);
+        var c = solicitud(1, 10.0);
+        var d = solicitud(1, 99.0);
+        when(funkoRepository.findAllById(anyIterable())).thenReturn(List.of(funko));
+        when(funkoRepository.reserveStock(eq(Map.of(1L, 3)), any(LocalDateTime.class))).thenReturn(new int[]{1});
+        when(pedidosRepository.insert(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        flashSale.process(List.of(a, b, c, d));
+
+        assertAll(
+                () -> assertEquals(20.0, a.resultado().get().getTotal()),
+                () -> assertInstanceOf(ProductoNotStock.class, assertThrows(ExecutionException.class, () -> b.resultado().get()).getCause()),
+                () -> assertEquals(10.0, c.resultado().get().getTotal()),
+                () -> assertInstanceOf(ProductoBadPrice.class, assertThrows(ExecutionException.class, () -> d.resultado().get()).getCause())
+        );
+        // Una lectura, una reserva por producto y un único insert para todo el lote
+        verify(funkoRepository, times(1)).findAllById(anyIterable());
+        verify(funkoRepository, times(1)).reserveStock(eq(Map.of(1L, 3)), any(LocalDateTime.class));
+        verify(pedidosRepository, times(1)).insert(List.of(a.pedido(), c.pedido()));
+        verifyNoInteractions(pedidosService);
+    }
+
+    @Test
+    void processSiFallaLaReservaDelLoteVaUnoAUno() throws Exception {
+        flashSale = nuevoFlashSale(false, 10, 5);
+        var a = solicitud(1, 10.0);
+        var b = solicitud(1, 10.0);
+        when(funkoRepository.findAllById(anyIterable())).thenReturn(List.of(funko));
+        // Otro pedido fuera del lote se ha llevado parte del stock
+        when(funkoRepository.reserveStock(eq(Map.of(1L, 2)), any(LocalDateTime.class))).thenReturn(new int[]{0});
+        when(pedidosService.save(a.pedido())).thenReturn(a.pedido());
+        when(pedidosService.save(b.pedido())).thenThrow(new ProductoNotStock(1L));
+
+        flashSale.process(List.of(a, b));
+
+        assertAll(
+                () -> assertSame(a.pedido(), a.resultado().get()),
+                () -> assertInstanceOf(ProductoNotStock.class, assertThrows(ExecutionException.class, () -> b.resultado().get()).getCause())
+        );
+        verify(pedidosRepository, never()).insert(anyList());
+    }
+
+    @Test
+    void processIgnoraLasSolicitudesYaContestadas() throws Exception {
+        flashSale = nuevoFlashSale(false, 10, 5);
+        var caducada = solicitud(1, 10.0);
+        var b = solicitud(1, 10.0);
+        // Lo que hace save() cuando se agota la espera
+        assertTrue(caducada.cancelar());
+        when(funkoRepository.findAllById(anyIterable())).thenReturn(List.of(funko));
+        when(funkoRepository.reserveStock(eq(Map.of(1L, 1)), any(LocalDateTime.class))).thenReturn(new int[]{1});
+        when(pedidosRepository.insert(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        flashSale.process(List.of(caducada, b));
+
+        assertAll(
+                () -> assertTrue(caducada.resultado().isCancelled()),
+                () -> assertEquals(10.0, b.resultado().get().getTotal())
+        );
+        verify(funkoRepository, times(1)).reserveStock(eq(Map.of(1L, 1)), any(LocalDateTime.class));
+        verify(pedidosRepository, times(1)).insert(List.of(b.pedido()));
+    }
+
+    @Test
+    void saveConTiempoAgotadoNoCreaElPedidoDespues() {
+        flashSale = nuevoFlashSale(true, 10, 5, 50);
+        // Sin el hilo recolector arrancado la espera se agota antes de procesar el lote
+        assertThrows(PedidosSaturados.class, () -> flashSale.save(solicitud(1, 10.0).pedido()));
+
+        flashSale.start();
+
+        verify(funkoRepository, timeout(1000)).findAllById(anyIterable());
+        verify(funkoRepository, after(200).never()).reserveStock(anyMap(), any(LocalDateTime.class));
+        verify(pedidosRepository, never()).insert(anyList());
+        verifyNoInteractions(pedidosService);
+    }
+
+    @Test
+    void cancelarNoGanaAUnaSolicitudYaTomadaPorElLote() {
+        var tomada = solicitud(1, 10.0);
+
+        assertTrue(tomada.tomar());
+
+        assertAll(
+                () -> assertFalse(tomada.cancelar()),
+                () -> assertFalse(tomada.resultado().isCancelled())
+        );
+    }
+
+    @Test
+    void saveConTiempoAgotadoYLoteEnMarchaDevuelveElPedido() {
+        flashSale = nuevoFlashSale(true, 10, 5, 50);
+        when(funkoRepository.findAllById(anyIterable())).thenReturn(List.of(funko));
+        when(funkoRepository.reserveStock(anyMap(), any(LocalDateTime.class))).thenReturn(new int[]{1});
+        // El insert tarda más que la espera del cliente
+        when(pedidosRepository.insert(anyList())).thenAnswer(invocation -> {
+            Thread.sleep(300);
+            return invocation.getArgument(0);
+        });
+        flashSale.start();
+
+        Pedido guardado = flashSale.save(solicitud(1, 10.0).pedido());
+
+        // Se ha reservado y guardado, así que el cliente no puede recibir un error
+        assertEquals(10.0, guardado.getTotal());
+        verify(pedidosRepository, times(1)).insert(anyList());
+    }
+
+    @Test
+    void saveAgrupaPeticionesConcurrentes() throws Exception {
+        flashSale = nuevoFlashSale(true, 50, 50);
+        Funko conStock = new Funko(1L, "Funko Test", new Descripcion("SoyTest"), categoria, "soy.png", 10.0, 100, LocalDateTime.now(), LocalDateTime.now());
+        when(funkoRepository.findAllById(anyIterable())).thenReturn(List.of(conStock));
+        when(funkoRepository.reserveStock(anyMap(), any(LocalDateTime.class))).thenReturn(new int[]{1});
+        when(pedidosRepository.insert(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        flashSale.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        List<Future<Pedido>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 10; i++) {
+                var pedido = solicitud(1, 10.0).pedido();
+                futures.add(executor.submit(() -> flashSale.save(pedido)));
+            }
+            for (Future<Pedido> future : futures) {
+                assertEquals(10.0, future.get(10, TimeUnit.SECONDS).getTotal());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Diez peticiones, menos inserts que peticiones
+        verify(pedidosRepository, atMost(9)).insert(anyList());
+    }
+}
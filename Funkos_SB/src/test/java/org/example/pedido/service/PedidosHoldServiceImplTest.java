@@ -0,0 +1,166 @@
+package org.example.pedido.service;
+
+import org.example.categoria.models.Categoria;
+import org.example.funko.models.Descripcion;
+import org.example.funko.models.Funko;
+import org.example.funko.repository.FunkoRepository;
+import org.example.pedido.exceptions.PedidoHoldNotFound;
+import org.example.pedido.exceptions.ProductoNotStock;
+import org.example.pedido.models.LineaPedido;
+import org.example.pedido.models.Pedido;
+import org.example.pedido.models.PedidoHold;
+import org.example.pedido.repository.PedidoHoldsRepository;
+import org.example.pedido.repository.PedidosRepository;
+import org.example.pedido.stock.StockLedger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PedidosHoldServiceImplTest {
+    private final Categoria categoria = new Categoria(1L, "TEST", null, LocalDateTime.now(), LocalDateTime.now(), true);
+    private final Funko funko = new Funko(1L, "Funko Test", new Descripcion("SoyTest"), categoria, "soy.png", 10.0, 5, LocalDateTime.now(), LocalDateTime.now());
+    @Mock
+    private FunkoRepository funkoRepository;
+    @Mock
+    private PedidosRepository pedidosRepository;
+    @Mock
+    private PedidoHoldsRepository holdsRepository;
+    @Mock
+    private StockLedger stockLedger;
+    @Mock
+    private PedidosAnalyticsService pedidosAnalyticsService;
+
+    private PedidosHoldServiceImpl nuevoHolds() {
+        return new PedidosHoldServiceImpl(funkoRepository, pedidosRepository, holdsRepository, stockLedger,
+                pedidosAnalyticsService, new TransactionTemplate(mock(PlatformTransactionManager.class)), 10, 30, 100);
+    }
+
+    private Pedido pedido(int cantidad) {
+        Pedido pedido = new Pedido();
+        pedido.setIdUsuario(1L);
+        pedido.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(cantidad).precioProducto(10.0).build()));
+        return pedido;
+    }
+
+    private void stubReserva(int cantidad) {
+        when(funkoRepository.findAllById(anyIterable())).thenReturn(List.of(funko));
+        when(funkoRepository.reserveStock(eq(Map.of(1L, cantidad)), any(LocalDateTime.class))).thenReturn(new int[]{1});
+    }
+
+    @Test
+    void holdReservaElStockYGuardaLaRetencion() {
+        var holds = nuevoHolds();
+        var pedido = pedido(2);
+        stubReserva(2);
+
+        var dto = holds.hold(pedido, 60);
+
+        ArgumentCaptor<PedidoHold> captor = ArgumentCaptor.forClass(PedidoHold.class);
+        verify(holdsRepository).save(captor.capture());
+        assertAll(
+                () -> assertEquals(pedido.getId().toHexString(), dto.id()),
+                () -> assertEquals(20.0, dto.total()),
+                // Se limita al máximo configurado
+                () -> assertTrue(dto.expiresAt().isBefore(LocalDateTime.now().plusMinutes(31))),
+                () -> assertEquals("1:2", captor.getValue().getCantidades())
+        );
+        verify(pedidosRepository, never()).save(any(Pedido.class));
+    }
+
+    @Test
+    void holdSinStockNoReservaNada() {
+        var holds = nuevoHolds();
+        when(funkoRepository.findAllById(anyIterable())).thenReturn(List.of(funko));
+
+        assertThrows(ProductoNotStock.class, () -> holds.hold(pedido(6), null));
+        verify(funkoRepository, never()).reserveStock(anyMap(), any(LocalDateTime.class));
+        verify(holdsRepository, never()).save(any(PedidoHold.class));
+    }
+
+    @Test
+    void confirmGuardaElPedidoSinVolverATocarElStock() {
+        var holds = nuevoHolds();
+        var pedido = pedido(2);
+        stubReserva(2);
+        var dto = holds.hold(pedido, null);
+        when(pedidosRepository.save(pedido)).thenReturn(pedido);
+
+        var result = holds.confirm(dto.id());
+
+        assertEquals(pedido, result);
+        verify(holdsRepository).deleteById(dto.id());
+        verify(funkoRepository, times(1)).reserveStock(anyMap(), any(LocalDateTime.class));
+        verify(funkoRepository, never()).returnStock(anyMap(), any(LocalDateTime.class));
+        verify(pedidosAnalyticsService).registrar(List.of(pedido));
+        // Una retención solo se confirma una vez
+        assertThrows(PedidoHoldNotFound.class, () -> holds.confirm(dto.id()));
+    }
+
+    @Test
+    void cancelDevuelveElStock() {
+        var holds = nuevoHolds();
+        var pedido = pedido(2);
+        stubReserva(2);
+        var dto = holds.hold(pedido, null);
+        when(funkoRepository.returnStock(eq(Map.of(1L, 2)), any(LocalDateTime.class))).thenReturn(new int[]{1});
+
+        holds.cancel(dto.id());
+
+        verify(funkoRepository).returnStock(eq(Map.of(1L, 2)), any(LocalDateTime.class));
+        verify(holdsRepository).deleteAllByIdInBatch(Set.of(dto.id()));
+        assertThrows(PedidoHoldNotFound.class, () -> holds.cancel(dto.id()));
+    }
+
+    @Test
+    void sweepDevuelveLasCaducadasEnUnSoloBatch() {
+        var holds = nuevoHolds();
+        when(funkoRepository.findAllById(anyIterable())).thenReturn(List.of(funko));
+        when(funkoRepository.reserveStock(anyMap(), any(LocalDateTime.class))).thenReturn(new int[]{1});
+        when(funkoRepository.returnStock(eq(Map.of(1L, 3)), any(LocalDateTime.class))).thenReturn(new int[]{1});
+        var primera = holds.hold(pedido(1), 1);
+        var segunda = holds.hold(pedido(2), 1);
+        var confirmada = holds.hold(pedido(1), 1);
+        when(pedidosRepository.save(any(Pedido.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        holds.confirm(confirmada.id());
+
+        // Antes de tiempo no caduca nada
+        holds.sweep(System.currentTimeMillis());
+        verify(funkoRepository, never()).returnStock(anyMap(), any(LocalDateTime.class));
+
+        holds.sweep(System.currentTimeMillis() + 61_000);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<String>> ids = ArgumentCaptor.forClass(Collection.class);
+        verify(funkoRepository, times(1)).returnStock(eq(Map.of(1L, 3)), any(LocalDateTime.class));
+        verify(holdsRepository).deleteAllByIdInBatch(ids.capture());
+        assertEquals(Set.of(primera.id(), segunda.id()), Set.copyOf(ids.getValue()));
+        assertThrows(PedidoHoldNotFound.class, () -> holds.confirm(primera.id()));
+    }
+
+    @Test
+    void releaseHuerfanasDevuelveLoQueQuedoAlParar() {
+        var holds = nuevoHolds();
+        var huerfanas = List.of(new PedidoHold("a", "1:2,2:1", LocalDateTime.now()), new PedidoHold("b", "1:1", LocalDateTime.now()));
+        when(holdsRepository.findAll()).thenReturn(huerfanas);
+        when(funkoRepository.returnStock(eq(Map.of(1L, 3, 2L, 1)), any(LocalDateTime.class))).thenReturn(new int[]{1, 1});
+
+        holds.releaseHuerfanas();
+
+        verify(holdsRepository).deleteAllInBatch(huerfanas);
+    }
+}
@@ -0,0 +1,204 @@
+package org.example.pedido.service;
+
+import org.example.pedido.exceptions.PedidoIdempotenciaConflicto;
+import org.example.pedido.exceptions.PedidoIdempotenciaEnCurso;
+import org.example.pedido.exceptions.ProductoNotStock;
+import org.example.pedido.models.LineaPedido;
+import org.example.pedido.models.Pedido;
+import org.example.pedido.models.PedidoIdempotencia;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PedidosIdempotenciaServiceImplTest {
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private PedidosIdempotenciaServiceImpl nuevoServicio() {
+        return new PedidosIdempotenciaServiceImpl(mongoTemplate, 1000, 24, 5000, 60000);
+    }
+
+    private Pedido pedido(int cantidad) {
+        Pedido pedido = new Pedido();
+        pedido.setIdUsuario(1L);
+        pedido.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(cantidad).precioProducto(10.0).build()));
+        return pedido;
+    }
+
+    @Test
+    void claveRepetidaDevuelveElMismoPedidoSinRepetirElAlta() {
+        var servicio = nuevoServicio();
+        var altas = new AtomicInteger();
+        Pedido creado = pedido(2);
+
+        var primero = servicio.save("clave", creado, () -> {
+            altas.incrementAndGet();
+            return creado;
+        });
+        // El reintento trae un id nuevo pero el mismo contenido
+        var segundo = servicio.save("clave", pedido(2), () -> {
+            altas.incrementAndGet();
+            return pedido(2);
+        });
+
+        assertAll(
+                () -> assertEquals(1, altas.get()),
+                () -> assertFalse(primero.repetido()),
+                () -> assertTrue(segundo.repetido()),
+                () -> assertSame(creado, segundo.pedido())
+        );
+        // Solo la primera ejecución escribe en Mongo
+        verify(mongoTemplate, times(1)).insert(any(PedidoIdempotencia.class));
+        verify(mongoTemplate, times(1)).updateFirst(any(Query.class), any(Update.class), eq(PedidoIdempotencia.class));
+    }
+
+    @Test
+    void claveRepetidaConOtroPedidoEsUnConflicto() {
+        var servicio = nuevoServicio();
+        servicio.save("clave", pedido(2), () -> pedido(2));
+
+        assertThrows(PedidoIdempotenciaConflicto.class, () -> servicio.save("clave", pedido(3), () -> pedido(3)));
+    }
+
+    @Test
+    void duplicadosConcurrentesEsperanALaPrimeraEjecucion() throws Exception {
+        var servicio = nuevoServicio();
+        var altas = new AtomicInteger();
+        var dentro = new CountDownLatch(1);
+        var soltar = new CountDownLatch(1);
+        Pedido creado = pedido(2);
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var primero = executor.submit(() -> servicio.save("clave", creado, () -> {
+                altas.incrementAndGet();
+                dentro.countDown();
+                try {
+                    soltar.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return creado;
+            }));
+            assertTrue(dentro.await(5, TimeUnit.SECONDS));
+            var segundo = executor.submit(() -> servicio.save("clave", pedido(2), () -> {
+                altas.incrementAndGet();
+                return pedido(2);
+            }));
+            soltar.countDown();
+
+            assertAll(
+                    () -> assertSame(creado, primero.get(5, TimeUnit.SECONDS).pedido()),
+                    () -> assertSame(creado, segundo.get(5, TimeUnit.SECONDS).pedido()),
+                    () -> assertEquals(1, altas.get())
+            );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void altaFallidaLiberaLaClave() {
+        var servicio = nuevoServicio();
+
+        assertThrows(ProductoNotStock.class, () -> servicio.save("clave", pedido(2), () -> {
+            throw new ProductoNotStock(1L);
+        }));
+        var result = servicio.save("clave", pedido(2), () -> pedido(2));
+
+        assertFalse(result.repetido());
+        verify(mongoTemplate, times(1)).remove(any(Query.class), eq(PedidoIdempotencia.class));
+    }
+
+    @Test
+    void claveCompletadaEnMongoNoRepiteElAlta() {
+        var servicio = nuevoServicio();
+        Pedido creado = pedido(2);
+        when(mongoTemplate.insert(any(PedidoIdempotencia.class))).thenThrow(new DuplicateKeyException("duplicada"));
+        when(mongoTemplate.findById("clave", PedidoIdempotencia.class)).thenReturn(PedidoIdempotencia.builder()
+                .id("clave")
+                .huella(PedidosIdempotenciaServiceImpl.huella(creado))
+                .estado(PedidoIdempotencia.Estado.COMPLETADO)
+                .pedido(creado)
+                .build());
+
+        var result = servicio.save("clave", pedido(2), () -> fail("No se debe repetir el alta"));
+
+        assertAll(
+                () -> assertTrue(result.repetido()),
+                () -> assertSame(creado, result.pedido())
+        );
+    }
+
+    @Test
+    void claveEnCursoEnOtraInstanciaDevuelveConflicto() {
+        var servicio = nuevoServicio();
+        when(mongoTemplate.insert(any(PedidoIdempotencia.class))).thenThrow(new DuplicateKeyException("duplicada"));
+        when(mongoTemplate.findById("clave", PedidoIdempotencia.class)).thenReturn(PedidoIdempotencia.builder()
+                .id("clave")
+                .huella(PedidosIdempotenciaServiceImpl.huella(pedido(2)))
+                .estado(PedidoIdempotencia.Estado.EN_CURSO)
+                .build());
+
+        assertThrows(PedidoIdempotenciaEnCurso.class, () -> servicio.save("clave", pedido(2), () -> pedido(2)));
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(PedidoIdempotencia.class));
+    }
+
+    @Test
+    void claveEnCursoCaducadaSeRetoma() {
+        var servicio = nuevoServicio();
+        Pedido creado = pedido(2);
+        when(mongoTemplate.insert(any(PedidoIdempotencia.class))).thenThrow(new DuplicateKeyException("duplicada"));
+        // La instancia que la bloqueó cayó hace rato
+        var caida = PedidoIdempotencia.builder()
+                .id("clave")
+                .huella(PedidosIdempotenciaServiceImpl.huella(creado))
+                .estado(PedidoIdempotencia.Estado.EN_CURSO)
+                .createdAt(LocalDateTime.now().minusMinutes(10))
+                .bloqueadoHasta(LocalDateTime.now().minusMinutes(8))
+                .build();
+        when(mongoTemplate.findById("clave", PedidoIdempotencia.class)).thenReturn(caida);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), eq(PedidoIdempotencia.class))).thenReturn(caida);
+
+        var result = servicio.save("clave", pedido(2), () -> creado);
+
+        assertAll(
+                () -> assertFalse(result.repetido()),
+                () -> assertSame(creado, result.pedido())
+        );
+        verify(mongoTemplate, times(1)).updateFirst(any(Query.class), any(Update.class), eq(PedidoIdempotencia.class));
+    }
+
+    @Test
+    void claveEnCursoConOtroPedidoEsUnConflictoSinLiberarla() {
+        var servicio = nuevoServicio();
+        when(mongoTemplate.insert(any(PedidoIdempotencia.class))).thenThrow(new DuplicateKeyException("duplicada"));
+        when(mongoTemplate.findById("clave", PedidoIdempotencia.class)).thenReturn(PedidoIdempotencia.builder()
+                .id("clave")
+                .huella(PedidosIdempotenciaServiceImpl.huella(pedido(5)))
+                .estado(PedidoIdempotencia.Estado.EN_CURSO)
+                .bloqueadoHasta(LocalDateTime.now().minusMinutes(1))
+                .build());
+
+        assertThrows(PedidoIdempotenciaConflicto.class, () -> servicio.save("clave", pedido(2), () -> fail("No se debe hacer el alta")));
+        verify(mongoTemplate, never()).findAndModify(any(Query.class), any(Update.class), eq(PedidoIdempotencia.class));
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(PedidoIdempotencia.class));
+    }
+}
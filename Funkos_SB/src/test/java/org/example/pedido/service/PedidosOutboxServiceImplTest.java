@@ -0,0 +1,254 @@
+package org.example.pedido.service;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.example.pedido.exceptions.PedidoNotFound;
+import org.example.pedido.exceptions.ProductoNotStock;
+import org.example.pedido.models.LineaPedido;
+import org.example.pedido.models.Pedido;
+import org.example.pedido.models.PedidoOutbox;
+import org.example.pedido.repository.PedidoOutboxRepository;
+import org.example.pedido.repository.PedidosRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PedidosOutboxServiceImplTest {
+    @Mock
+    private PedidoOutboxRepository outboxRepository;
+    @Mock
+    private PedidosRepository pedidosRepository;
+    @Mock
+    private PedidosService pedidosService;
+    @Mock
+    private PedidosAnalyticsService pedidosAnalyticsService;
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private PedidosOutboxServiceImpl nuevoOutbox() {
+        return new PedidosOutboxServiceImpl(outboxRepository, pedidosRepository, pedidosService, pedidosAnalyticsService, mongoTemplate,
+                false, 1, 200, 3, 30000, 1000);
+    }
+
+    private PedidoOutbox entrada(int intentos) {
+        Pedido pedido = new Pedido();
+        pedido.setIdUsuario(1L);
+        pedido.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(10.0).build()));
+        return PedidoOutbox.builder()
+                .id(pedido.getId())
+                .pedido(pedido)
+                .estado(PedidoOutbox.Estado.PROCESANDO)
+                .intentos(intentos)
+                .build();
+    }
+
+    private Document marcado(PedidoOutbox entrada) {
+        ArgumentCaptor<Update> captor = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), captor.capture(), eq(PedidoOutbox.class));
+        return (Document) captor.getValue().getUpdateObject().get("$set");
+    }
+
+    @Test
+    void acceptGuardaElPedidoConSuMismoId() {
+        var outbox = nuevoOutbox();
+        Pedido pedido = new Pedido();
+        when(outboxRepository.insert(any(PedidoOutbox.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        var result = outbox.accept(pedido);
+
+        assertAll(
+                () -> assertEquals(pedido.getId(), result.getId()),
+                () -> assertEquals(PedidoOutbox.Estado.PENDIENTE, result.getEstado()),
+                () -> assertEquals(0, result.getIntentos())
+        );
+        verify(pedidosService, never()).reservePedido(any());
+    }
+
+    @Test
+    void acceptPedidoRepetidoDevuelveElExistente() {
+        var outbox = nuevoOutbox();
+        var existente = entrada(1);
+        when(outboxRepository.insert(any(PedidoOutbox.class))).thenThrow(new DuplicateKeyException("duplicado"));
+        when(outboxRepository.findById(existente.getId())).thenReturn(Optional.of(existente));
+
+        var result = outbox.accept(existente.getPedido());
+
+        assertSame(existente, result);
+    }
+
+    @Test
+    void getEstadoNoExisteLanzaPedidoNotFound() {
+        var outbox = nuevoOutbox();
+        var id = new ObjectId();
+        when(outboxRepository.findById(id)).thenReturn(Optional.empty());
+
+        assertThrows(PedidoNotFound.class, () -> outbox.getEstado(id));
+    }
+
+    @Test
+    void processReservaGuardaYCompleta() {
+        var outbox = nuevoOutbox();
+        var entrada = entrada(1);
+        when(pedidosService.reservePedido(entrada.getPedido())).thenReturn(entrada.getPedido());
+
+        outbox.process(entrada);
+
+        verify(pedidosRepository).save(entrada.getPedido());
+        assertEquals(PedidoOutbox.Estado.COMPLETADO, marcado(entrada).get("estado"));
+        verify(pedidosAnalyticsService).registrar(List.of(entrada.getPedido()));
+    }
+
+    @Test
+    void processErrorDeNegocioMarcaFallidoSinReintentar() {
+        var outbox = nuevoOutbox();
+        var entrada = entrada(1);
+        when(pedidosService.reservePedido(entrada.getPedido())).thenThrow(new ProductoNotStock(1L));
+
+        outbox.process(entrada);
+
+        verify(pedidosRepository, never()).save(any(Pedido.class));
+        var set = marcado(entrada);
+        assertAll(
+                () -> assertEquals(PedidoOutbox.Estado.FALLIDO, set.get("estado")),
+                () -> assertNotNull(set.get("error"))
+        );
+    }
+
+    @Test
+    void processErrorTransitorioReintentaMasTarde() {
+        var outbox = nuevoOutbox();
+        var entrada = entrada(2);
+        when(pedidosService.reservePedido(entrada.getPedido())).thenThrow(new DataAccessResourceFailureException("caido"));
+
+        var antes = LocalDateTime.now();
+        outbox.process(entrada);
+
+        var set = marcado(entrada);
+        assertAll(
+                () -> assertEquals(PedidoOutbox.Estado.PENDIENTE, set.get("estado")),
+                // Segundo intento: espera de 2 * backoff
+                () -> assertTrue(((LocalDateTime) set.get("nextAttemptAt")).isAfter(antes.plusNanos(1_900_000_000L)))
+        );
+    }
+
+    @Test
+    void processAgotaLosIntentosYMarcaFallido() {
+        var outbox = nuevoOutbox();
+        var entrada = entrada(3);
+        when(pedidosService.reservePedido(entrada.getPedido())).thenThrow(new DataAccessResourceFailureException("caido"));
+
+        outbox.process(entrada);
+
+        assertEquals(PedidoOutbox.Estado.FALLIDO, marcado(entrada).get("estado"));
+    }
+
+    @Test
+    void processFallidoTrasReservarDevuelveElStock() {
+        var outbox = nuevoOutbox();
+        var entrada = entrada(3);
+        // El stock se reservó pero el pedido no se llega a guardar
+        when(pedidosService.reservePedido(entrada.getPedido())).thenReturn(entrada.getPedido());
+        when(pedidosRepository.save(entrada.getPedido())).thenThrow(new DataAccessResourceFailureException("caido"));
+
+        outbox.process(entrada);
+
+        verify(pedidosService).releasePedido(entrada.getPedido());
+        assertEquals(PedidoOutbox.Estado.FALLIDO, marcado(entrada).get("estado"));
+    }
+
+    @Test
+    void processSiNoSePuedeDevolverElStockNoMarcaFallido() {
+        var outbox = nuevoOutbox();
+        var entrada = entrada(3);
+        when(pedidosService.reservePedido(entrada.getPedido())).thenThrow(new DataAccessResourceFailureException("caido"));
+        doThrow(new DataAccessResourceFailureException("caido")).when(pedidosService).releasePedido(entrada.getPedido());
+
+        outbox.process(entrada);
+
+        assertEquals(PedidoOutbox.Estado.PENDIENTE, marcado(entrada).get("estado"));
+    }
+
+    @Test
+    void processAgotadoSoloDevuelveElStock() {
+        var outbox = nuevoOutbox();
+        var entrada = entrada(4);
+
+        outbox.process(entrada);
+
+        verify(pedidosService, never()).reservePedido(any(Pedido.class));
+        verify(pedidosService).releasePedido(entrada.getPedido());
+        assertEquals(PedidoOutbox.Estado.FALLIDO, marcado(entrada).get("estado"));
+    }
+
+    @Test
+    void processPedidoYaGuardadoSoloMarcaCompletado() {
+        var outbox = nuevoOutbox();
+        var entrada = entrada(2);
+        // El intento anterior lo guardó y registró pero cayó antes de marcarlo
+        when(pedidosRepository.existsById(entrada.getId())).thenReturn(true);
+
+        outbox.process(entrada);
+
+        verify(pedidosService, never()).reservePedido(any(Pedido.class));
+        verify(pedidosAnalyticsService, never()).registrar(anyList());
+        verify(pedidosRepository, never()).save(any(Pedido.class));
+        assertEquals(PedidoOutbox.Estado.COMPLETADO, marcado(entrada).get("estado"));
+    }
+
+    @Test
+    void processAgotadoConElPedidoGuardadoNoDevuelveElStock() {
+        var outbox = nuevoOutbox();
+        var entrada = entrada(4);
+        when(pedidosRepository.existsById(entrada.getId())).thenReturn(true);
+
+        outbox.process(entrada);
+
+        verify(pedidosService, never()).releasePedido(any(Pedido.class));
+        assertEquals(PedidoOutbox.Estado.COMPLETADO, marcado(entrada).get("estado"));
+    }
+
+    @Test
+    void processSaveConRespuestaPerdidaNoDevuelveElStock() {
+        var outbox = nuevoOutbox();
+        var entrada = entrada(3);
+        when(pedidosService.reservePedido(entrada.getPedido())).thenReturn(entrada.getPedido());
+        // El save llega a Mongo pero la respuesta no
+        when(pedidosRepository.save(entrada.getPedido())).thenThrow(new DataAccessResourceFailureException("caido"));
+        when(pedidosRepository.existsById(entrada.getId())).thenReturn(false, true);
+
+        outbox.process(entrada);
+
+        verify(pedidosService, never()).releasePedido(any(Pedido.class));
+        assertEquals(PedidoOutbox.Estado.COMPLETADO, marcado(entrada).get("estado"));
+    }
+
+    @Test
+    void processFalloEnLasEstadisticasNoVuelveAProcesarElPedido() {
+        var outbox = nuevoOutbox();
+        var entrada = entrada(1);
+        when(pedidosService.reservePedido(entrada.getPedido())).thenReturn(entrada.getPedido());
+        doThrow(new DataAccessResourceFailureException("caido")).when(pedidosAnalyticsService).registrar(anyList());
+
+        outbox.process(entrada);
+
+        verify(pedidosRepository, times(1)).save(entrada.getPedido());
+        assertEquals(PedidoOutbox.Estado.COMPLETADO, marcado(entrada).get("estado"));
+    }
+}
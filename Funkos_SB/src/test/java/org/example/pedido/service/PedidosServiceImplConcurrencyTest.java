@@ -0,0 +1,115 @@
+package org.example.pedido.service;
+
+import org.example.categoria.models.Categoria;
+import org.example.categoria.repository.CategoriasRepository;
+import org.example.funko.models.Descripcion;
+import org.example.funko.models.Funko;
+import org.example.funko.repository.FunkoRepository;
+import org.example.pedido.exceptions.ProductoNotStock;
+import org.example.pedido.models.LineaPedido;
+import org.example.pedido.models.Pedido;
+import org.example.pedido.repository.PedidosRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Muchos pedidos a la vez sobre el mismo funko contra el H2 real:
+ * nunca se pueden vender más unidades de las que hay en stock
+ */
+// Base de datos propia y con espera de bloqueo holgada: las reservas compiten por la misma fila
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:funkosb-stress;LOCK_TIMEOUT=10000")
+class PedidosServiceImplConcurrencyTest {
+    private static final int STOCK = 25;
+    private static final int THREADS = 16;
+    private static final int PEDIDOS = 100;
+
+    @Autowired
+    private PedidosService pedidosService;
+    @Autowired
+    private FunkoRepository funkoRepository;
+    @Autowired
+    private CategoriasRepository categoriasRepository;
+    @MockBean
+    private PedidosRepository pedidosRepository;
+    @MockBean
+    private PedidosAnalyticsService pedidosAnalyticsService;
+
+    private Categoria categoria;
+    private Funko funko;
+
+    @BeforeEach
+    void setUp() {
+        categoria = categoriasRepository.save(new Categoria(null, "STRESS", null, LocalDateTime.now(), LocalDateTime.now(), true));
+        funko = funkoRepository.save(new Funko(null, "Funko Stress", new Descripcion("Stress"), categoria, "soy.png", 10.0, STOCK, LocalDateTime.now(), LocalDateTime.now()));
+        when(pedidosRepository.save(any(Pedido.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        funkoRepository.deleteById(funko.getId());
+        categoriasRepository.deleteById(categoria.getId());
+    }
+
+    private Pedido pedido(int cantidad) {
+        Pedido pedido = new Pedido();
+        pedido.setIdUsuario(1L);
+        pedido.setLineasPedido(List.of(LineaPedido.builder()
+                .idProducto(funko.getId())
+                .cantidad(cantidad)
+                .precioProducto(10.0)
+                .build()));
+        return pedido;
+    }
+
+    @Test
+    void saveNoVendeMasDelStockDisponible() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch salida = new CountDownLatch(1);
+        AtomicInteger vendidos = new AtomicInteger();
+        AtomicInteger rechazados = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < PEDIDOS; i++) {
+                // Pedidos de 1 y 2 unidades mezclados
+                int cantidad = 1 + i % 2;
+                futures.add(executor.submit(() -> {
+                    salida.await();
+                    try {
+                        pedidosService.save(pedido(cantidad));
+                        vendidos.addAndGet(cantidad);
+                    } catch (ProductoNotStock e) {
+                        rechazados.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            salida.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int stockFinal = funkoRepository.findById(funko.getId()).orElseThrow().getStock();
+        assertAll(
+                () -> assertTrue(stockFinal >= 0, "El stock no puede quedar en negativo"),
+                () -> assertEquals(STOCK, vendidos.get() + stockFinal, "Lo vendido más lo que queda debe ser el stock inicial"),
+                () -> assertTrue(rechazados.get() > 0, "Con más demanda que stock algún pedido debe rechazarse")
+        );
+    }
+}
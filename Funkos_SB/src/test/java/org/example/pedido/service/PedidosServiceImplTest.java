@@ -5,12 +5,17 @@ import org.example.categoria.models.Categoria;
 import org.example.funko.models.Descripcion;
 import org.example.funko.models.Funko;
 import org.example.funko.repository.FunkoRepository;
+import org.example.pedido.dto.PedidoResumen;
 import org.example.pedido.exceptions.*;
 import org.example.pedido.models.LineaPedido;
 import org.example.pedido.models.Pedido;
+import org.example.pedido.models.PedidoReserva;
+import org.example.pedido.repository.PedidoReservasRepository;
 import org.example.pedido.repository.PedidosRepository;
+import org.example.pedido.stock.StockLedger;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -22,7 +27,9 @@ import org.springframework.data.domain.Pageable;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -31,11 +38,17 @@ import static org.mockito.Mockito.*;
 class PedidosServiceImplTest {
     private final Descripcion descripcion = new Descripcion("SoyTest");
     private final Categoria categoria = new Categoria(null, "TEST", null, LocalDateTime.now(), LocalDateTime.now(), true);
-    private final Funko funko = new Funko(null, "Funko Test", descripcion, categoria,"soy.png", 19.99 , 5,  LocalDateTime.now(), LocalDateTime.now());
+    private final Funko funko = new Funko(1L, "Funko Test", descripcion, categoria,"soy.png", 19.99 , 5,  LocalDateTime.now(), LocalDateTime.now());
     @Mock
     private PedidosRepository pedidosRepository;
     @Mock
     private FunkoRepository funkoRepository;
+    @Mock
+    private StockLedger stockLedger;
+    @Mock
+    private PedidoReservasRepository pedidoReservasRepository;
+    @Mock
+    private PedidosAnalyticsService pedidosAnalyticsService;
 
     @InjectMocks
     private PedidosServiceImpl pedidosService;
@@ -44,14 +57,16 @@ class PedidosServiceImplTest {
     @Test
     void findAll_ReturnsPageOfPedidos() {
         // Arrange
-        List<Pedido> pedidos = List.of(new Pedido(), new Pedido());
-        Page<Pedido> expectedPage = new PageImpl<>(pedidos);
+        List<PedidoResumen> pedidos = List.of(
+                new PedidoResumen(new ObjectId().toHexString(), 1L, 1, 10.0, LocalDateTime.now(), LocalDateTime.now()),
+                new PedidoResumen(new ObjectId().toHexString(), 2L, 2, 20.0, LocalDateTime.now(), LocalDateTime.now()));
+        Page<PedidoResumen> expectedPage = new PageImpl<>(pedidos);
         Pageable pageable = PageRequest.of(0, 10);
 
-        when(pedidosRepository.findAll(pageable)).thenReturn(expectedPage);
+        when(pedidosRepository.findResumenBy(pageable)).thenReturn(expectedPage);
 
         // Act
-        Page<Pedido> result = pedidosService.findAll(pageable);
+        Page<PedidoResumen> result = pedidosService.findAll(pageable);
 
         // Assert
         assertAll(
@@ -61,7 +76,8 @@ class PedidosServiceImplTest {
         );
 
         // Verify
-        verify(pedidosRepository, times(1)).findAll(pageable);
+        verify(pedidosRepository, times(1)).findResumenBy(pageable);
+        verify(pedidosRepository, never()).findAll(any(Pageable.class));
     }
 
     @Test
@@ -100,11 +116,11 @@ class PedidosServiceImplTest {
         Long idUsuario = 1L;
         Pageable pageable = mock(Pageable.class);
         @SuppressWarnings("unchecked")
-        Page<Pedido> expectedPage = mock(Page.class);
-        when(pedidosRepository.findByIdUsuario(idUsuario, pageable)).thenReturn(expectedPage);
+        Page<PedidoResumen> expectedPage = mock(Page.class);
+        when(pedidosRepository.findResumenByIdUsuario(idUsuario, pageable)).thenReturn(expectedPage);
 
         // Act
-        Page<Pedido> resultPage = pedidosService.findByIdUsuario(idUsuario, pageable);
+        Page<PedidoResumen> resultPage = pedidosService.findByIdUsuario(idUsuario, pageable);
 
         // Assert
         assertEquals(expectedPage, resultPage);
@@ -127,7 +143,8 @@ class PedidosServiceImplTest {
         pedidoToSave.setLineasPedido(List.of(lineaPedido));
 
         when(pedidosRepository.save(any(Pedido.class))).thenReturn(pedidoToSave);
-        when(funkoRepository.findById(anyLong())).thenReturn(Optional.of(funko));
+        when(funkoRepository.findAllById(anyIterable())).thenReturn(List.of(funko));
+        when(funkoRepository.reserveStock(eq(Map.of(1L, 2)), any(LocalDateTime.class))).thenReturn(new int[]{1});
 
         // Act
         Pedido resultPedido = pedidosService.save(pedido);
@@ -141,7 +158,32 @@ class PedidosServiceImplTest {
 
         // Verify
         verify(pedidosRepository).save(any(Pedido.class));
-        verify(funkoRepository, times(2)).findById(anyLong());
+        verify(funkoRepository, times(1)).findAllById(anyIterable());
+        verify(funkoRepository, times(1)).reserveStock(eq(Map.of(1L, 2)), any(LocalDateTime.class));
+        verify(funkoRepository, never()).save(any());
+        verify(pedidosAnalyticsService, times(1)).registrar(List.of(pedidoToSave));
+    }
+
+    @Test
+    void testSave_SinStockAlReservar_NoGuardaPedido() {
+        // Arrange
+        Pedido pedido = new Pedido();
+        LineaPedido lineaPedido = LineaPedido.builder()
+                .idProducto(1L)
+                .cantidad(2)
+                .precioProducto(19.99)
+                .build();
+        pedido.setLineasPedido(List.of(lineaPedido));
+
+        // Otro pedido se ha llevado el stock entre la comprobación y la reserva
+        when(funkoRepository.findAllById(anyIterable())).thenReturn(List.of(funko));
+        when(funkoRepository.reserveStock(eq(Map.of(1L, 2)), any(LocalDateTime.class))).thenReturn(new int[]{0});
+
+        // Act & Assert
+        assertThrows(ProductoNotStock.class, () -> pedidosService.save(pedido));
+
+        // Verify
+        verify(pedidosRepository, never()).save(any(Pedido.class));
     }
 
     @Test
@@ -154,7 +196,7 @@ class PedidosServiceImplTest {
 
         // Verify
         verify(pedidosRepository, never()).save(any(Pedido.class));
-        verify(funkoRepository, never()).findById(anyLong());
+        verify(funkoRepository, never()).findAllById(anyIterable());
     }
 
     @Test
@@ -206,7 +248,6 @@ class PedidosServiceImplTest {
 
         when(pedidosRepository.findById(idPedido)).thenReturn(Optional.of(pedidoToUpdate));
         when(pedidosRepository.save(any(Pedido.class))).thenReturn(pedidoToUpdate);
-        when(funkoRepository.findById(anyLong())).thenReturn(Optional.of(funko));
 
         // Act
         Pedido resultPedido = pedidosService.update(idPedido, pedido);
@@ -215,13 +256,88 @@ class PedidosServiceImplTest {
         assertAll(
                 () -> assertEquals(pedidoToUpdate, resultPedido),
                 () -> assertEquals(pedidoToUpdate.getLineasPedido(), resultPedido.getLineasPedido()),
-                () -> assertEquals(pedidoToUpdate.getLineasPedido().size(), resultPedido.getLineasPedido().size())
+                () -> assertEquals(pedidoToUpdate.getLineasPedido().size(), resultPedido.getLineasPedido().size()),
+                () -> assertEquals(idPedido, pedido.getId())
         );
 
-        // Verify
+        // Verify: nada cambia, así que ni se leen productos ni se toca el stock
         verify(pedidosRepository).findById(idPedido);
         verify(pedidosRepository).save(any(Pedido.class));
-        verify(funkoRepository, times(3)).findById(anyLong());
+        verify(funkoRepository, never()).findAllById(anyIterable());
+        verify(funkoRepository, never()).reserveStock(anyMap(), any(LocalDateTime.class));
+        verify(funkoRepository, never()).returnStock(anyMap(), any(LocalDateTime.class));
+    }
+
+    @Test
+    void testUpdate_SoloAplicaLasDiferenciasEnUnBatch() {
+        Funko otro = new Funko(2L, "Funko Otro", descripcion, categoria, "otro.png", 5.0, 10, LocalDateTime.now(), LocalDateTime.now());
+        ObjectId idPedido = new ObjectId();
+        Pedido pedidoToUpdate = new Pedido();
+        pedidoToUpdate.setLineasPedido(List.of(
+                LineaPedido.builder().idProducto(1L).cantidad(3).precioProducto(19.99).build(),
+                LineaPedido.builder().idProducto(2L).cantidad(1).precioProducto(5.0).build(),
+                LineaPedido.builder().idProducto(3L).cantidad(4).precioProducto(1.0).build()));
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(
+                LineaPedido.builder().idProducto(1L).cantidad(1).precioProducto(19.99).build(),
+                LineaPedido.builder().idProducto(2L).cantidad(3).precioProducto(5.0).build(),
+                LineaPedido.builder().idProducto(3L).cantidad(4).precioProducto(1.0).build()));
+
+        when(pedidosRepository.findById(idPedido)).thenReturn(Optional.of(pedidoToUpdate));
+        when(pedidosRepository.save(any(Pedido.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(funkoRepository.findAllById(Set.of(2L))).thenReturn(List.of(otro));
+        when(funkoRepository.reserveStock(eq(Map.of(1L, -2, 2L, 2)), any(LocalDateTime.class))).thenReturn(new int[]{1, 1});
+
+        // Act
+        Pedido result = pedidosService.update(idPedido, pedido);
+
+        // Assert
+        assertAll(
+                () -> assertEquals(8, result.getTotalItems()),
+                () -> assertEquals(19.99 + 15.0 + 4.0, result.getTotal(), 0.001),
+                () -> assertEquals(pedidoToUpdate.getCreatedAt(), result.getCreatedAt())
+        );
+
+        // Verify: el producto 3 no cambia y no se toca
+        verify(funkoRepository, times(1)).reserveStock(eq(Map.of(1L, -2, 2L, 2)), any(LocalDateTime.class));
+        verify(funkoRepository, never()).returnStock(anyMap(), any(LocalDateTime.class));
+    }
+
+    @Test
+    void testUpdate_SinStockParaLaDiferencia_NoGuarda() {
+        ObjectId idPedido = new ObjectId();
+        Pedido pedidoToUpdate = new Pedido();
+        pedidoToUpdate.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(19.99).build()));
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(8).precioProducto(19.99).build()));
+
+        when(pedidosRepository.findById(idPedido)).thenReturn(Optional.of(pedidoToUpdate));
+        when(funkoRepository.findAllById(Set.of(1L))).thenReturn(List.of(funko));
+
+        // Act & Assert: se piden 6 más y solo quedan 5
+        assertThrows(ProductoNotStock.class, () -> pedidosService.update(idPedido, pedido));
+
+        // Verify
+        verify(funkoRepository, never()).reserveStock(anyMap(), any(LocalDateTime.class));
+        verify(pedidosRepository, never()).save(any(Pedido.class));
+    }
+
+    @Test
+    void testUpdate_PrecioCambiadoEnLineaNueva_LanzaProductoBadPrice() {
+        ObjectId idPedido = new ObjectId();
+        Pedido pedidoToUpdate = new Pedido();
+        pedidoToUpdate.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(19.99).build()));
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(1.0).build()));
+
+        when(pedidosRepository.findById(idPedido)).thenReturn(Optional.of(pedidoToUpdate));
+        when(funkoRepository.findAllById(Set.of(1L))).thenReturn(List.of(funko));
+
+        // Act & Assert
+        assertThrows(ProductoBadPrice.class, () -> pedidosService.update(idPedido, pedido));
+
+        // Verify
+        verify(pedidosRepository, never()).save(any(Pedido.class));
     }
 
     @Test
@@ -237,7 +353,60 @@ class PedidosServiceImplTest {
         // Verify
         verify(pedidosRepository).findById(idPedido);
         verify(pedidosRepository, never()).save(any(Pedido.class));
-        verify(funkoRepository, never()).findById(anyLong());
+        verify(funkoRepository, never()).findAllById(anyIterable());
+    }
+
+    @Test
+    void testReservePedido_ReservaStockYDejaMarca() {
+        // Arrange
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(LineaPedido.builder()
+                .idProducto(1L)
+                .cantidad(2)
+                .precioProducto(19.99)
+                .build()));
+
+        when(pedidoReservasRepository.existsById(pedido.getId().toHexString())).thenReturn(false);
+        when(funkoRepository.findAllById(anyIterable())).thenReturn(List.of(funko));
+        when(funkoRepository.reserveStock(eq(Map.of(1L, 2)), any(LocalDateTime.class))).thenReturn(new int[]{1});
+
+        // Act
+        Pedido result = pedidosService.reservePedido(pedido);
+
+        // Assert
+        assertEquals(2, result.getTotalItems());
+
+        // Verify
+        verify(funkoRepository, times(1)).reserveStock(eq(Map.of(1L, 2)), any(LocalDateTime.class));
+        verify(pedidoReservasRepository, times(1)).save(any(PedidoReserva.class));
+        verify(pedidosRepository, never()).save(any(Pedido.class));
+    }
+
+    @Test
+    void testReservePedido_YaReservado_NoVuelveATocarElStock() {
+        // Arrange
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(LineaPedido.builder()
+                .idProducto(1L)
+                .cantidad(2)
+                .precioProducto(10.0)
+                .build()));
+
+        when(pedidoReservasRepository.existsById(pedido.getId().toHexString())).thenReturn(true);
+
+        // Act
+        Pedido result = pedidosService.reservePedido(pedido);
+
+        // Assert
+        assertAll(
+                () -> assertEquals(20.0, result.getTotal()),
+                () -> assertEquals(2, result.getTotalItems())
+        );
+
+        // Verify
+        verify(funkoRepository, never()).findAllById(anyIterable());
+        verify(funkoRepository, never()).reserveStock(anyMap(), any(LocalDateTime.class));
+        verify(pedidoReservasRepository, never()).save(any(PedidoReserva.class));
     }
 
     @Test
@@ -256,22 +425,122 @@ class PedidosServiceImplTest {
         pedido.setLineasPedido(lineasPedido); // Asignar la lista de líneas de pedido al pedido
 
 
-        when(funkoRepository.findById(1L)).thenReturn(Optional.of(funko));
+        when(funkoRepository.reserveStock(eq(Map.of(1L, 2)), any(LocalDateTime.class))).thenReturn(new int[]{1});
 
         // Act
         Pedido result = pedidosService.reserveStockPedidos(pedido);
 
         // Assert
         assertAll(
-                () -> assertEquals(3, funko.getStock()), // Verifica que el stock se haya actualizado correctamente
                 () -> assertEquals(20.0, lineaPedido1.getTotal()), // Verifica que el total de la línea de pedido se haya calculado correctamente
                 () -> assertEquals(20.0, result.getTotal()), // Verifica que el total del pedido se haya calculado correctamente
                 () -> assertEquals(2, result.getTotalItems()) // Verifica que el total de items del pedido se haya calculado correctamente
         );
 
         // Verify
-        verify(funkoRepository, times(1)).findById(1L);
-        verify(funkoRepository, times(1)).save(funko);
+        verify(funkoRepository, times(1)).reserveStock(eq(Map.of(1L, 2)), any(LocalDateTime.class));
+        verify(funkoRepository, never()).findAllById(anyIterable());
+    }
+
+    @Test
+    void testReserveStockPedidos_AgrupaLineasDelMismoProducto() {
+        // Arrange
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(
+                LineaPedido.builder().idProducto(2L).cantidad(1).precioProducto(10.0).build(),
+                LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(10.0).build(),
+                LineaPedido.builder().idProducto(2L).cantidad(3).precioProducto(10.0).build()
+        ));
+        when(funkoRepository.reserveStock(anyMap(), any(LocalDateTime.class))).thenReturn(new int[]{1, 1});
+
+        // Act
+        pedidosService.reserveStockPedidos(pedido);
+
+        // Verify: un único batch con una reserva por producto y en orden de id
+        ArgumentCaptor<Map<Long, Integer>> cantidades = ArgumentCaptor.forClass(Map.class);
+        verify(funkoRepository, times(1)).reserveStock(cantidades.capture(), any(LocalDateTime.class));
+        assertEquals(Map.of(1L, 2, 2L, 4), cantidades.getValue());
+        assertEquals(List.of(1L, 2L), List.copyOf(cantidades.getValue().keySet()));
+        verifyNoMoreInteractions(funkoRepository);
+    }
+
+    @Test
+    void testReserveStockPedidos_SinStock_LanzaProductoNotStock() {
+        // Arrange
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(
+                LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(10.0).build(),
+                LineaPedido.builder().idProducto(2L).cantidad(9).precioProducto(10.0).build()
+        ));
+        when(funkoRepository.reserveStock(eq(Map.of(1L, 2, 2L, 9)), any(LocalDateTime.class))).thenReturn(new int[]{1, 0});
+
+        // Act & Assert
+        var ex = assertThrows(ProductoNotStock.class, () -> pedidosService.reserveStockPedidos(pedido));
+        assertTrue(ex.getMessage().contains("2"));
+    }
+
+    @Test
+    void testReserveStockPedidos_ConLedger_NoTocaLaBaseDeDatos() {
+        // Arrange
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(2).precioProducto(10.0).build()));
+        when(stockLedger.isEnabled()).thenReturn(true);
+
+        // Act
+        Pedido result = pedidosService.reserveStockPedidos(pedido);
+
+        // Assert
+        assertEquals(20.0, result.getTotal());
+
+        // Verify
+        verify(stockLedger, times(1)).reserve(Map.of(1L, 2));
+        verifyNoInteractions(funkoRepository);
+    }
+
+    @Test
+    void testReleasePedido_DevuelveElStockYBorraLaMarca() {
+        // Arrange
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(2).build()));
+        when(pedidoReservasRepository.existsById(pedido.getId().toHexString())).thenReturn(true);
+        when(funkoRepository.returnStock(eq(Map.of(1L, 2)), any(LocalDateTime.class))).thenReturn(new int[]{1});
+
+        // Act
+        pedidosService.releasePedido(pedido);
+
+        // Verify
+        verify(funkoRepository, times(1)).returnStock(eq(Map.of(1L, 2)), any(LocalDateTime.class));
+        verify(pedidoReservasRepository, times(1)).deleteById(pedido.getId().toHexString());
+    }
+
+    @Test
+    void testReleasePedido_SinReserva_NoDevuelveNada() {
+        // Arrange
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(2).build()));
+        when(pedidoReservasRepository.existsById(pedido.getId().toHexString())).thenReturn(false);
+
+        // Act
+        pedidosService.releasePedido(pedido);
+
+        // Verify
+        verifyNoInteractions(funkoRepository);
+        verify(pedidoReservasRepository, never()).deleteById(anyString());
+    }
+
+    @Test
+    void returnStockPedidos_ConLedger_NoTocaLaBaseDeDatos() {
+        // Arrange
+        Pedido pedido = new Pedido();
+        pedido.setLineasPedido(List.of(LineaPedido.builder().idProducto(1L).cantidad(2).build()));
+        when(stockLedger.isEnabled()).thenReturn(true);
+
+        // Act
+        pedidosService.returnStockPedidos(pedido);
+
+        // Verify
+        verify(stockLedger, times(1)).release(Map.of(1L, 2));
+        verifyNoInteractions(funkoRepository);
     }
 
     @Test
@@ -288,19 +557,17 @@ class PedidosServiceImplTest {
         pedido.setLineasPedido(lineasPedido);
 
 
-        when(funkoRepository.findById(1L)).thenReturn(Optional.of(funko));
-        when(funkoRepository.save(funko)).thenReturn(funko);
+        when(funkoRepository.returnStock(eq(Map.of(1L, 2)), any(LocalDateTime.class))).thenReturn(new int[]{1});
 
         // Act
         Pedido result = pedidosService.returnStockPedidos(pedido);
 
         // Assert
-        assertEquals(7, funko.getStock());
         assertEquals(pedido, result);
 
         // Verify
-        verify(funkoRepository, times(1)).findById(1L);
-        verify(funkoRepository, times(1)).save(funko);
+        verify(funkoRepository, times(1)).returnStock(eq(Map.of(1L, 2)), any(LocalDateTime.class));
+        verify(funkoRepository, never()).save(any());
     }
 
     @Test
@@ -317,14 +584,14 @@ class PedidosServiceImplTest {
         lineasPedido.add(lineaPedido1);
         pedido.setLineasPedido(lineasPedido);
 
-        when(funkoRepository.findById(1L)).thenReturn(Optional.of(funko));
+        when(funkoRepository.findAllById(Set.of(1L))).thenReturn(List.of(funko));
 
 
         // Act & Assert
         assertDoesNotThrow(() -> pedidosService.checkPedido(pedido));
 
         // Verify
-        verify(funkoRepository, times(1)).findById(1L);
+        verify(funkoRepository, times(1)).findAllById(Set.of(1L));
     }
 
     @Test
@@ -341,13 +608,13 @@ class PedidosServiceImplTest {
         lineasPedido.add(lineaPedido1);
         pedido.setLineasPedido(lineasPedido);
 
-        when(funkoRepository.findById(1L)).thenReturn(Optional.empty());
+        when(funkoRepository.findAllById(Set.of(1L))).thenReturn(List.of());
 
         // Act & Assert
         assertThrows(ProductoNotFound.class, () -> pedidosService.checkPedido(pedido));
 
         // Verify
-        verify(funkoRepository, times(1)).findById(1L);
+        verify(funkoRepository, times(1)).findAllById(Set.of(1L));
     }
 
     @Test
@@ -366,13 +633,13 @@ class PedidosServiceImplTest {
         pedido.setLineasPedido(lineasPedido);
 
 
-        when(funkoRepository.findById(1L)).thenReturn(Optional.of(funko));
+        when(funkoRepository.findAllById(Set.of(1L))).thenReturn(List.of(funko));
 
         // Act & Assert
         assertThrows(ProductoNotStock.class, () -> pedidosService.checkPedido(pedido));
 
         // Verify
-        verify(funkoRepository, times(1)).findById(1L);
+        verify(funkoRepository, times(1)).findAllById(Set.of(1L));
     }
 
     @Test
@@ -392,13 +659,13 @@ class PedidosServiceImplTest {
         pedido.setLineasPedido(lineasPedido);
 
 
-        when(funkoRepository.findById(1L)).thenReturn(Optional.of(funko));
+        when(funkoRepository.findAllById(Set.of(1L))).thenReturn(List.of(funko));
 
         // Act & Assert
         assertThrows(ProductoBadPrice.class, () -> pedidosService.checkPedido(pedido));
 
         // Verify
-        verify(funkoRepository, times(1)).findById(1L);
+        verify(funkoRepository, times(1)).findAllById(Set.of(1L));
     }
 
 }
\ No newline at end of file
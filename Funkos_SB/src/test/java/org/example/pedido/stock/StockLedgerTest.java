@@ -0,0 +1,281 @@
+package org.example.pedido.stock;
+
+import org.example.funko.repository.FunkoRepository;
+import org.example.pedido.exceptions.ProductoNotFound;
+import org.example.pedido.exceptions.ProductoNotStock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockLedgerTest {
+    @Mock
+    private FunkoRepository funkoRepository;
+    @Mock
+    private StockLedgerCheckpointRepository checkpointRepository;
+    @TempDir
+    Path journalDir;
+
+    private StockLedger ledger;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ledger = nuevoLedger();
+        when(checkpointRepository.findById(StockLedgerCheckpoint.DEFAULT_ID)).thenReturn(Optional.empty());
+        ledger.recover();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ledger.stop();
+    }
+
+    private StockLedger nuevoLedger() {
+        return new StockLedger(funkoRepository, checkpointRepository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                true, 200, journalDir.toString());
+    }
+
+    @Test
+    void reserveDescuentaEnMemoriaSinEscribirEnLaBaseDeDatos() {
+        when(funkoRepository.findStockById(1L)).thenReturn(Optional.of(5));
+
+        ledger.reserve(Map.of(1L, 2));
+        ledger.reserve(Map.of(1L, 3));
+
+        assertEquals(0, ledger.getStock(1L));
+        // Solo se lee el stock inicial una vez
+        verify(funkoRepository, times(1)).findStockById(1L);
+        verify(funkoRepository, never()).adjustStock(anyMap(), any());
+    }
+
+    @Test
+    void reserveEsTodoONada() {
+        when(funkoRepository.findStockById(1L)).thenReturn(Optional.of(5));
+        when(funkoRepository.findStockById(2L)).thenReturn(Optional.of(1));
+
+        assertThrows(ProductoNotStock.class, () -> ledger.reserve(Map.of(1L, 2, 2L, 3)));
+
+        assertAll(
+                () -> assertEquals(5, ledger.getStock(1L)),
+                () -> assertEquals(1, ledger.getStock(2L))
+        );
+    }
+
+    @Test
+    void reserveProductoNoExiste() {
+        when(funkoRepository.findStockById(9L)).thenReturn(Optional.empty());
+
+        assertThrows(ProductoNotFound.class, () -> ledger.reserve(Map.of(9L, 1)));
+    }
+
+    @Test
+    void flushVuelcaDeltasNetosYCheckpoint() {
+        when(funkoRepository.findStockById(1L)).thenReturn(Optional.of(10));
+        when(funkoRepository.findStockById(2L)).thenReturn(Optional.of(10));
+
+        ledger.reserve(Map.of(1L, 4, 2L, 1));
+        ledger.release(Map.of(1L, 1));
+        ledger.flush();
+
+        ArgumentCaptor<Map<Long, Integer>> deltas = ArgumentCaptor.forClass(Map.class);
+        verify(funkoRepository, times(1)).adjustStock(deltas.capture(), any(LocalDateTime.class));
+        ArgumentCaptor<StockLedgerCheckpoint> checkpoint = ArgumentCaptor.forClass(StockLedgerCheckpoint.class);
+        verify(checkpointRepository, times(1)).save(checkpoint.capture());
+        assertAll(
+                () -> assertEquals(Map.of(1L, -3, 2L, -1), deltas.getValue()),
+                () -> assertEquals(2L, checkpoint.getValue().getLastSeq())
+        );
+
+        // Sin movimientos nuevos no hay nada que volcar
+        ledger.flush();
+        verify(funkoRepository, times(1)).adjustStock(anyMap(), any());
+    }
+
+    @Test
+    void flushFallidoDejaLosDeltasPendientes() {
+        when(funkoRepository.findStockById(1L)).thenReturn(Optional.of(10));
+        when(funkoRepository.adjustStock(anyMap(), any()))
+                .thenThrow(new IllegalStateException("caída"))
+                .thenReturn(new int[]{1});
+
+        ledger.reserve(Map.of(1L, 4));
+        ledger.flush();
+        ledger.flush();
+
+        verify(funkoRepository, times(2)).adjustStock(eq(Map.of(1L, -4)), any(LocalDateTime.class));
+    }
+
+    @Test
+    void invalidateTrasReponerStockVuelveALeerLaBaseDeDatos() {
+        when(funkoRepository.findStockById(1L)).thenReturn(Optional.of(2), Optional.of(20));
+        ledger.reserve(Map.of(1L, 2));
+        ledger.flush();
+        assertThrows(ProductoNotStock.class, () -> ledger.reserve(Map.of(1L, 1)));
+
+        // Reposición con la actualización masiva, ya confirmada
+        ledger.invalidate(List.of(1L));
+        ledger.reserve(Map.of(1L, 5));
+
+        assertEquals(15, ledger.getStock(1L));
+    }
+
+    @Test
+    void invalidateMantieneLoPendienteDeVolcar() {
+        when(funkoRepository.findStockById(1L)).thenReturn(Optional.of(10), Optional.of(20));
+        ledger.reserve(Map.of(1L, 4));
+
+        ledger.invalidate(List.of(1L));
+
+        // Los 4 reservados aún no están en la base de datos y se volcarán sobre el nuevo valor
+        assertEquals(16, ledger.getStock(1L));
+        ledger.flush();
+        verify(funkoRepository, times(1)).adjustStock(eq(Map.of(1L, -4)), any(LocalDateTime.class));
+    }
+
+    @Test
+    void recoverAplicaElDiarioPendienteTrasUnaCaida() throws Exception {
+        when(funkoRepository.findStockById(1L)).thenReturn(Optional.of(10));
+        ledger.reserve(Map.of(1L, 4));
+        ledger.flush();
+        ledger.reserve(Map.of(1L, 2));
+        ledger.release(Map.of(1L, 1));
+        // Caída: lo último no llega a volcarse
+
+        var recuperado = nuevoLedger();
+        when(checkpointRepository.findById(StockLedgerCheckpoint.DEFAULT_ID))
+                .thenReturn(Optional.of(new StockLedgerCheckpoint(StockLedgerCheckpoint.DEFAULT_ID, 1L, LocalDateTime.now())));
+        clearInvocations(funkoRepository);
+        recuperado.recover();
+
+        // Solo se aplica lo posterior al checkpoint y los segmentos aplicados se borran
+        verify(funkoRepository, times(1)).adjustStock(eq(Map.of(1L, -1)), any(LocalDateTime.class));
+        try (var files = Files.list(journalDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private List<TransactionSynchronization> reservarEnTransaccion(Map<Long, Integer> cantidades) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            ledger.reserve(cantidades);
+            return TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void reserveSinConfirmarNoLlegaAlDiario() throws Exception {
+        when(funkoRepository.findStockById(1L)).thenReturn(Optional.of(10));
+
+        var sincronizaciones = reservarEnTransaccion(Map.of(1L, 4));
+        // Descontado para los demás, pero el pedido aún no existe
+        assertEquals(6, ledger.getStock(1L));
+
+        // Caída antes de confirmar: al recuperar no hay nada que aplicar
+        clearInvocations(funkoRepository);
+        nuevoLedger().recover();
+        verify(funkoRepository, never()).adjustStock(anyMap(), any());
+
+        sincronizaciones.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        assertEquals(10, ledger.getStock(1L));
+        ledger.flush();
+        verify(funkoRepository, never()).adjustStock(anyMap(), any());
+    }
+
+    @Test
+    void reserveConfirmadaSeAnotaEnElDiario() throws Exception {
+        when(funkoRepository.findStockById(1L)).thenReturn(Optional.of(10));
+
+        var sincronizaciones = reservarEnTransaccion(Map.of(1L, 4));
+        sincronizaciones.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+        // Caída sin volcar: el diario ya tiene la reserva confirmada
+        clearInvocations(funkoRepository);
+        nuevoLedger().recover();
+        verify(funkoRepository, times(1)).adjustStock(eq(Map.of(1L, -4)), any(LocalDateTime.class));
+    }
+
+    @Test
+    void releaseEnTransaccionSoloDevuelveAlConfirmar() {
+        when(funkoRepository.findStockById(1L)).thenReturn(Optional.of(10));
+        ledger.reserve(Map.of(1L, 4));
+
+        TransactionSynchronizationManager.initSynchronization();
+        List<TransactionSynchronization> sincronizaciones;
+        try {
+            ledger.release(Map.of(1L, 4));
+            sincronizaciones = TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals(6, ledger.getStock(1L));
+
+        sincronizaciones.forEach(TransactionSynchronization::afterCommit);
+        assertEquals(10, ledger.getStock(1L));
+    }
+
+    @Test
+    void reserveConcurrenteNoVendeDeMas() throws Exception {
+        when(funkoRepository.findStockById(1L)).thenReturn(Optional.of(50));
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch salida = new CountDownLatch(1);
+        AtomicInteger vendidos = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 500; i++) {
+                futures.add(executor.submit(() -> {
+                    salida.await();
+                    try {
+                        ledger.reserve(Map.of(1L, 1));
+                        vendidos.incrementAndGet();
+                    } catch (ProductoNotStock e) {
+                        // Sin stock
+                    }
+                    return null;
+                }));
+            }
+            salida.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertAll(
+                () -> assertEquals(50, vendidos.get()),
+                () -> assertEquals(0, ledger.getStock(1L))
+        );
+    }
+}
@@ -1,21 +1,33 @@
 package org.example.storage.controller;
 
 import org.example.storage.controller.StorageController;
+import org.example.storage.dto.StorageEntry;
+import org.example.storage.dto.StorageUsage;
+import org.example.storage.dto.StoredFile;
+import org.example.storage.exceptions.StorageNotFound;
+import org.example.storage.exceptions.StorageUnsupportedType;
 import org.example.storage.service.StorageService;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 @WebMvcTest(StorageController.class)
 public class StorageControllerTest {
@@ -26,24 +38,183 @@ public class StorageControllerTest {
     @MockBean
     private StorageService storageService;
 
+    @TempDir
+    Path tempDir;
+
+    private final String filename = "test.txt";
+    private final String fileContent = "Contenido del archivo";
+    private StoredFile storedFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path path = tempDir.resolve(filename);
+        Files.writeString(path, fileContent);
+        storedFile = new StoredFile(path, fileContent.length(), 1700000000000L, "\"etag-test\"", MediaType.TEXT_PLAIN);
+    }
+
     @Test
     public void testServeFile() throws Exception {
-        // Simulación de un archivo como recurso
-        String filename = "test.txt";
-        String fileContent = "Contenido del archivo";
-        Resource resource = new ByteArrayResource(fileContent.getBytes());
-
         // Configurar el comportamiento del servicio simulado
-        when(storageService.loadAsResource(filename)).thenReturn(resource);
+        when(storageService.loadFileInfo(filename, null)).thenReturn(storedFile);
 
         // Realizar la solicitud GET al controlador
-        MockHttpServletResponse response = mockMvc.perform(get("/storage/" + filename)
-                        .contentType(MediaType.TEXT_PLAIN))
+        MockHttpServletResponse response = mockMvc.perform(get("/storage/" + filename))
                 .andExpect(status().isOk())
                 .andReturn().getResponse();
 
         // Verificar la respuesta
-        assertEquals(200, response.getStatus());
+        assertAll(
+                () -> assertEquals(200, response.getStatus()),
+                () -> assertEquals(fileContent, response.getContentAsString()),
+                () -> assertEquals("\"etag-test\"", response.getHeader(HttpHeaders.ETAG)),
+                () -> assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES)),
+                () -> assertTrue(response.getHeader(HttpHeaders.CACHE_CONTROL).contains("max-age=31536000")),
+                () -> assertNotNull(response.getHeader(HttpHeaders.LAST_MODIFIED))
+        );
+    }
+
+    @Test
+    public void testServeFileNotModified() throws Exception {
+        // Un fichero que no existe demuestra que el 304 sale solo de los metadatos
+        var noAbierto = new StoredFile(tempDir.resolve("no-existe.txt"), 10, 1700000000000L, "\"etag-test\"", MediaType.TEXT_PLAIN);
+        when(storageService.loadFileInfo(filename, null)).thenReturn(noAbierto);
+
+        MockHttpServletResponse response = mockMvc.perform(get("/storage/" + filename)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"etag-test\""))
+                .andExpect(status().isNotModified())
+                .andReturn().getResponse();
+
+        assertEquals("", response.getContentAsString());
+    }
+
+    @Test
+    public void testServeFileRange() throws Exception {
+        when(storageService.loadFileInfo(filename, null)).thenReturn(storedFile);
+
+        MockHttpServletResponse response = mockMvc.perform(get("/storage/" + filename)
+                        .header(HttpHeaders.RANGE, "bytes=0-8"))
+                .andExpect(status().isPartialContent())
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals("Contenido", response.getContentAsString()),
+                () -> assertEquals("bytes 0-8/" + fileContent.length(), response.getHeader(HttpHeaders.CONTENT_RANGE))
+        );
+    }
+
+    @Test
+    public void testServeFileIfRangeNoCoincideDevuelveTodo() throws Exception {
+        when(storageService.loadFileInfo(filename, null)).thenReturn(storedFile);
+
+        MockHttpServletResponse response = mockMvc.perform(get("/storage/" + filename)
+                        .header(HttpHeaders.RANGE, "bytes=0-8")
+                        .header(HttpHeaders.IF_RANGE, "\"otro\""))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+
         assertEquals(fileContent, response.getContentAsString());
     }
+
+    @Test
+    public void testServeFileMultiRange() throws Exception {
+        when(storageService.loadFileInfo(filename, null)).thenReturn(storedFile);
+
+        MockHttpServletResponse response = mockMvc.perform(get("/storage/" + filename)
+                        .header(HttpHeaders.RANGE, "bytes=0-8,-7"))
+                .andExpect(status().isPartialContent())
+                .andReturn().getResponse();
+
+        String body = response.getContentAsString(StandardCharsets.UTF_8);
+        assertAll(
+                () -> assertTrue(response.getContentType().startsWith("multipart/byteranges; boundary=")),
+                () -> assertTrue(body.contains("Content-Range: bytes 0-8/" + fileContent.length())),
+                () -> assertTrue(body.contains("Contenido")),
+                () -> assertTrue(body.contains("archivo")),
+                () -> assertEquals(response.getContentLengthLong(), body.getBytes(StandardCharsets.UTF_8).length)
+        );
+    }
+
+    @Test
+    public void testServeFileRangeNoSatisfacible() throws Exception {
+        when(storageService.loadFileInfo(filename, null)).thenReturn(storedFile);
+
+        MockHttpServletResponse response = mockMvc.perform(get("/storage/" + filename)
+                        .header(HttpHeaders.RANGE, "bytes=1000-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andReturn().getResponse();
+
+        assertEquals("bytes */" + fileContent.length(), response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    public void testServeFileSize() throws Exception {
+        var thumb = new StoredFile(storedFile.path(), fileContent.length(), 1700000000000L, "\"etag-thumb\"", MediaType.TEXT_PLAIN);
+        when(storageService.loadFileInfo(filename, "thumb")).thenReturn(thumb);
+
+        MockHttpServletResponse response = mockMvc.perform(get("/storage/" + filename).param("size", "thumb"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+
+        assertEquals("\"etag-thumb\"", response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    public void testServeFileSizeNoListoNoSeCacheaUnAño() throws Exception {
+        // El tamaño pedido no está listo y el servicio devuelve el original
+        var original = new StoredFile(storedFile.path(), fileContent.length(), 1700000000000L, "\"etag-test\"", MediaType.TEXT_PLAIN, true);
+        when(storageService.loadFileInfo(filename, "thumb")).thenReturn(original);
+
+        MockHttpServletResponse response = mockMvc.perform(get("/storage/" + filename).param("size", "thumb"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertEquals(fileContent, response.getContentAsString()),
+                () -> assertEquals("public, max-age=60", response.getHeader(HttpHeaders.CACHE_CONTROL))
+        );
+    }
+
+    @Test
+    public void testListFiles() throws Exception {
+        when(storageService.list("a.png", 2)).thenReturn(List.of(new StorageEntry("b.png", 6, "image/png", "abc", 1L)));
+
+        MockHttpServletResponse response = mockMvc.perform(get("/storage").param("after", "a.png").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+
+        assertTrue(response.getContentAsString().contains("b.png"));
+    }
+
+    @Test
+    public void testUsage() throws Exception {
+        when(storageService.usage()).thenReturn(new StorageUsage(3, 1024));
+
+        MockHttpServletResponse response = mockMvc.perform(get("/storage/usage"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+
+        assertAll(
+                () -> assertTrue(response.getContentAsString().contains("\"files\":3")),
+                () -> assertTrue(response.getContentAsString().contains("\"bytes\":1024"))
+        );
+        verify(storageService, never()).loadFileInfo(anyString(), any());
+    }
+
+    @Test
+    public void testUploadTipoNoAdmitido() throws Exception {
+        when(storageService.openUpload("funko.txt", "text/plain", 5))
+                .thenThrow(new StorageUnsupportedType("Tipo de fichero no admitido text/plain"));
+
+        mockMvc.perform(post("/storage/upload").param("filename", "funko.txt")
+                        .contentType(MediaType.TEXT_PLAIN).content("hola!"))
+                .andExpect(status().isUnsupportedMediaType());
+    }
+
+    @Test
+    public void testServeFileNotFound() throws Exception {
+        when(storageService.loadFileInfo(filename, null)).thenThrow(new StorageNotFound("No se puede leer fichero: " + filename));
+
+        mockMvc.perform(get("/storage/" + filename))
+                .andExpect(status().isNotFound());
+    }
 }
@@ -0,0 +1,110 @@
+package org.example.storage.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import org.example.storage.service.StorageService;
+import org.example.storage.service.StorageUpload;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StorageUploadReaderTest {
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D, 'I', 'H', 'D', 'R'};
+
+    @Mock
+    private StorageService storageService;
+    @Mock
+    private AsyncContext asyncContext;
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Cuerpo que el contenedor entrega de golpe: siempre listo hasta agotarse
+     */
+    private static ServletInputStream body(byte[] bytes) {
+        var in = new ByteArrayInputStream(bytes);
+        return new ServletInputStream() {
+            @Override
+            public boolean isFinished() {
+                return in.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return !isFinished();
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+            }
+
+            @Override
+            public int read() {
+                return in.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                return in.read(b, off, len);
+            }
+        };
+    }
+
+    @Test
+    void subidaCompletaDevuelve201() throws Exception {
+        var response = new MockHttpServletResponse();
+        when(asyncContext.getResponse()).thenReturn(response);
+        var upload = new StorageUpload("funko.png", MediaType.IMAGE_PNG, 1024, dir.resolve(".tmp-subida"));
+        when(storageService.completeUpload(upload)).thenAnswer(invocation -> {
+            upload.finish();
+            return "guardado.png";
+        });
+        var reader = new StorageUploadReader(body(PNG), asyncContext, upload, storageService, new ObjectMapper(), "http://localhost/storage/");
+
+        reader.onDataAvailable();
+        reader.onAllDataRead();
+
+        assertAll(
+                () -> assertEquals(201, response.getStatus()),
+                () -> assertEquals("http://localhost/storage/guardado.png", response.getHeader(HttpHeaders.LOCATION)),
+                () -> assertTrue(response.getContentAsString().contains("\"size\":" + PNG.length))
+        );
+        verify(asyncContext).complete();
+    }
+
+    @Test
+    void subidaDemasiadoGrandeCortaConUn413() throws Exception {
+        var response = new MockHttpServletResponse();
+        when(asyncContext.getResponse()).thenReturn(response);
+        var upload = new StorageUpload("funko.png", MediaType.IMAGE_PNG, 8, dir.resolve(".tmp-subida"));
+        var reader = new StorageUploadReader(body(PNG), asyncContext, upload, storageService, new ObjectMapper(), "http://localhost/storage/");
+
+        reader.onDataAvailable();
+        reader.onAllDataRead();
+
+        assertAll(
+                () -> assertEquals(413, response.getStatus()),
+                () -> assertEquals("close", response.getHeader(HttpHeaders.CONNECTION)),
+                () -> assertFalse(Files.exists(dir.resolve(".tmp-subida")))
+        );
+        verify(storageService, never()).completeUpload(any());
+        verify(asyncContext, times(1)).complete();
+    }
+}
@@ -0,0 +1,100 @@
+package org.example.storage.manifest;
+
+import org.example.storage.dto.StorageEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageManifestTest {
+    @TempDir
+    Path dir;
+
+    private StorageEntry entry(String name, long size) {
+        return new StorageEntry(name, size, "image/png", "abc", 1L);
+    }
+
+    @Test
+    void putRemoveYUso() throws IOException {
+        var manifest = new StorageManifest(dir.resolve(".manifest"));
+        manifest.open();
+
+        manifest.put(entry("a.png", 10));
+        manifest.put(entry("b.png", 20));
+        manifest.put(entry("a.png", 15));
+        manifest.remove("b.png");
+        manifest.remove("no-existe.png");
+
+        assertAll(
+                () -> assertEquals(1, manifest.usage().files()),
+                () -> assertEquals(15, manifest.usage().bytes()),
+                () -> assertEquals(15, manifest.get("a.png").size()),
+                () -> assertNull(manifest.get("b.png"))
+        );
+    }
+
+    @Test
+    void reescriturasRepetidasCompactanElLog() throws IOException {
+        var manifest = new StorageManifest(dir.resolve(".manifest"));
+        manifest.open();
+
+        for (int i = 0; i < 2000; i++) {
+            manifest.put(entry("a.png", i));
+        }
+
+        assertAll(
+                () -> assertEquals(1, manifest.usage().files()),
+                () -> assertEquals(1999, manifest.usage().bytes()),
+                // Un solo fichero vivo: el log se ha compactado en lugar de crecer con cada reescritura
+                () -> assertTrue(Files.readAllLines(dir.resolve(".manifest"), StandardCharsets.UTF_8).size() <= 1026)
+        );
+    }
+
+    @Test
+    void listPaginaPorNombre() throws IOException {
+        var manifest = new StorageManifest(dir.resolve(".manifest"));
+        manifest.open();
+        for (String name : new String[]{"d.png", "a.png", "c.png", "b.png"}) {
+            manifest.put(entry(name, 1));
+        }
+
+        var primera = manifest.list(null, 2);
+        var segunda = manifest.list(primera.get(1).name(), 2);
+
+        assertAll(
+                () -> assertEquals("a.png", primera.get(0).name()),
+                () -> assertEquals("b.png", primera.get(1).name()),
+                () -> assertEquals("c.png", segunda.get(0).name()),
+                () -> assertEquals("d.png", segunda.get(1).name()),
+                () -> assertTrue(manifest.list("d.png", 2).isEmpty())
+        );
+    }
+
+    @Test
+    void openReproduceElLogEIgnoraLaUltimaLineaAMedias() throws IOException {
+        var manifest = new StorageManifest(dir.resolve(".manifest"));
+        manifest.open();
+        manifest.put(entry("a.png", 10));
+        manifest.put(entry("b.png", 20));
+        manifest.remove("a.png");
+        manifest.close();
+        Files.writeString(dir.resolve(".manifest"), "+\tc.png\t3", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        var reabierto = new StorageManifest(dir.resolve(".manifest"));
+        reabierto.open();
+
+        assertAll(
+                () -> assertEquals(1, reabierto.usage().files()),
+                () -> assertEquals(20, reabierto.usage().bytes()),
+                () -> assertNotNull(reabierto.get("b.png")),
+                // Al abrir se compacta: una línea por fichero vivo
+                () -> assertEquals(1, Files.readAllLines(dir.resolve(".manifest")).size())
+        );
+    }
+}
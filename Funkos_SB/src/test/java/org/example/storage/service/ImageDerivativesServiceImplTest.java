@@ -0,0 +1,136 @@
+package org.example.storage.service;
+
+import org.example.storage.exceptions.StorageBadRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageDerivativesServiceImplTest {
+    @TempDir
+    Path dir;
+
+    private ImageDerivativesServiceImpl derivatives;
+
+    @BeforeEach
+    void setUp() {
+        derivatives = new ImageDerivativesServiceImpl("thumb=50,card=200", 2, 1_000_000, 5000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        derivatives.stop();
+    }
+
+    private Path image(String name, int width, int height) throws IOException {
+        Path path = dir.resolve(name);
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", path.toFile());
+        return path;
+    }
+
+    @Test
+    void parseSizes() {
+        var sizes = ImageDerivativesServiceImpl.parseSizes("thumb=150, card=400,detail=1000");
+        assertAll(
+                () -> assertEquals(3, sizes.size()),
+                () -> assertEquals(400, sizes.get("card"))
+        );
+    }
+
+    @Test
+    void resolveGeneraElTamañoBajoDemanda() throws IOException {
+        Path original = image("funko.png", 400, 200);
+
+        Path thumb = derivatives.resolve(original, "thumb");
+
+        BufferedImage generada = ImageIO.read(thumb.toFile());
+        assertAll(
+                () -> assertEquals(ImageDerivativesServiceImpl.derivativePath(original, "thumb"), thumb),
+                () -> assertEquals(50, generada.getWidth()),
+                () -> assertEquals(25, generada.getHeight())
+        );
+    }
+
+    @Test
+    void resolveImagenDemasiadoGrandeSirveElOriginal() throws IOException {
+        derivatives.stop();
+        derivatives = new ImageDerivativesServiceImpl("thumb=50", 2, 100 * 100, 5000);
+        Path original = image("funko.png", 200, 100);
+
+        assertAll(
+                () -> assertEquals(original, derivatives.resolve(original, "thumb")),
+                () -> assertFalse(Files.exists(ImageDerivativesServiceImpl.derivativePath(original, "thumb")))
+        );
+    }
+
+    @Test
+    void resolveNoEsperaMasDeLoConfigurado() throws IOException {
+        derivatives.stop();
+        // Sin workers libres la generación no empieza nunca
+        derivatives = new ImageDerivativesServiceImpl("thumb=50", 0, 1_000_000, 50);
+        Path original = image("funko.png", 200, 100);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertEquals(original, derivatives.resolve(original, "thumb")));
+    }
+
+    @Test
+    void resolveNoAmpliaImagenesPequeñas() throws IOException {
+        Path original = image("funko.png", 100, 80);
+
+        BufferedImage card = ImageIO.read(derivatives.resolve(original, "card").toFile());
+
+        assertAll(
+                () -> assertEquals(100, card.getWidth()),
+                () -> assertEquals(80, card.getHeight())
+        );
+    }
+
+    @Test
+    void generateAsyncDejaLosTamañosEnDisco() throws Exception {
+        Path original = image("funko.png", 400, 400);
+
+        derivatives.generateAsync(original);
+        // resolve espera a la generación en curso en vez de repetirla
+        derivatives.resolve(original, "thumb");
+        derivatives.resolve(original, "card");
+
+        assertAll(
+                () -> assertTrue(Files.exists(ImageDerivativesServiceImpl.derivativePath(original, "thumb"))),
+                () -> assertTrue(Files.exists(ImageDerivativesServiceImpl.derivativePath(original, "card")))
+        );
+    }
+
+    @Test
+    void resolveSirveElOriginalSiNoEsUnaImagen() throws IOException {
+        Path original = dir.resolve("funko.png");
+        Files.writeString(original, "no es una imagen");
+
+        assertEquals(original, derivatives.resolve(original, "thumb"));
+    }
+
+    @Test
+    void resolveTamañoNoValido() throws IOException {
+        Path original = image("funko.png", 10, 10);
+
+        assertThrows(StorageBadRequest.class, () -> derivatives.resolve(original, "enorme"));
+    }
+
+    @Test
+    void deleteBorraLosTamaños() throws IOException {
+        Path original = image("funko.png", 400, 400);
+        Path thumb = derivatives.resolve(original, "thumb");
+
+        derivatives.delete(original);
+
+        assertFalse(Files.exists(thumb));
+    }
+}
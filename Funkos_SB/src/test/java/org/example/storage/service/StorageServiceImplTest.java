@@ -3,16 +3,24 @@ package org.example.storage.service;
 import org.example.storage.exceptions.StorageBadRequest;
 import org.example.storage.exceptions.StorageException;
 import org.example.storage.exceptions.StorageNotFound;
+import org.example.storage.exceptions.StoragePayloadTooLarge;
+import org.example.storage.exceptions.StorageUnsupportedType;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
@@ -124,6 +132,189 @@ public class StorageServiceImplTest {
         assertThrows(StorageNotFound.class, () -> storageServiceImpl.loadAsResource("image.png"));
     }
 
+    @Test
+    void loadFileInfo(@TempDir Path dir) throws IOException {
+        // Directorio propio para no alterar los ficheros que cuentan el resto de tests
+        var storage = new StorageServiceImpl(dir.toString());
+        Files.writeString(dir.resolve("test-image12.png"), "imagen");
+
+        var info = storage.loadFileInfo("test-image12.png");
+        var otraVez = storage.loadFileInfo("test-image12.png");
+
+        assertAll(
+                () -> assertEquals(6, info.size()),
+                () -> assertEquals(MediaType.IMAGE_PNG, info.mediaType()),
+                () -> assertEquals(Files.getLastModifiedTime(dir.resolve("test-image12.png")).toMillis(), info.lastModified()),
+                () -> assertTrue(info.etag().startsWith("\"")),
+                () -> assertEquals(info.etag(), otraVez.etag())
+        );
+    }
+
+    @Test
+    void loadFileInfoNotFound(@TempDir Path dir) {
+        var storage = new StorageServiceImpl(dir.toString());
+        assertThrows(StorageNotFound.class, () -> storage.loadFileInfo("image.png"));
+    }
+
+    @Test
+    void loadFileInfoFueraDelDirectorio(@TempDir Path dir) {
+        var storage = new StorageServiceImpl(dir.toString());
+        assertThrows(StorageBadRequest.class, () -> storage.loadFileInfo("../image.png"));
+    }
+
+    @Test
+    void storeContentAddressedDeduplica(@TempDir Path dir) {
+        var storage = new StorageServiceImpl(dir.toString(), true);
+        storage.init();
+
+        String primero = storage.store(new MockMultipartFile("file", "funko-rojo.PNG", "image/png", "imagen".getBytes()));
+        String segundo = storage.store(new MockMultipartFile("file", "funko-azul.png", "image/png", "imagen".getBytes()));
+        String otro = storage.store(new MockMultipartFile("file", "funko-verde.png", "image/png", "otra imagen".getBytes()));
+
+        assertAll(
+                () -> assertEquals(primero, segundo),
+                () -> assertNotEquals(primero, otro),
+                () -> assertTrue(primero.matches("[0-9a-f]{64}\\.png")),
+                () -> assertEquals(2, storage.loadAll().count()),
+                () -> assertEquals("\"" + primero.replace(".png", "") + "\"", storage.loadFileInfo(primero).etag())
+        );
+    }
+
+    @Test
+    void deleteContentAddressedBorraConLaUltimaReferencia(@TempDir Path dir) {
+        var storage = new StorageServiceImpl(dir.toString(), true);
+        storage.init();
+        String stored = storage.store(new MockMultipartFile("file", "funko.png", "image/png", "imagen".getBytes()));
+        storage.store(new MockMultipartFile("file", "funko.png", "image/png", "imagen".getBytes()));
+
+        storage.delete(stored);
+        assertTrue(Files.exists(dir.resolve(stored)));
+
+        // Los contadores sobreviven a un reinicio
+        var reiniciado = new StorageServiceImpl(dir.toString(), true);
+        reiniciado.init();
+        reiniciado.delete(stored);
+        assertFalse(Files.exists(dir.resolve(stored)));
+        assertThrows(StorageNotFound.class, () -> reiniciado.delete(stored));
+    }
+
+    @Test
+    void storeShardedReparteEnSubdirectoriosYActualizaElManifiesto(@TempDir Path dir) {
+        var storage = new StorageServiceImpl(dir.toString(), false, true, 1024, "image/png", null);
+        storage.init();
+
+        String stored = storage.store(new MockMultipartFile("file", "funko.png", "image/png", "imagen".getBytes()));
+        Path path = storage.load(stored);
+
+        assertAll(
+                () -> assertTrue(Files.exists(path)),
+                () -> assertEquals(3, dir.relativize(path).getNameCount()),
+                () -> assertEquals(1, storage.usage().files()),
+                () -> assertEquals(6, storage.usage().bytes()),
+                () -> assertEquals(stored, storage.list(null, 10).get(0).name()),
+                () -> assertEquals(64, storage.list(null, 10).get(0).digest().length()),
+                () -> assertEquals(6, storage.loadFileInfo(stored).size())
+        );
+
+        storage.delete(stored);
+        assertAll(
+                () -> assertFalse(Files.exists(path)),
+                () -> assertEquals(0, storage.usage().files()),
+                () -> assertTrue(storage.list(null, 10).isEmpty())
+        );
+    }
+
+    @Test
+    void manifiestoSobreviveAUnReinicio(@TempDir Path dir) {
+        var storage = new StorageServiceImpl(dir.toString(), true, true, 1024, "image/png", null);
+        storage.init();
+        String stored = storage.store(new MockMultipartFile("file", "funko.png", "image/png", "imagen".getBytes()));
+        storage.store(new MockMultipartFile("file", "otro.png", "image/png", "imagen".getBytes()));
+
+        var reiniciado = new StorageServiceImpl(dir.toString(), true, true, 1024, "image/png", null);
+        reiniciado.init();
+
+        assertAll(
+                () -> assertEquals(1, reiniciado.usage().files()),
+                () -> assertEquals(stored, reiniciado.loadAll().findFirst().orElseThrow().toString())
+        );
+    }
+
+    @Test
+    void loadFileInfoConTamañoNoListoMarcaElOriginalComoProvisional(@TempDir Path dir) throws IOException {
+        // Sin workers libres la generación no empieza y resolve agota su espera
+        var derivatives = new ImageDerivativesServiceImpl("thumb=50", 0, 1_000_000, 50);
+        try {
+            var storage = new StorageServiceImpl(dir.toString(), false, false, 1024 * 1024, "image/png", derivatives);
+            storage.init();
+            var bytes = new ByteArrayOutputStream();
+            ImageIO.write(new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB), "png", bytes);
+            String stored = storage.store(new MockMultipartFile("file", "funko.png", "image/png", bytes.toByteArray()));
+
+            var thumb = storage.loadFileInfo(stored, "thumb");
+
+            assertAll(
+                    () -> assertTrue(thumb.provisional()),
+                    () -> assertEquals(storage.load(stored), thumb.path()),
+                    () -> assertFalse(storage.loadFileInfo(stored).provisional())
+            );
+        } finally {
+            derivatives.stop();
+        }
+    }
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D, 'I', 'H', 'D', 'R'};
+
+    @Test
+    void uploadEnStreamingSeGuardaSinMultipart(@TempDir Path dir) throws IOException {
+        var storage = new StorageServiceImpl(dir.toString(), false, true, 1024, "image/png", null);
+        storage.init();
+
+        var upload = storage.openUpload("funko.png", "image/png", -1);
+        upload.write(PNG, 0, 4);
+        upload.write(PNG, 4, PNG.length - 4);
+        String stored = storage.completeUpload(upload);
+
+        assertAll(
+                () -> assertArrayEquals(PNG, Files.readAllBytes(storage.load(stored))),
+                () -> assertFalse(Files.exists(upload.getTmp())),
+                () -> assertEquals(PNG.length, storage.usage().bytes())
+        );
+    }
+
+    @Test
+    void uploadTipoNoAdmitido(@TempDir Path dir) {
+        var storage = new StorageServiceImpl(dir.toString(), false, true, 1024, "image/png", null);
+        assertThrows(StorageUnsupportedType.class, () -> storage.openUpload("funko.txt", "text/plain", 10));
+    }
+
+    @Test
+    void uploadTamañoAnunciadoDemasiadoGrande(@TempDir Path dir) {
+        var storage = new StorageServiceImpl(dir.toString(), false, true, 1024, "image/png", null);
+        assertThrows(StoragePayloadTooLarge.class, () -> storage.openUpload("funko.png", "image/png", 2048));
+    }
+
+    @Test
+    void uploadCortaAlPasarDelTamañoMaximo(@TempDir Path dir) throws IOException {
+        var storage = new StorageServiceImpl(dir.toString(), false, true, 1024, "image/png", null);
+        var upload = storage.openUpload("funko.png", "image/png", -1);
+        upload.write(PNG, 0, PNG.length);
+
+        assertThrows(StoragePayloadTooLarge.class, () -> upload.write(new byte[1024], 0, 1024));
+        upload.abort();
+        assertFalse(Files.exists(upload.getTmp()));
+    }
+
+    @Test
+    void uploadContenidoQueNoCorrespondeAlTipo(@TempDir Path dir) throws IOException {
+        var storage = new StorageServiceImpl(dir.toString(), false, true, 1024, "image/png", null);
+        var upload = storage.openUpload("funko.png", "image/png", -1);
+        byte[] texto = "esto no es un png".getBytes();
+
+        assertThrows(StorageUnsupportedType.class, () -> upload.write(texto, 0, texto.length));
+        upload.abort();
+    }
+
     @Test
     void delete() throws IOException {
         Files.createDirectories(mockRootLocation);
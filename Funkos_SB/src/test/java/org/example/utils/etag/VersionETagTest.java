@@ -0,0 +1,61 @@
+package org.example.utils.etag;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VersionETagTest {
+    private final LocalDateTime updatedAt = LocalDateTime.of(2024, 5, 1, 10, 30, 15, 123_456_789);
+
+    @Test
+    void ofIgnoraPrecisionPorDebajoDelMilisegundo() {
+        var etag = VersionETag.of(1L, updatedAt);
+        assertAll(
+                () -> assertTrue(etag.startsWith("\"1-")),
+                () -> assertTrue(etag.endsWith("\"")),
+                () -> assertEquals(etag, VersionETag.of(1L, updatedAt.withNano(123_000_000))),
+                () -> assertNotEquals(etag, VersionETag.of(1L, updatedAt.plusNanos(1_000_000))),
+                () -> assertNotEquals(etag, VersionETag.of(2L, updatedAt))
+        );
+    }
+
+    @Test
+    void ofSinVersion() {
+        assertNull(VersionETag.of(1L, null));
+    }
+
+    @Test
+    void ofConElementosCambiaSiCambiaElNumero() {
+        var etag = VersionETag.of(1L, updatedAt, 2);
+        assertAll(
+                () -> assertTrue(etag.endsWith("-2\"")),
+                () -> assertNotEquals(etag, VersionETag.of(1L, updatedAt, 1)),
+                () -> assertNull(VersionETag.of(1L, null, 2))
+        );
+    }
+
+    @Test
+    void latestIgnoraLosNulos() {
+        assertAll(
+                () -> assertEquals(updatedAt.plusDays(1), VersionETag.latest(updatedAt, null, updatedAt.plusDays(1))),
+                () -> assertNull(VersionETag.latest(null, null)),
+                () -> assertNull(VersionETag.latest())
+        );
+    }
+
+    @Test
+    void matches() {
+        var etag = VersionETag.of(1L, updatedAt);
+        assertAll(
+                () -> assertTrue(VersionETag.matches(etag, etag)),
+                () -> assertTrue(VersionETag.matches("\"otro\", " + etag, etag)),
+                () -> assertTrue(VersionETag.matches("W/" + etag, etag)),
+                () -> assertTrue(VersionETag.matches("*", etag)),
+                () -> assertFalse(VersionETag.matches("\"otro\"", etag)),
+                () -> assertFalse(VersionETag.matches(etag, null)),
+                () -> assertFalse(VersionETag.matches(null, etag))
+        );
+    }
+}
@@ -0,0 +1,76 @@
+package org.example.utils.pageresponse;
+
+import org.example.categoria.models.Categoria;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.SliceImpl;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeysetCursorTest {
+    private final Categoria categoria = new Categoria(7L, "TEST:DC", null, LocalDateTime.now(), LocalDateTime.now(), true);
+
+    @Test
+    void encodeDecode() {
+        KeysetCursor cursor = KeysetCursor.of(categoria, "tipo", categoria.getId());
+
+        KeysetCursor res = KeysetCursor.decode(cursor.encode());
+
+        assertAll(
+                () -> assertEquals("TEST:DC", res.value()),
+                () -> assertEquals(7L, res.id())
+        );
+    }
+
+    @Test
+    void encodeDecodeSinValor() {
+        KeysetCursor res = KeysetCursor.decode(new KeysetCursor(null, 3L).encode());
+
+        assertAll(
+                () -> assertNull(res.value()),
+                () -> assertEquals(3L, res.id())
+        );
+    }
+
+    @Test
+    void decodeNoValido() {
+        assertThrows(CursorBadRequest.class, () -> KeysetCursor.decode("no-es-un-cursor"));
+    }
+
+    @Test
+    void sortConDesempatePorId() {
+        assertAll(
+                () -> assertEquals(Sort.by(Sort.Direction.DESC, "tipo", "id"), KeysetCursor.sort("tipo", Sort.Direction.DESC)),
+                () -> assertEquals(Sort.by(Sort.Direction.ASC, "id"), KeysetCursor.sort("id", Sort.Direction.ASC))
+        );
+    }
+
+    @Test
+    void cursorPageResponseConSiguiente() {
+        var slice = new SliceImpl<>(List.of(categoria), PageRequest.of(0, 1), true);
+
+        var res = CursorPageResponse.of(slice, c -> KeysetCursor.of(c, "tipo", c.getId()), "tipo", "asc");
+
+        assertAll(
+                () -> assertFalse(res.last()),
+                () -> assertNotNull(res.next()),
+                () -> assertEquals(7L, KeysetCursor.decode(res.next()).id())
+        );
+    }
+
+    @Test
+    void cursorPageResponseUltimaPagina() {
+        var slice = new SliceImpl<>(List.of(categoria), PageRequest.of(0, 10), false);
+
+        var res = CursorPageResponse.of(slice, c -> KeysetCursor.of(c, "tipo", c.getId()), "tipo", "asc");
+
+        assertAll(
+                () -> assertTrue(res.last()),
+                () -> assertNull(res.next())
+        );
+    }
+}
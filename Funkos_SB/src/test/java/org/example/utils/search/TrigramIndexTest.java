@@ -0,0 +1,65 @@
+package org.example.utils.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrigramIndexTest {
+    private TrigramIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new TrigramIndex();
+        index.put(1L, "Funko Batman");
+        index.put(2L, "Funko Superman");
+        index.put(3L, "Pop Spiderman");
+    }
+
+    @Test
+    void searchPorSubcadena() {
+        assertAll(
+                () -> assertEquals(Set.of(1L, 2L, 3L), index.search("man")),
+                () -> assertEquals(Set.of(1L, 2L), index.search("FUNKO")),
+                () -> assertEquals(Set.of(2L), index.search("superm"))
+        );
+    }
+
+    @Test
+    void searchDescartaFalsosPositivos() {
+        // "abc bcd" tiene todos los trigramas de "abcd" pero no la contiene
+        index.put(4L, "abc bcd");
+        assertEquals(Set.of(), index.search("abcd"));
+    }
+
+    @Test
+    void searchSinResultados() {
+        assertEquals(Set.of(), index.search("joker"));
+    }
+
+    @Test
+    void searchDemasiadoCorta() {
+        assertFalse(TrigramIndex.isSearchable("ma"));
+        assertThrows(IllegalArgumentException.class, () -> index.search("ma"));
+    }
+
+    @Test
+    void putActualizaElTexto() {
+        index.put(1L, "Funko Joker");
+        assertAll(
+                () -> assertEquals(Set.of(1L), index.search("joker")),
+                () -> assertEquals(Set.of(), index.search("batman"))
+        );
+    }
+
+    @Test
+    void remove() {
+        index.remove(2L);
+        assertAll(
+                () -> assertEquals(Set.of(), index.search("superman")),
+                () -> assertEquals(2, index.size())
+        );
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.utils.timing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    @Test
+    void venceEnSuTickYNoAntes() {
+        var wheel = new TimingWheel<String>(10, 8, 3, 0);
+        wheel.schedule("a", 25);
+        wheel.schedule("b", 30);
+
+        assertAll(
+                () -> assertEquals(List.of(), wheel.advance(29)),
+                () -> assertEquals(List.of("a", "b"), wheel.advance(30)),
+                () -> assertEquals(0, wheel.size())
+        );
+    }
+
+    @Test
+    void loQueYaHaVencidoSaleEnElSiguienteTick() {
+        var wheel = new TimingWheel<String>(10, 8, 3, 0);
+        wheel.advance(100);
+        wheel.schedule("tarde", 50);
+
+        assertEquals(List.of("tarde"), wheel.advance(110));
+    }
+
+    @Test
+    void cascadaDesdeNivelesAltosYDesbordamiento() {
+        // 3 niveles de 8 slots cubren 512 ticks; lo que pasa de ahí se recoloca en cada vuelta
+        var wheel = new TimingWheel<Long>(1, 8, 3, 0);
+        var random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            long deadline = 1 + random.nextInt(3000);
+            deadlines.add(deadline);
+            wheel.schedule(deadline, deadline);
+        }
+
+        for (long now = 1; now <= 3000; now++) {
+            for (Long vencido : wheel.advance(now)) {
+                assertEquals(now, vencido);
+                deadlines.remove(vencido);
+            }
+        }
+        assertAll(
+                () -> assertTrue(deadlines.isEmpty()),
+                () -> assertEquals(0, wheel.size())
+        );
+    }
+
+    @Test
+    void avanzarDeGolpeDevuelveTodoLoVencido() {
+        var wheel = new TimingWheel<Integer>(100, 64, 4, 1_000);
+        for (int i = 0; i < 1000; i++) {
+            wheel.schedule(i, 1_000 + i * 100L);
+        }
+
+        assertAll(
+                () -> assertEquals(501, wheel.advance(51_000).size()),
+                () -> assertEquals(499, wheel.size())
+        );
+    }
+}